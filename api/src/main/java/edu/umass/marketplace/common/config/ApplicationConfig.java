@@ -13,11 +13,14 @@ public class ApplicationConfig {
     @Value("${app.jwt-secret}")
     private String secretKey;
 
+    @Value("${app.jwt.verified-token-cache-size:" + JwtUtil.DEFAULT_VERIFIED_TOKEN_CACHE_SIZE + "}")
+    private int verifiedTokenCacheSize;
+
     @Bean
     public JwtUtil jwtUtil() {
         // 7 days in milliseconds
         long expiry = 1000L * 60 * 60 * 24 * 7;
-        return new JwtUtil(secretKey, expiry);
+        return new JwtUtil(secretKey, expiry, verifiedTokenCacheSize);
     }
 
     @Bean
@@ -8,10 +8,14 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
 
 /**
  * AWS configuration for S3 client.
  * Only creates S3Client bean when aws.s3.enabled=true to avoid SDK init and credential loading when S3 is disabled.
+ * aws.s3.endpoint points the client at an S3-compatible stand-in (MinIO, LocalStack) with path-style addressing.
  */
 @Configuration
 public class AwsConfig {
@@ -25,22 +29,23 @@ public class AwsConfig {
     @Value("${aws.s3.secret-access-key:}")
     private String secretAccessKey;
 
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
     @Bean
     @ConditionalOnProperty(name = "aws.s3.enabled", havingValue = "true")
     public S3Client s3Client() {
+        S3ClientBuilder builder = S3Client.builder().region(Region.of(region));
         // Create S3 client with credentials
         if (accessKeyId != null && !accessKeyId.isEmpty() 
             && secretAccessKey != null && !secretAccessKey.isEmpty()) {
             AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
-            return S3Client.builder()
-                .region(Region.of(region))
-                .credentialsProvider(StaticCredentialsProvider.create(credentials))
-                .build();
-        } else {
-            // Use default credential provider chain (IAM role, environment variables, etc.)
-            return S3Client.builder()
-                .region(Region.of(region))
-                .build();
+            builder.credentialsProvider(StaticCredentialsProvider.create(credentials));
+        }
+        // Otherwise use default credential provider chain (IAM role, environment variables, etc.)
+        if (endpoint != null && !endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
         }
+        return builder.build();
     }
 }
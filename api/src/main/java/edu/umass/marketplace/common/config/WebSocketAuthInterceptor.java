@@ -1,12 +1,15 @@
 package edu.umass.marketplace.common.config;
 
-import edu.umass.marketplace.common.security.JwtUtil;
+import edu.umass.marketplace.common.exception.RateLimitExceededException;
+import edu.umass.marketplace.common.security.JwtPrincipalResolver;
 import edu.umass.marketplace.common.security.UserPrincipal;
-import edu.umass.marketplace.marketplace.model.User;
-import edu.umass.marketplace.marketplace.repository.ChatRepository;
-import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.dto.ChatErrorDTO;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
+import edu.umass.marketplace.marketplace.service.WriteRateLimiter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -16,6 +19,7 @@ import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Component;
 
+import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Component
@@ -23,10 +27,15 @@ import java.util.UUID;
 @Slf4j
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
-    private final JwtUtil jwtUtil;
-    private final UserRepository userRepository;
-    private final ChatRepository chatRepository;
+    private static final String CHAT_TOPIC_PREFIX = "/topic/chat/";
+    private static final String CHAT_APP_PREFIX = "/app/chat/";
+
+    private final JwtPrincipalResolver jwtPrincipalResolver;
+    private final ChatAccessCache chatAccessCache;
     private final SuperuserConfig superuserConfig;
+    private final WriteRateLimiter writeRateLimiter;
+    // Resolved lazily: the publisher's messaging template is built from the broker config that uses this interceptor
+    private final ObjectProvider<ChatEventPublisher> chatEventPublisher;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -44,6 +53,10 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
             return authorizeChatDestination(message, accessor);
         }
 
+        if (StompCommand.SEND.equals(accessor.getCommand())) {
+            return throttleChatSend(message, accessor);
+        }
+
         return message;
     }
 
@@ -53,11 +66,8 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                UUID userId = jwtUtil.getUserIdFromToken(token);
-                User user = userRepository.findById(userId).orElse(null);
-                if (user != null) {
-                    UserPrincipal principal = new UserPrincipal(
-                            user.getId(), user.getEmail(), user.getName(), user.getPictureUrl());
+                UserPrincipal principal = jwtPrincipalResolver.resolve(token);
+                if (principal != null) {
                     UsernamePasswordAuthenticationToken auth =
                             new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                     accessor.setUser(auth);
@@ -80,6 +90,12 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
             return message;
         }
 
+        // Per-user queues must be reached through /user/..., which resolves to the caller's own session.
+        if (destination.startsWith("/queue/")) {
+            log.warn("Rejecting WebSocket {} to raw user queue {}", accessor.getCommand(), destination);
+            return null;
+        }
+
         UUID chatId = extractChatId(destination);
         if (chatId == null) {
             return message;
@@ -96,7 +112,7 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
             return message;
         }
 
-        boolean allowed = chatRepository.existsByIdAndParticipant(chatId, principal.getId());
+        boolean allowed = chatAccessCache.isParticipant(chatId, principal.getId());
         if (!allowed) {
             log.warn("Rejecting WebSocket {} to {} for user {} (not a chat participant)",
                     accessor.getCommand(), destination, principal.getEmail());
@@ -105,19 +121,46 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
         return message;
     }
 
+    /**
+     * Over-limit chat sends are dropped and answered with a 429 ChatErrorDTO on the sender's
+     * /user/queue/errors. The session stays open, so a fast typist is slowed down, not disconnected.
+     */
+    private Message<?> throttleChatSend(Message<?> message, StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        UserPrincipal principal = extractUserPrincipal(accessor);
+        // Only persisted sends (/app/chat/{chatId}); ephemeral signals are coalesced by ChatSignalRelay instead
+        if (destination == null || principal == null || !destination.startsWith(CHAT_APP_PREFIX)
+                || destination.indexOf('/', CHAT_APP_PREFIX.length()) >= 0) {
+            return message;
+        }
+        try {
+            writeRateLimiter.acquireChatMessage(principal.getId());
+            return message;
+        } catch (RateLimitExceededException ex) {
+            log.warn("Dropping WebSocket SEND to {} for user {}: {}", destination, principal.getEmail(), ex.getMessage());
+            chatEventPublisher.getObject().publishError(accessor.getUser().getName(), new ChatErrorDTO(429,
+                    "Too Many Requests", ex.getMessage(), extractChatId(destination), null,
+                    RateLimitExceededException.seconds(ex.getRetryAfter()), OffsetDateTime.now()));
+            return null;
+        }
+    }
+
     private UUID extractChatId(String destination) {
-        String chatPrefixTopic = "/topic/chat/";
-        String chatPrefixApp = "/app/chat/";
         String chatIdText = null;
 
-        if (destination.startsWith(chatPrefixTopic)) {
-            chatIdText = destination.substring(chatPrefixTopic.length());
-        } else if (destination.startsWith(chatPrefixApp)) {
-            chatIdText = destination.substring(chatPrefixApp.length());
+        if (destination.startsWith(CHAT_TOPIC_PREFIX)) {
+            chatIdText = destination.substring(CHAT_TOPIC_PREFIX.length());
+        } else if (destination.startsWith(CHAT_APP_PREFIX)) {
+            chatIdText = destination.substring(CHAT_APP_PREFIX.length());
         }
         if (chatIdText == null || chatIdText.isBlank()) {
             return null;
         }
+        // Sub-destinations such as /topic/chat/{chatId}/signal are authorized against the same chat
+        int slash = chatIdText.indexOf('/');
+        if (slash >= 0) {
+            chatIdText = chatIdText.substring(0, slash);
+        }
         try {
             return UUID.fromString(chatIdText);
         } catch (IllegalArgumentException ignored) {
@@ -8,7 +8,9 @@ import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -23,10 +25,40 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${app.frontend-url:}")
     private String frontendUrl;
 
+    // Per-session outbound limits; a session over either one is closed as a slow consumer
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.send-time-limit:PT10S}")
+    private Duration sendTimeLimit;
+
+    @Value("${app.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${app.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.websocket.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // /topic carries per-chat broadcasts; /queue backs per-user destinations such as /user/queue/inbox
+        config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
     }
 
     @Override
@@ -36,6 +68,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
             originPatterns.add(frontendUrl);
         }
         String[] patterns = originPatterns.toArray(new String[0]);
+        // Hand each session's frames to the inbound pool one at a time, in the order they arrived,
+        // so a client's messages reach ChatActorExecutor in send order
+        registry.setPreserveReceiveOrder(true);
         // Native WebSocket endpoint (used by @stomp/stompjs with brokerURL)
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns(patterns);
@@ -45,8 +80,30 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .withSockJS();
     }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(webSocketAuthInterceptor);
+        // Inbound work is handed to ChatActorExecutor quickly, so a small pool is enough
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // A thread flushing to a stalled client is held until the send time limit, so keep headroom.
+        // Bounded queue: when full, the broker logs and drops the frame instead of growing the heap.
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
     }
 }
@@ -0,0 +1,27 @@
+package edu.umass.marketplace.common.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a user has used up their write allowance; mapped to 429 Too Many Requests.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Whole seconds to wait, rounded up, as used in the Retry-After header.
+     */
+    public static long seconds(Duration retryAfter) {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,289 @@
+package edu.umass.marketplace.common.scheduling;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a scheduled job on at most one API node at a time, using a Postgres session-level advisory
+ * lock keyed by the job name.
+ *
+ * Every node still fires its own @Scheduled trigger; the first to take the lock runs the job and
+ * the others skip that run. The lock lives on a pooled connection held for the duration of the
+ * job, so if the node dies its connection drops, Postgres releases the lock, and the next trigger
+ * on any surviving node runs the job. Jobs guarded this way must be safe to resume from wherever a
+ * previous run stopped, which the retention jobs already are.
+ *
+ * Cron jobs that should run once per schedule window use runOncePerWindow instead. A small
+ * scheduled_jobs table records, per job, when a run last completed and until when the node that
+ * started the current run holds its lease. A trigger is skipped if the job already completed after
+ * the latest cron fire time, so a node whose clock or trigger runs late does not repeat the work.
+ * Every node also checks its windowed jobs every app.jobs.cluster-lock.takeover-check: when the
+ * current window is unfinished and its lease has expired, because the node running it died or the
+ * run failed, a survivor runs it then instead of waiting for the next cron.
+ *
+ * Disabled with app.jobs.cluster-lock.enabled=false (e.g. on H2), in which case jobs simply run.
+ */
+@Component
+public class ClusterJobLock {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterJobLock.class);
+
+    // First key of the two-key advisory lock form, reserving a keyspace for scheduled jobs
+    static final int LOCK_NAMESPACE = 0x4A4F4253;
+
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS scheduled_jobs (
+                job VARCHAR(100) PRIMARY KEY,
+                lease_until TIMESTAMPTZ,
+                last_completed_at TIMESTAMPTZ
+            )""";
+    static final String INSERT_JOB_SQL = "INSERT INTO scheduled_jobs (job) VALUES (?) ON CONFLICT DO NOTHING";
+    static final String SELECT_JOB_SQL = "SELECT lease_until, last_completed_at FROM scheduled_jobs WHERE job = ?";
+    static final String LEASE_SQL = "UPDATE scheduled_jobs SET lease_until = ? WHERE job = ?";
+    static final String COMPLETE_SQL =
+            "UPDATE scheduled_jobs SET lease_until = NULL, last_completed_at = ? WHERE job = ?";
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final Duration lease;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    // Windowed jobs this node has been triggered for, checked again by resumeAbandonedJobs
+    private final Map<String, WindowedJob> windowedJobs = new ConcurrentHashMap<>();
+    private volatile boolean tableReady;
+
+    @Autowired
+    public ClusterJobLock(DataSource dataSource,
+                          @Value("${app.jobs.cluster-lock.enabled:true}") boolean enabled,
+                          @Value("${app.jobs.cluster-lock.lease:PT10M}") Duration lease,
+                          MeterRegistry meterRegistry) {
+        this(dataSource, enabled, lease, meterRegistry, Clock.systemDefaultZone());
+    }
+
+    public ClusterJobLock(DataSource dataSource, boolean enabled, MeterRegistry meterRegistry) {
+        this(dataSource, enabled, Duration.ofMinutes(10), meterRegistry, Clock.systemDefaultZone());
+    }
+
+    // The clock's zone must match the zone @Scheduled evaluates cron expressions in
+    public ClusterJobLock(DataSource dataSource, boolean enabled, Duration lease, MeterRegistry meterRegistry,
+                          Clock clock) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.lease = lease;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Run the job if no other node is running it. Returns false if the job was skipped because
+     * the lock is held elsewhere or could not be checked.
+     */
+    public boolean runExclusively(String job, Runnable task) {
+        if (!enabled) {
+            task.run();
+            count(job, "ran");
+            return true;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            if (!call(connection, "SELECT pg_try_advisory_lock(?, ?)", job)) {
+                log.debug("Skipping job {}: running on another node", job);
+                count(job, "skipped");
+                return false;
+            }
+            try {
+                task.run();
+                count(job, "ran");
+                return true;
+            } finally {
+                unlock(connection, job);
+            }
+        } catch (SQLException e) {
+            log.warn("Skipping job {}: could not take its cluster lock: {}", job, e.getMessage());
+            count(job, "lock_failed");
+            return false;
+        }
+    }
+
+    /**
+     * Run a cron-triggered job at most once per window of its schedule across the cluster. A window
+     * starts at the latest time the cron expression fired. Returns false if the job was skipped:
+     * already completed in this window, leased by a run that may still be going, or running
+     * elsewhere. A run that throws keeps its lease, so the window is retried once the lease expires.
+     */
+    public boolean runOncePerWindow(String job, String cron, Runnable task) {
+        if (!enabled) {
+            task.run();
+            count(job, "ran");
+            return true;
+        }
+        CronExpression schedule = CronExpression.parse(cron);
+        windowedJobs.putIfAbsent(job, new WindowedJob(schedule, task));
+        return runInWindow(job, schedule, task);
+    }
+
+    /**
+     * Give unfinished windows whose lease has expired to this node, so a survivor finishes them
+     * without waiting for the next cron trigger.
+     */
+    @Scheduled(fixedDelayString = "${app.jobs.cluster-lock.takeover-check:PT1M}",
+            initialDelayString = "${app.jobs.cluster-lock.takeover-check:PT1M}")
+    public void resumeAbandonedJobs() {
+        windowedJobs.forEach((job, windowed) -> runInWindow(job, windowed.schedule(), windowed.task()));
+    }
+
+    private boolean runInWindow(String job, CronExpression schedule, Runnable task) {
+        Instant now = clock.instant();
+        Instant windowStart = windowStart(schedule, ZonedDateTime.now(clock));
+        try (Connection connection = dataSource.getConnection()) {
+            if (!call(connection, "SELECT pg_try_advisory_lock(?, ?)", job)) {
+                log.debug("Skipping job {}: running on another node", job);
+                count(job, "skipped");
+                return false;
+            }
+            try {
+                if (!claimWindow(connection, job, windowStart, now)) {
+                    return false;
+                }
+                task.run();
+                update(connection, COMPLETE_SQL, clock.instant(), job);
+                count(job, "ran");
+                return true;
+            } finally {
+                unlock(connection, job);
+            }
+        } catch (SQLException e) {
+            log.warn("Skipping job {}: could not take its cluster lock: {}", job, e.getMessage());
+            count(job, "lock_failed");
+            return false;
+        }
+    }
+
+    // Called holding the advisory lock, so no other node reads or moves the lease concurrently
+    private boolean claimWindow(Connection connection, String job, Instant windowStart, Instant now)
+            throws SQLException {
+        if (!tableReady) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE_SQL);
+            }
+            tableReady = true;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_JOB_SQL)) {
+            insert.setString(1, job);
+            insert.executeUpdate();
+        }
+        Instant leaseUntil;
+        Instant lastCompleted;
+        try (PreparedStatement select = connection.prepareStatement(SELECT_JOB_SQL)) {
+            select.setString(1, job);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                leaseUntil = instant(rs.getTimestamp(1));
+                lastCompleted = instant(rs.getTimestamp(2));
+            }
+        }
+        if (lastCompleted != null && !lastCompleted.isBefore(windowStart)) {
+            count(job, "done");
+            return false;
+        }
+        if (leaseUntil != null && leaseUntil.isAfter(now)) {
+            log.debug("Skipping job {}: its current run is leased until {}", job, leaseUntil);
+            count(job, "skipped");
+            return false;
+        }
+        if (leaseUntil != null) {
+            log.info("Taking over job {}: the lease on its unfinished run expired at {}", job, leaseUntil);
+        }
+        update(connection, LEASE_SQL, now.plus(lease), job);
+        return true;
+    }
+
+    /**
+     * The latest fire time of the schedule at or before now. CronExpression only searches forward,
+     * so search from further and further back until a fire time is found, then walk up to now.
+     */
+    static Instant windowStart(CronExpression schedule, ZonedDateTime now) {
+        for (Duration back = Duration.ofHours(1); back.toDays() <= 800; back = back.multipliedBy(2)) {
+            ZonedDateTime fired = schedule.next(now.minus(back));
+            if (fired != null && !fired.isAfter(now)) {
+                for (ZonedDateTime next = schedule.next(fired); next != null && !next.isAfter(now);
+                     next = schedule.next(next)) {
+                    fired = next;
+                }
+                return fired.toInstant();
+            }
+        }
+        return Instant.EPOCH;
+    }
+
+    private static void update(Connection connection, String sql, Instant time, String job) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setTimestamp(1, Timestamp.from(time));
+            statement.setString(2, job);
+            statement.executeUpdate();
+        }
+    }
+
+    private static Instant instant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    private void unlock(Connection connection, String job) {
+        try {
+            if (!call(connection, "SELECT pg_advisory_unlock(?, ?)", job)) {
+                log.warn("Cluster lock for job {} was not held at unlock", job);
+            }
+        } catch (SQLException e) {
+            // The connection goes back to the pool still holding the lock; drop it so the lock goes with it
+            log.warn("Failed to release cluster lock for job {}, discarding its connection: {}", job, e.getMessage());
+            try {
+                connection.abort(Runnable::run);
+            } catch (SQLException ignored) {
+                // already broken
+            }
+        }
+    }
+
+    private static boolean call(Connection connection, String sql, String job) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, LOCK_NAMESPACE);
+            statement.setInt(2, job.hashCode());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void count(String job, String outcome) {
+        Counter.builder("scheduled.jobs")
+                .description("Scheduled job triggers by outcome: ran, skipped (running or leased elsewhere), "
+                        + "done (already completed in this window), lock_failed")
+                .tag("job", job)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private record WindowedJob(CronExpression schedule, Runnable task) {
+    }
+}
@@ -1,7 +1,6 @@
 package edu.umass.marketplace.common.security;
 
-import edu.umass.marketplace.marketplace.model.User;
-import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.service.PresenceTracker;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,7 +15,6 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
@@ -24,8 +22,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
-    private final JwtUtil jwtUtil;
-    private final UserRepository userRepository;
+    private final JwtPrincipalResolver jwtPrincipalResolver;
+    private final PresenceTracker presenceTracker;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -35,14 +33,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String header = request.getHeader("Authorization");
             if (header != null && header.startsWith("Bearer ")) {
                 String token = header.substring(7);
-                UUID userId = jwtUtil.getUserIdFromToken(token);
-
-                User user = userRepository.findById(userId).orElse(null);
-                if (user != null) {
-                    UserPrincipal principal = new UserPrincipal(user.getId(), user.getEmail(), user.getName(), user.getPictureUrl());
+                UserPrincipal principal = jwtPrincipalResolver.resolve(token);
+                if (principal != null) {
                     UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                     auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(auth);
+                    presenceTracker.touch(principal.getId());
                 }
             }
         } catch (Exception ex) {
@@ -0,0 +1,105 @@
+package edu.umass.marketplace.common.security;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Turns a bearer token into a UserPrincipal for the HTTP filter and WebSocket CONNECT.
+ *
+ * In "claims" mode (default) the principal is built straight from the verified
+ * sub/email/name/picture claims. A picture changed after sign-in shows up with the next token.
+ * Deleted users are rejected through a local revocation list, which takes effect immediately on
+ * this node, and a short-TTL existence cache, which catches deletions made elsewhere after at
+ * most one TTL. Either way a request costs at most one indexed lookup per user per TTL instead
+ * of one per request.
+ *
+ * "database" mode keeps the previous behaviour of loading the user row on every call.
+ */
+@Component
+public class JwtPrincipalResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtPrincipalResolver.class);
+
+    public enum Mode { CLAIMS, DATABASE }
+
+    private final JwtUtil jwtUtil;
+    private final UserRepository userRepository;
+    private final Mode mode;
+    private final Cache<UUID, Boolean> liveUsers;
+    private final Cache<UUID, Boolean> revokedUsers;
+
+    public JwtPrincipalResolver(JwtUtil jwtUtil,
+                                UserRepository userRepository,
+                                @Value("${app.auth.principal-source:claims}") String principalSource,
+                                @Value("${app.auth.user-cache-ttl:PT1M}") Duration userCacheTtl,
+                                @Value("${app.auth.user-cache-max-entries:100000}") long userCacheMaxEntries) {
+        this.jwtUtil = jwtUtil;
+        this.userRepository = userRepository;
+        this.mode = Mode.valueOf(principalSource.trim().toUpperCase());
+        this.liveUsers = Caffeine.newBuilder()
+                .maximumSize(userCacheMaxEntries)
+                .expireAfterWrite(userCacheTtl)
+                .build();
+        // A revoked user can only present tokens issued before the deletion, so entries may expire with them.
+        // Bounded like liveUsers: an evicted revocation still fails the existence check within one TTL.
+        this.revokedUsers = Caffeine.newBuilder()
+                .maximumSize(userCacheMaxEntries)
+                .expireAfterWrite(Duration.ofMillis(jwtUtil.getExpirationMillis()))
+                .build();
+        log.info("JWT principal source: {} (user cache TTL {})", mode, userCacheTtl);
+    }
+
+    /**
+     * Verify the token and resolve its user, or return null if the user no longer exists.
+     * Throws if the token itself is invalid or expired.
+     */
+    public UserPrincipal resolve(String token) {
+        DecodedJWT jwt = jwtUtil.verifyToken(token);
+        UUID userId = UUID.fromString(jwt.getSubject());
+
+        if (revokedUsers.getIfPresent(userId) != null) {
+            return null;
+        }
+
+        String email = jwt.getClaim("email").asString();
+        if (mode == Mode.DATABASE || email == null) {
+            return userRepository.findById(userId).map(this::toPrincipal).orElse(null);
+        }
+
+        boolean exists = liveUsers.get(userId, userRepository::existsById);
+        if (!exists) {
+            // Don't keep negative entries around: a user id is never reused, so just revoke it.
+            liveUsers.invalidate(userId);
+            revokedUsers.put(userId, Boolean.TRUE);
+            return null;
+        }
+        // Tokens issued before the picture claim existed resolve without one until the user signs in again
+        return new UserPrincipal(userId, email, jwt.getClaim("name").asString(), jwt.getClaim("picture").asString());
+    }
+
+    /**
+     * Reject all outstanding tokens for a user, e.g. right after the account is deleted.
+     */
+    public void revoke(UUID userId) {
+        revokedUsers.put(userId, Boolean.TRUE);
+        liveUsers.invalidate(userId);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    private UserPrincipal toPrincipal(User user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getName(), user.getPictureUrl());
+    }
+}
@@ -1,23 +1,69 @@
 package edu.umass.marketplace.common.security;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class JwtUtil {
 
+    public static final int DEFAULT_VERIFIED_TOKEN_CACHE_SIZE = 10_000;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
     private final Algorithm algorithm;
     private final long expirationMillis;
+    // JWTVerifier is immutable and thread-safe, so one instance serves every request
+    private final JWTVerifier verifier;
+    // SHA-256(token) -> decoded claims, kept until the token's own expiry; null when disabled
+    private final Cache<String, DecodedJWT> verifiedTokens;
 
     public JwtUtil(String secret, long expirationMillis) {
+        this(secret, expirationMillis, DEFAULT_VERIFIED_TOKEN_CACHE_SIZE);
+    }
+
+    /**
+     * @param verifiedTokenCacheSize max number of verified tokens remembered; 0 disables the cache
+     */
+    public JwtUtil(String secret, long expirationMillis, int verifiedTokenCacheSize) {
         this.algorithm = Algorithm.HMAC256(secret);
         this.expirationMillis = expirationMillis;
+        this.verifier = JWT.require(algorithm).build();
+        this.verifiedTokens = verifiedTokenCacheSize > 0
+            ? Caffeine.newBuilder()
+                .maximumSize(verifiedTokenCacheSize)
+                .expireAfter(new UntilTokenExpires())
+                .build()
+            : null;
     }
 
     public String generateToken(UUID userId, String email, String name) {
+        return generateToken(userId, email, name, null);
+    }
+
+    /**
+     * Token carrying the profile claims JwtPrincipalResolver builds a principal from in claims
+     * mode; picture is omitted when the user has none.
+     */
+    public String generateToken(UUID userId, String email, String name, String pictureUrl) {
         Instant now = Instant.now();
         Date issuedAt = Date.from(now);
         Date expiresAt = Date.from(now.plusMillis(expirationMillis));
@@ -26,18 +72,59 @@ public class JwtUtil {
             .withSubject(userId.toString())
             .withClaim("email", email)
             .withClaim("name", name)
+            .withClaim("picture", pictureUrl)
             .withIssuedAt(issuedAt)
             .withExpiresAt(expiresAt)
             .sign(algorithm);
     }
 
-    public com.auth0.jwt.interfaces.DecodedJWT verifyToken(String token) {
-        com.auth0.jwt.JWTVerifier verifier = com.auth0.jwt.JWT.require(algorithm).build();
-        return verifier.verify(token);
+    /**
+     * Verify signature and expiry. A token that already verified is answered from the cache
+     * (keyed by its SHA-256, so raw tokens are never held) until it expires; invalid tokens
+     * are never cached and always throw.
+     */
+    public DecodedJWT verifyToken(String token) {
+        if (verifiedTokens == null) {
+            return verifier.verify(token);
+        }
+        return verifiedTokens.get(hash(token), key -> verifier.verify(token));
+    }
+
+    public long getExpirationMillis() {
+        return expirationMillis;
     }
 
-    public java.util.UUID getUserIdFromToken(String token) {
-        com.auth0.jwt.interfaces.DecodedJWT decoded = verifyToken(token);
-        return java.util.UUID.fromString(decoded.getSubject());
+    public UUID getUserIdFromToken(String token) {
+        DecodedJWT decoded = verifyToken(token);
+        return UUID.fromString(decoded.getSubject());
+    }
+
+    private static String hash(String token) {
+        byte[] digest = SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    private static final class UntilTokenExpires implements Expiry<String, DecodedJWT> {
+
+        @Override
+        public long expireAfterCreate(String key, DecodedJWT jwt, long currentTime) {
+            Instant expiresAt = jwt.getExpiresAtAsInstant();
+            if (expiresAt == null) {
+                // Tokens without exp are valid forever to the verifier; don't let them pin the cache.
+                return TimeUnit.MINUTES.toNanos(5);
+            }
+            long remainingMillis = expiresAt.toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, DecodedJWT jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, DecodedJWT jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
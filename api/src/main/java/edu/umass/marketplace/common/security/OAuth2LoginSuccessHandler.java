@@ -48,7 +48,7 @@ public class OAuth2LoginSuccessHandler implements AuthenticationSuccessHandler {
                 .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
             log.info("{} redirect email={} authorities={} superuser={}", LOG_PREFIX, email, authentication.getAuthorities(), isSuperuser);
 
-            String token = jwtUtil.generateToken(idHolder.getId(), email, name);
+            String token = jwtUtil.generateToken(idHolder.getId(), email, name, pictureUrl);
             String redirect = String.format(
                 "%s/auth/success?token=%s&id=%s&email=%s&name=%s&pictureUrl=%s&superuser=%s",
                 frontendRedirect,
@@ -0,0 +1,103 @@
+package edu.umass.marketplace.common.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * ObjectStorage in a local directory (storage.local.root), used whenever S3 is disabled.
+ * Keys map to relative paths, so "listings/{id}/x.jpg" becomes {root}/listings/{id}/x.jpg.
+ */
+@Component
+@ConditionalOnProperty(name = "aws.s3.enabled", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class FileSystemObjectStorage implements ObjectStorage {
+
+    private final Path root;
+
+    public FileSystemObjectStorage(@Value("${storage.local.root:./data/object-storage}") Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void put(String key, byte[] content, String contentType) {
+        Path path = resolve(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = Files.createTempFile(path.getParent(), ".put-", ".tmp");
+            Files.write(tmp, content);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        try {
+            return Optional.of(Files.readAllBytes(resolve(key)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + key, e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        // Walk only the deepest directory the prefix names
+        int slash = prefix.lastIndexOf('/');
+        Path dir = slash < 0 ? root : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().startsWith(".put-"))
+                    .map(path -> root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/"))
+                    .filter(key -> key.startsWith(prefix))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + prefix, e);
+        }
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        if (keys.size() > MAX_DELETE_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_DELETE_BATCH + " keys per delete, got " + keys.size());
+        }
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(resolve(key));
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Failed to delete stored object {}: {}", key, e.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+
+    Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Key escapes storage root: " + key);
+        }
+        return path;
+    }
+}
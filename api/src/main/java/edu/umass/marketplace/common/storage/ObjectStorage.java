@@ -0,0 +1,36 @@
+package edu.umass.marketplace.common.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Key/value blob store behind listing images and the chat archive. S3 in production
+ * (aws.s3.enabled=true), a local directory otherwise, so code paths that store or delete objects
+ * run the same way in dev and tests.
+ */
+public interface ObjectStorage {
+
+    /**
+     * Most keys a single {@link #deleteAll(Collection)} call sends in one request (the S3 DeleteObjects limit).
+     */
+    int MAX_DELETE_BATCH = 1000;
+
+    void put(String key, byte[] content, String contentType);
+
+    /**
+     * Content of the object, or empty if there is no object under this key.
+     */
+    Optional<byte[]> get(String key);
+
+    /**
+     * Keys starting with the prefix, in lexicographic order.
+     */
+    List<String> list(String prefix);
+
+    /**
+     * Delete up to {@link #MAX_DELETE_BATCH} objects. Keys that do not exist count as deleted.
+     * Returns the keys that could not be deleted; throws if the request as a whole failed.
+     */
+    List<String> deleteAll(Collection<String> keys);
+}
@@ -0,0 +1,101 @@
+package edu.umass.marketplace.common.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * ObjectStorage on an S3 bucket. Deletes use multi-object DeleteObjects in quiet mode, so the
+ * response only lists the keys that failed.
+ */
+@Component
+@ConditionalOnProperty(name = "aws.s3.enabled", havingValue = "true")
+@Slf4j
+public class S3ObjectStorage implements ObjectStorage {
+
+    private final S3Client s3Client;
+    private final String bucketName;
+
+    public S3ObjectStorage(S3Client s3Client,
+                           @Value("${aws.s3.bucket-name:umass-marketplace-images}") String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void put(String key, byte[] content, String contentType) {
+        PutObjectRequest putRequest = PutObjectRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .contentType(contentType)
+            .cacheControl("max-age=31536000") // 1 year cache
+            .build();
+        s3Client.putObject(putRequest, RequestBody.fromBytes(content));
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        try {
+            ResponseBytes<GetObjectResponse> object = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+            return Optional.of(object.asByteArray());
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        // ListObjectsV2 returns keys in UTF-8 binary order, one page of up to 1000 at a time
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build())
+            .contents()
+            .stream()
+            .map(S3Object::key)
+            .toList();
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        if (keys.size() > MAX_DELETE_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_DELETE_BATCH + " keys per delete, got " + keys.size());
+        }
+        List<ObjectIdentifier> objects = keys.stream()
+            .map(key -> ObjectIdentifier.builder().key(key).build())
+            .toList();
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+            .bucket(bucketName)
+            .delete(Delete.builder().objects(objects).quiet(true).build())
+            .build());
+        for (S3Error error : response.errors()) {
+            log.warn("Failed to delete S3 object {}: {} {}", error.key(), error.code(), error.message());
+        }
+        return response.errors().stream().map(S3Error::key).toList();
+    }
+}
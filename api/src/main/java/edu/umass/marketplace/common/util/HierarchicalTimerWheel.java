@@ -0,0 +1,179 @@
+package edu.umass.marketplace.common.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timer wheel: one-shot deadlines per key, with O(1) schedule and cancel.
+ *
+ * Time is divided into ticks. Level 0 has one slot per tick for the next 64 ticks, level 1 one
+ * slot per 64 ticks for the next 4096, and so on for {@link #LEVELS} levels (at a one second tick,
+ * over two thousand years). Advancing by a tick fires one level-0 slot, and every 64 ticks it
+ * re-files one higher-level slot into the levels below, so each timer is touched at most once
+ * per level however far away its deadline is. Stretches of ticks with nothing due in the lower
+ * levels are skipped rather than stepped through. Deadlines beyond the top level are parked in its
+ * furthest slot and re-filed when it comes round.
+ *
+ * A timer never fires early: it fires on the first tick at or after its deadline, so at most one
+ * tick late. Scheduling a key again replaces its timer. Not thread-safe; callers synchronize.
+ */
+public final class HierarchicalTimerWheel<K> {
+
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 6;
+    private static final long SLOT_MASK = SLOTS - 1;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+    // Slot index of timers whose deadline had already passed when they were filed
+    private static final int OVERDUE = -1;
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final Map<K, Integer> slotOf = new HashMap<>();
+    private final Map<K, Long> deadlineOf = new HashMap<>();
+    private final List<Set<K>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private final Set<K> overdue = new LinkedHashSet<>();
+    private final int[] levelSize = new int[LEVELS];
+    private long currentTick;
+
+    /**
+     * @param tick        resolution; timers fire at most this late
+     * @param startMillis wall-clock time of tick 0, normally now
+     */
+    public HierarchicalTimerWheel(Duration tick, long startMillis) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("tick must be at least 1ms");
+        }
+        this.tickMillis = tick.toMillis();
+        this.originMillis = startMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Fire the key at the first tick at or after deadlineMillis, replacing any timer it already
+     * has. A deadline that has already passed fires on the next {@link #advance}.
+     */
+    public void schedule(K key, long deadlineMillis) {
+        cancel(key);
+        long deadlineTick = Math.ceilDiv(deadlineMillis - originMillis, tickMillis);
+        deadlineOf.put(key, deadlineTick);
+        file(key, deadlineTick);
+    }
+
+    /**
+     * Returns whether the key had a pending timer.
+     */
+    public boolean cancel(K key) {
+        Integer slot = slotOf.remove(key);
+        if (slot == null) {
+            return false;
+        }
+        deadlineOf.remove(key);
+        if (slot == OVERDUE) {
+            overdue.remove(key);
+        } else {
+            slots.get(slot).remove(key);
+            levelSize[slot / SLOTS]--;
+        }
+        return true;
+    }
+
+    /**
+     * Move the wheel forward to nowMillis and return the keys whose timers fired, in tick order.
+     * Fired keys are forgotten. Moving backwards does nothing.
+     */
+    public List<K> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - originMillis, tickMillis);
+        List<K> fired = new ArrayList<>();
+        drainOverdue(fired);
+        while (currentTick < targetTick) {
+            if (slotOf.isEmpty()) {
+                // Nothing left to cascade or fire; skip the empty ticks outright
+                currentTick = targetTick;
+                break;
+            }
+            int lowest = 0;
+            while (lowest < LEVELS - 1 && levelSize[lowest] == 0) {
+                lowest++;
+            }
+            if (lowest > 0) {
+                // Nothing can fire before the lowest occupied level next cascades; jump to just before it
+                int shift = SLOT_BITS * lowest;
+                long cascadeTick = ((currentTick >>> shift) + 1) << shift;
+                currentTick = Math.min(cascadeTick - 1, targetTick);
+                if (currentTick == targetTick) {
+                    break;
+                }
+            }
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            Set<K> slot = slots.get((int) (currentTick & SLOT_MASK));
+            levelSize[0] -= slot.size();
+            for (K key : slot) {
+                slotOf.remove(key);
+                deadlineOf.remove(key);
+                fired.add(key);
+            }
+            slot.clear();
+            drainOverdue(fired);
+        }
+        return fired;
+    }
+
+    public int size() {
+        return slotOf.size();
+    }
+
+    private void file(K key, long deadlineTick) {
+        long delta = deadlineTick - currentTick;
+        if (delta <= 0) {
+            overdue.add(key);
+            slotOf.put(key, OVERDUE);
+            return;
+        }
+        // Park deadlines beyond the wheel in the top level's furthest slot
+        long filedTick = delta < MAX_SPAN ? deadlineTick : currentTick + MAX_SPAN - 1;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((filedTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        slots.get(slot).add(key);
+        slotOf.put(key, slot);
+        levelSize[level]++;
+    }
+
+    private void cascade(int level) {
+        int index = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Set<K> slot = slots.get(index);
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<K> keys = new ArrayList<>(slot);
+        slot.clear();
+        levelSize[level] -= keys.size();
+        for (K key : keys) {
+            file(key, deadlineOf.get(key));
+        }
+    }
+
+    private void drainOverdue(List<K> fired) {
+        for (K key : overdue) {
+            slotOf.remove(key);
+            deadlineOf.remove(key);
+            fired.add(key);
+        }
+        overdue.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package edu.umass.marketplace.common.util;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free per-key token buckets.
+ *
+ * Each bucket is a single AtomicLong holding the time at which it will be full again (the GCRA
+ * form of a token bucket), so taking tokens is one CAS and refilling needs no background work.
+ * Buckets live in a ConcurrentHashMap, whose bins are striped; a key only touches the map on
+ * its first request. {@link #sweep()} retires buckets that have refilled completely, since a
+ * full bucket carries no state worth keeping.
+ */
+public final class TokenBucketLimiter {
+
+    // A retired bucket is being removed from the map; callers that still hold it start a new one
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<UUID, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity     tokens a full bucket holds (the allowed burst)
+     * @param refillPeriod time for an empty bucket to refill completely
+     */
+    public TokenBucketLimiter(int capacity, Duration refillPeriod) {
+        this(capacity, refillPeriod, System::nanoTime);
+    }
+
+    public TokenBucketLimiter(int capacity, Duration refillPeriod, LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, refillPeriod.toNanos() / capacity);
+        this.burstNanos = nanosPerToken * capacity;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Take {@code permits} tokens from the key's bucket if it holds that many.
+     * Returns 0 on success, otherwise how many nanoseconds until the tokens would be available.
+     * Requests for more than {@link #capacity()} tokens can never succeed.
+     */
+    public long tryAcquire(UUID key, int permits) {
+        long cost = nanosPerToken * permits;
+        while (true) {
+            AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(nanoClock.getAsLong()));
+            long fullAt = bucket.get();
+            if (fullAt == RETIRED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long now = nanoClock.getAsLong();
+            long next = Math.max(fullAt, now) + cost;
+            long overdraft = next - now - burstNanos;
+            if (overdraft > 0) {
+                return overdraft;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop buckets that are full again. Returns how many were removed.
+     */
+    public int sweep() {
+        long now = nanoClock.getAsLong();
+        int removed = 0;
+        for (var entry : buckets.entrySet()) {
+            AtomicLong bucket = entry.getValue();
+            long fullAt = bucket.get();
+            if (fullAt != RETIRED && fullAt <= now && bucket.compareAndSet(fullAt, RETIRED)) {
+                buckets.remove(entry.getKey(), bucket);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,27 @@
+package edu.umass.marketplace.common.websocket;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-node fan-out: delivers straight to this JVM's simple broker.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "false", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LocalStompFanout implements StompFanout {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+    }
+
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(user, destination, payload);
+    }
+}
@@ -0,0 +1,300 @@
+package edu.umass.marketplace.common.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-node fan-out over Postgres LISTEN/NOTIFY.
+ *
+ * Every send is delivered to the local broker right away and then published as a NOTIFY on
+ * a shared channel; each node LISTENs on a dedicated connection and replays messages from other
+ * nodes into its own broker. Topic messages therefore reach subscribers on any node, and
+ * per-user messages reach the node that holds the user's session (the others drop them).
+ *
+ * NOTIFY payloads are capped at 8000 bytes, so larger envelopes are written to
+ * stomp_fanout_payload and only the row id is notified. Rows are swept after a few minutes.
+ * Notifications are published from a single thread so each node's sends keep their order.
+ * Ephemeral frames (typing, presence) are relayed only while that thread has little backlog.
+ * Its queue is bounded like the broker's outbound channel: when Postgres cannot keep up and the
+ * queue is full, a send is delivered on this node only and counted in
+ * websocket.cluster.relay.dropped, instead of buffering without limit.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+public class PostgresStompFanout implements StompFanout, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresStompFanout.class);
+
+    // Postgres rejects NOTIFY payloads of 8000 bytes or more; leave headroom for encoding.
+    static final int MAX_NOTIFY_BYTES = 7900;
+    // Ephemeral frames are only relayed while fewer notifications than this are waiting
+    static final int EPHEMERAL_BACKLOG_LIMIT = 100;
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final DataSourceProperties dataSourceProperties;
+    private final String channel;
+    private final int queueCapacity;
+    private final Counter relayDropped;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private ThreadPoolExecutor publisher;
+    private Thread listener;
+    private volatile boolean running;
+    private volatile boolean listening;
+
+    public PostgresStompFanout(SimpMessagingTemplate messagingTemplate,
+                               JdbcTemplate jdbcTemplate,
+                               ObjectMapper objectMapper,
+                               DataSourceProperties dataSourceProperties,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.websocket.cluster.channel:stomp_fanout}") String channel,
+                               @Value("${app.websocket.cluster.queue-capacity:10000}") int queueCapacity) {
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid app.websocket.cluster.channel: " + channel);
+        }
+        this.messagingTemplate = messagingTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.dataSourceProperties = dataSourceProperties;
+        this.channel = channel;
+        this.queueCapacity = queueCapacity;
+        this.relayDropped = Counter.builder("websocket.cluster.relay.dropped")
+                .description("Sends delivered on this node only because the cluster relay queue was full")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        relay(null, destination, payload);
+    }
+
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(user, destination, payload);
+        relay(user, destination, payload);
+    }
+
+    @Override
+    public void sendEphemeral(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        if (hasRelayCapacity()) {
+            relay(null, destination, payload);
+        }
+    }
+
+    @Override
+    public void sendEphemeralToUser(String user, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(user, destination, payload);
+        if (hasRelayCapacity()) {
+            relay(user, destination, payload);
+        }
+    }
+
+    private boolean hasRelayCapacity() {
+        ThreadPoolExecutor executor = publisher;
+        return executor != null && executor.getQueue().size() < EPHEMERAL_BACKLOG_LIMIT;
+    }
+
+    private void relay(String user, String destination, Object payload) {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put("origin", nodeId);
+        envelope.put("destination", destination);
+        if (user != null) {
+            envelope.put("user", user);
+        }
+        envelope.set("payload", objectMapper.valueToTree(payload));
+        String json = envelope.toString();
+
+        ThreadPoolExecutor executor = publisher;
+        if (executor == null) {
+            log.warn("Cluster fan-out not running; {} delivered on this node only", destination);
+            return;
+        }
+        try {
+            executor.execute(() -> notifyPeers(json));
+        } catch (RejectedExecutionException e) {
+            relayDropped.increment();
+            log.debug("Cluster fan-out queue full; {} delivered on this node only", destination);
+        }
+    }
+
+    private void notifyPeers(String envelope) {
+        try {
+            if (envelope.getBytes(StandardCharsets.UTF_8).length <= MAX_NOTIFY_BYTES) {
+                notify(envelope);
+            } else {
+                UUID ref = UUID.randomUUID();
+                jdbcTemplate.update("INSERT INTO stomp_fanout_payload (id, body) VALUES (?, ?)", ref, envelope);
+                ObjectNode pointer = objectMapper.createObjectNode();
+                pointer.put("origin", nodeId);
+                pointer.put("ref", ref.toString());
+                notify(pointer.toString());
+            }
+        } catch (Exception ex) {
+            log.warn("Failed to relay STOMP message to other nodes: {}", ex.getMessage());
+        }
+    }
+
+    private void notify(String payload) {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, channel, payload);
+    }
+
+    void onNotification(String payload) {
+        try {
+            JsonNode envelope = objectMapper.readTree(payload);
+            if (nodeId.equals(envelope.path("origin").asText())) {
+                return;
+            }
+            if (envelope.hasNonNull("ref")) {
+                envelope = loadOverflow(UUID.fromString(envelope.get("ref").asText()));
+                if (envelope == null) {
+                    return;
+                }
+            }
+            String destination = envelope.path("destination").asText();
+            JsonNode body = envelope.path("payload");
+            if (envelope.hasNonNull("user")) {
+                messagingTemplate.convertAndSendToUser(envelope.get("user").asText(), destination, body);
+            } else {
+                messagingTemplate.convertAndSend(destination, body);
+            }
+        } catch (Exception ex) {
+            log.warn("Dropping malformed cluster fan-out notification: {}", ex.getMessage());
+        }
+    }
+
+    private JsonNode loadOverflow(UUID ref) throws Exception {
+        List<String> bodies = jdbcTemplate.queryForList(
+                "SELECT body FROM stomp_fanout_payload WHERE id = ?", String.class, ref);
+        if (bodies.isEmpty()) {
+            log.warn("Cluster fan-out payload {} already swept", ref);
+            return null;
+        }
+        return objectMapper.readTree(bodies.get(0));
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.cluster.overflow-sweep-interval:PT1M}")
+    public void sweepOverflow() {
+        if (running) {
+            jdbcTemplate.update("DELETE FROM stomp_fanout_payload WHERE created_at < now() - interval '5 minutes'");
+        }
+    }
+
+    @Override
+    public void start() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS stomp_fanout_payload (
+                    id UUID PRIMARY KEY,
+                    body TEXT NOT NULL,
+                    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )""");
+        running = true;
+        publisher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "stomp-fanout-notify"));
+        listener = new Thread(this::listen, "stomp-fanout-listen");
+        listener.setDaemon(true);
+        listener.start();
+        log.info("STOMP cluster fan-out enabled on channel '{}' (node {})", channel, nodeId);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                listening = true;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                listening = false;
+                if (running) {
+                    // Messages sent by other nodes while we reconnect are missed; clients recover via REST history.
+                    log.warn("Cluster fan-out listener lost its connection, retrying: {}", ex.getMessage());
+                    sleepQuietly(1000);
+                }
+            }
+        }
+        listening = false;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (publisher != null) {
+            publisher.shutdown();
+            try {
+                publisher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            publisher = null;
+        }
+        if (listener != null) {
+            listener.interrupt();
+            listener = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * True once the LISTEN connection is established.
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package edu.umass.marketplace.common.websocket;
+
+/**
+ * Sends STOMP messages to subscribers on every API node, not just the local broker.
+ * With a single node this is just SimpMessagingTemplate; with app.websocket.cluster.enabled
+ * messages are also relayed to the other nodes through Postgres LISTEN/NOTIFY.
+ */
+public interface StompFanout {
+
+    void sendToTopic(String destination, Object payload);
+
+    /**
+     * @param user STOMP user name, i.e. Principal#getName() (the account email)
+     */
+    void sendToUser(String user, String destination, Object payload);
+
+    /**
+     * Best-effort topic send for ephemeral frames such as typing indicators. Implementations may
+     * drop the cross-node copy when busy so ephemeral traffic never delays persisted messages.
+     */
+    default void sendEphemeral(String destination, Object payload) {
+        sendToTopic(destination, payload);
+    }
+
+    /**
+     * Best-effort user-destination counterpart of {@link #sendEphemeral(String, Object)}.
+     */
+    default void sendEphemeralToUser(String user, String destination, Object payload) {
+        sendToUser(user, destination, payload);
+    }
+}
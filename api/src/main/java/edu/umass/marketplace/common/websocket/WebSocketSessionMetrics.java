@@ -0,0 +1,72 @@
+package edu.umass.marketplace.common.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * Micrometer view of STOMP session health and the client channel executors.
+ *
+ * Slow consumers are cut off by Spring itself: once a session's outbound buffer exceeds
+ * app.websocket.send-buffer-size-limit, or a single send blocks longer than send-time-limit, the
+ * session is closed with {@link CloseStatus#SESSION_NOT_RELIABLE}. Those closes are counted here
+ * so a wave of stalled clients shows up on dashboards instead of only as heap growth.
+ */
+@Component
+@Slf4j
+public class WebSocketSessionMetrics {
+
+    private final Counter slowConsumerDisconnects;
+
+    public WebSocketSessionMetrics(MeterRegistry meterRegistry,
+                                   @Qualifier("subProtocolWebSocketHandler") WebSocketHandler webSocketHandler,
+                                   @Qualifier("clientInboundChannelExecutor") ThreadPoolTaskExecutor inboundExecutor,
+                                   @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor outboundExecutor) {
+        this.slowConsumerDisconnects = Counter.builder("websocket.sessions.slow.disconnects")
+                .description("Sessions closed because they could not keep up with outbound messages")
+                .register(meterRegistry);
+
+        if (WebSocketHandlerDecorator.unwrap(webSocketHandler) instanceof SubProtocolWebSocketHandler handler) {
+            SubProtocolWebSocketHandler.Stats stats = handler.getStats();
+            Gauge.builder("websocket.sessions.open", stats,
+                    s -> s.getWebSocketSessions() + s.getHttpStreamingSessions() + s.getHttpPollingSessions())
+                    .description("Open WebSocket and SockJS sessions")
+                    .register(meterRegistry);
+            Gauge.builder("websocket.sessions.limit.exceeded", stats, SubProtocolWebSocketHandler.Stats::getLimitExceededSessions)
+                    .description("Sessions closed for exceeding the send buffer or send time limit since startup")
+                    .register(meterRegistry);
+        }
+        registerExecutor(meterRegistry, "inbound", inboundExecutor);
+        registerExecutor(meterRegistry, "outbound", outboundExecutor);
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        if (CloseStatus.SESSION_NOT_RELIABLE.equals(event.getCloseStatus())) {
+            slowConsumerDisconnects.increment();
+            log.warn("Disconnected slow WebSocket consumer: session {} user {}",
+                    event.getSessionId(), event.getUser() != null ? event.getUser().getName() : "anonymous");
+        }
+    }
+
+    private static void registerExecutor(MeterRegistry meterRegistry, String channel, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("websocket.channel.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Messages waiting for a client channel thread")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("websocket.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Client channel threads currently delivering a message")
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+}
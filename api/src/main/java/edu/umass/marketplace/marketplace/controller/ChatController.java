@@ -1,19 +1,29 @@
 package edu.umass.marketplace.marketplace.controller;
 
+import edu.umass.marketplace.marketplace.dto.ArchivedChatDTO;
 import edu.umass.marketplace.marketplace.dto.ChatDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSyncRequest;
+import edu.umass.marketplace.marketplace.dto.ChatSyncResponse;
 import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.SyncCursor;
 import edu.umass.marketplace.common.security.UserPrincipal;
+import edu.umass.marketplace.marketplace.service.ChatArchive;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
 import edu.umass.marketplace.marketplace.service.ChatService;
+import edu.umass.marketplace.marketplace.service.WriteRateLimiter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -21,8 +31,13 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ChatController {
 
+    private static final int MAX_SINCE_LIMIT = 500;
+    private static final int MAX_SYNC_CHATS = 200;
+
     private final ChatService chatService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatEventPublisher chatEventPublisher;
+    private final WriteRateLimiter writeRateLimiter;
+    private final ChatArchive chatArchive;
 
     @PostMapping("/listing/{listingId}")
     public ResponseEntity<ChatDTO> startChat(
@@ -43,6 +58,31 @@ public class ChatController {
         return ResponseEntity.ok(chatService.getUserChats(userPrincipal.getId()));
     }
 
+    /**
+     * One round trip for a reconnecting client: returns only what changed since its cursors.
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<ChatSyncResponse> sync(
+            @RequestBody ChatSyncRequest request,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        if (userPrincipal == null) {
+            return ResponseEntity.status(401).build();
+        }
+        boolean perChat = request.getChats() != null && !request.getChats().isEmpty();
+        if (!perChat && request.getSince() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (perChat && (request.getChats().size() > MAX_SYNC_CHATS || request.getChats().values().stream()
+                .anyMatch(cursor -> cursor == null || cursor.getCreatedAt() == null))) {
+            return ResponseEntity.badRequest().build();
+        }
+        int limit = request.getLimit() != null ? Math.max(1, Math.min(request.getLimit(), MAX_SINCE_LIMIT)) : 200;
+        return ResponseEntity.ok(perChat
+                ? chatService.syncChats(userPrincipal.getId(), request.getChats(), request.getSince(), limit)
+                : chatService.syncSince(userPrincipal.getId(), new SyncCursor(request.getSince(), request.getSinceId()),
+                        limit));
+    }
+
     @PostMapping("/{chatId}/messages")
     public ResponseEntity<MessageDTO> sendMessage(
             @PathVariable UUID chatId,
@@ -60,16 +100,39 @@ public class ChatController {
                 sharedListingIdText = body.get("listingId");
             }
         }
-        if (sharedListingIdText != null && !sharedListingIdText.isBlank()) {
-            try {
+        String clientMessageIdText = body != null ? body.get("clientMessageId") : null;
+        UUID clientMessageId = null;
+        try {
+            if (sharedListingIdText != null && !sharedListingIdText.isBlank()) {
                 sharedListingId = UUID.fromString(sharedListingIdText);
-            } catch (IllegalArgumentException e) {
-                return ResponseEntity.badRequest().build();
             }
+            if (clientMessageIdText != null && !clientMessageIdText.isBlank()) {
+                clientMessageId = UUID.fromString(clientMessageIdText);
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        writeRateLimiter.acquireChatMessage(userPrincipal.getId());
+        MessageDelivery delivery = chatService.deliverMessage(chatId, userPrincipal.getId(), content, sharedListingId,
+                clientMessageId);
+        // A retry was already broadcast the first time; just hand the stored message back.
+        if (!delivery.isDuplicate()) {
+            chatEventPublisher.publish(delivery);
+        }
+        return ResponseEntity.ok(delivery.getMessage());
+    }
+
+    @GetMapping("/{chatId}/messages/since")
+    public ResponseEntity<List<MessageDTO>> getMessagesSince(
+            @PathVariable UUID chatId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime since,
+            @RequestParam(defaultValue = "200") int limit,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        if (userPrincipal == null) {
+            return ResponseEntity.status(401).build();
         }
-        MessageDTO message = chatService.sendMessage(chatId, userPrincipal.getId(), content, sharedListingId);
-        messagingTemplate.convertAndSend("/topic/chat/" + chatId, message);
-        return ResponseEntity.ok(message);
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_SINCE_LIMIT));
+        return ResponseEntity.ok(chatService.getMessagesSince(chatId, userPrincipal.getId(), since, boundedLimit));
     }
 
     @GetMapping("/{chatId}/messages")
@@ -82,4 +145,23 @@ public class ChatController {
         }
         return ResponseEntity.ok(chatService.getChatMessages(chatId, userPrincipal.getId(), pageable));
     }
+
+    /**
+     * History that retention moved to cold storage, read from the archive on demand. Nothing is
+     * restored into Postgres, and the chat itself may no longer exist there. Callers who are not
+     * the archived buyer or seller get the same 404 as for a chat with no archive.
+     */
+    @GetMapping("/{chatId}/archive")
+    public ResponseEntity<ArchivedChatDTO> getArchivedChat(
+            @PathVariable UUID chatId,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        if (userPrincipal == null) {
+            return ResponseEntity.status(401).build();
+        }
+        Optional<ArchivedChatDTO> archived = chatArchive.load(chatId, userPrincipal.getId());
+        if (archived.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(archived.get());
+    }
 }
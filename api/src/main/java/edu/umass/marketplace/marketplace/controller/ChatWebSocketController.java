@@ -1,19 +1,26 @@
 package edu.umass.marketplace.marketplace.controller;
 
+import edu.umass.marketplace.common.exception.RateLimitExceededException;
 import edu.umass.marketplace.common.security.UserPrincipal;
-import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.ChatErrorDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSignalDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.service.ChatActorExecutor;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
 import edu.umass.marketplace.marketplace.service.ChatService;
+import edu.umass.marketplace.marketplace.service.ChatSignalRelay;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Controller;
 
-import java.util.Map;
 import java.security.Principal;
+import java.time.OffsetDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Controller
@@ -22,7 +29,9 @@ import java.util.UUID;
 public class ChatWebSocketController {
 
     private final ChatService chatService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatEventPublisher chatEventPublisher;
+    private final ChatActorExecutor chatActorExecutor;
+    private final ChatSignalRelay chatSignalRelay;
 
     @MessageMapping("/chat/{chatId}")
     public void sendMessage(
@@ -42,10 +51,73 @@ public class ChatWebSocketController {
         }
 
         ParsedMessage parsed = parsePayload(payload);
-        MessageDTO message = chatService.sendMessage(chatId, userPrincipal.getId(), parsed.content(), parsed.sharedListingId());
+        // Persist and broadcast on the chat's own serial stripe: keeps per-chat order and frees the inbound thread.
+        boolean accepted = chatActorExecutor.execute(chatId, () -> {
+            MessageDelivery delivery = chatService.deliverMessage(chatId, userPrincipal.getId(), parsed.content(),
+                    parsed.sharedListingId(), parsed.clientMessageId());
+            if (delivery.isDuplicate()) {
+                log.debug("Ignoring retried WebSocket message {} for chat {}", parsed.clientMessageId(), chatId);
+                return;
+            }
+
+            // Broadcast to the chat topic and push inbox deltas to both participants
+            chatEventPublisher.publish(delivery);
+        }, ex -> chatEventPublisher.publishError(principal.getName(), toError(ex, chatId, parsed.clientMessageId())));
+        if (!accepted) {
+            log.warn("Chat {} is backlogged; rejecting message from user {}", chatId, userPrincipal.getId());
+            chatEventPublisher.publishError(principal.getName(), new ChatErrorDTO(503, "Service Unavailable",
+                    "Chat is busy, please retry", chatId, parsed.clientMessageId(), 1L, OffsetDateTime.now()));
+        }
+    }
+
+    /**
+     * Ephemeral typing/presence signal, e.g. {"type": "TYPING"}. Handled inline and never persisted;
+     * subscribers receive it on /topic/chat/{chatId}/signal.
+     */
+    @MessageMapping("/chat/{chatId}/signal")
+    public void sendSignal(
+            @DestinationVariable UUID chatId,
+            @Payload Object payload,
+            Principal principal) {
+        UserPrincipal userPrincipal = principal != null ? extractUserPrincipal(principal) : null;
+        if (userPrincipal == null) {
+            log.warn("Unauthenticated WebSocket signal attempt for chat {}", chatId);
+            return;
+        }
+        ChatSignalDTO.Type type = parseSignalType(payload);
+        if (type == null) {
+            log.debug("Ignoring unknown chat signal {} for chat {}", payload, chatId);
+            return;
+        }
+        chatSignalRelay.signal(chatId, userPrincipal.getId(), userPrincipal.getName(), type);
+    }
+
+    private static ChatErrorDTO toError(Exception ex, UUID chatId, UUID clientMessageId) {
+        OffsetDateTime now = OffsetDateTime.now();
+        if (ex instanceof RateLimitExceededException limited) {
+            return new ChatErrorDTO(429, "Too Many Requests", ex.getMessage(), chatId, clientMessageId,
+                    RateLimitExceededException.seconds(limited.getRetryAfter()), now);
+        }
+        if (ex instanceof AccessDeniedException) {
+            return new ChatErrorDTO(403, "Forbidden", ex.getMessage(), chatId, clientMessageId, null, now);
+        }
+        if (ex instanceof IllegalArgumentException) {
+            return new ChatErrorDTO(400, "Bad Request", ex.getMessage(), chatId, clientMessageId, null, now);
+        }
+        return new ChatErrorDTO(500, "Internal Server Error", "Message could not be sent", chatId, clientMessageId,
+                null, now);
+    }
 
-        // Broadcast to all subscribers of this chat topic
-        messagingTemplate.convertAndSend("/topic/chat/" + chatId, message);
+    private ChatSignalDTO.Type parseSignalType(Object payload) {
+        Object type = payload instanceof Map<?, ?> map ? map.get("type") : payload;
+        if (type == null) {
+            return null;
+        }
+        try {
+            return ChatSignalDTO.Type.valueOf(type.toString().trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     private UserPrincipal extractUserPrincipal(Principal principal) {
@@ -60,7 +132,7 @@ public class ChatWebSocketController {
 
     private ParsedMessage parsePayload(Object payload) {
         if (payload instanceof String content) {
-            return new ParsedMessage(content, null);
+            return new ParsedMessage(content, null, null);
         }
         if (payload instanceof Map<?, ?> map) {
             Object contentObj = map.get("content");
@@ -73,10 +145,15 @@ public class ChatWebSocketController {
             if (sharedListingIdObj != null && !sharedListingIdObj.toString().isBlank()) {
                 sharedListingId = UUID.fromString(sharedListingIdObj.toString());
             }
-            return new ParsedMessage(content, sharedListingId);
+            Object clientMessageIdObj = map.get("clientMessageId");
+            UUID clientMessageId = null;
+            if (clientMessageIdObj != null && !clientMessageIdObj.toString().isBlank()) {
+                clientMessageId = UUID.fromString(clientMessageIdObj.toString());
+            }
+            return new ParsedMessage(content, sharedListingId, clientMessageId);
         }
         throw new IllegalArgumentException("Unsupported WebSocket message payload");
     }
 
-    private record ParsedMessage(String content, UUID sharedListingId) {}
+    private record ParsedMessage(String content, UUID sharedListingId, UUID clientMessageId) {}
 }
@@ -4,9 +4,11 @@ package edu.umass.marketplace.marketplace.controller;
 // Provides CRUD operations for marketplace listings with pagination and filtering
 import edu.umass.marketplace.marketplace.dto.CreateListingRequest;
 import edu.umass.marketplace.marketplace.dto.BulkListingRequest;
+import edu.umass.marketplace.marketplace.response.ListingFeedResponse;
 import edu.umass.marketplace.marketplace.response.ListingResponse;
 import edu.umass.marketplace.marketplace.response.StatsResponse;
 import edu.umass.marketplace.marketplace.service.ListingService;
+import edu.umass.marketplace.marketplace.service.WriteRateLimiter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -14,10 +16,12 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.OffsetDateTime;
 import java.util.UUID;
 import java.util.List;
 
@@ -28,7 +32,11 @@ import java.util.List;
 @Tag(name = "Listings", description = "Marketplace listing management")
 public class ListingController {
 
+    private static final int MAX_EXPIRING_WINDOW_DAYS = 60;
+    private static final int MAX_FEED_PAGE_SIZE = 100;
+
     private final ListingService listingService;
+    private final WriteRateLimiter writeRateLimiter;
 
     @GetMapping
     @Operation(summary = "Get listings", description = "Retrieve paginated listings with optional filtering and search")
@@ -45,6 +53,25 @@ public class ListingController {
         return listingService.getListings(q, category, status, condition, minPrice, maxPrice, page, size);
     }
 
+    @GetMapping("/expiring-soon")
+    @Operation(summary = "Get listings expiring soon",
+            description = "Active listings whose mustGoBy falls within the next withinDays, soonest first. "
+                    + "Keyset-paginated: pass the previous page's nextMustGoBy and nextId as afterMustGoBy and afterId")
+    public ResponseEntity<ListingFeedResponse> getExpiringSoon(
+            @Parameter(description = "Window in days from now") @RequestParam(defaultValue = "7") int withinDays,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "nextMustGoBy of the previous page")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime afterMustGoBy,
+            @Parameter(description = "nextId of the previous page") @RequestParam(required = false) UUID afterId
+    ) {
+        if ((afterMustGoBy == null) != (afterId == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int window = Math.max(1, Math.min(withinDays, MAX_EXPIRING_WINDOW_DAYS));
+        int limit = Math.max(1, Math.min(size, MAX_FEED_PAGE_SIZE));
+        return ResponseEntity.ok(listingService.getExpiringSoon(window, afterMustGoBy, afterId, limit));
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get listing by ID", description = "Retrieve a specific listing by its ID")
     public ListingResponse getListingById(@PathVariable UUID id) {
@@ -54,6 +81,7 @@ public class ListingController {
     @PostMapping
     @Operation(summary = "Create listing", description = "Create a new marketplace listing")
     public ResponseEntity<ListingResponse> createListing(@Valid @RequestBody CreateListingRequest request, java.security.Principal principal) {
+        writeRateLimiter.acquireListingWrites(principal, 1);
         ListingResponse listing = listingService.createListing(request, principal);
         return ResponseEntity.status(HttpStatus.CREATED).body(listing);
     }
@@ -63,6 +91,8 @@ public class ListingController {
     public ResponseEntity<List<ListingResponse>> createListingsBulk(
             @RequestBody BulkListingRequest bulkRequest, 
             java.security.Principal principal) {
+        writeRateLimiter.acquireListingWrites(principal,
+                bulkRequest.getListings() != null ? bulkRequest.getListings().size() : 0);
         List<ListingResponse> listings = listingService.createListingsBulk(bulkRequest.getListings(), principal);
         return ResponseEntity.status(HttpStatus.CREATED).body(listings);
     }
@@ -74,6 +104,12 @@ public class ListingController {
         return listingService.updateListing(id, request, principal);
     }
 
+    @PostMapping("/{id}/renew")
+    @Operation(summary = "Renew listing", description = "Restart the listing's retention period so it is not auto-deleted")
+    public ListingResponse renewListing(@PathVariable UUID id, java.security.Principal principal) {
+        return listingService.renewListing(id, principal);
+    }
+
     @DeleteMapping("/{id}")
     @Operation(summary = "Delete listing", description = "Delete a marketplace listing")
     public ResponseEntity<Void> deleteListing(@PathVariable UUID id, java.security.Principal principal) {
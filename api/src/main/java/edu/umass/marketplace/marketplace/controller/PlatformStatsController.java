@@ -1,7 +1,10 @@
 package edu.umass.marketplace.marketplace.controller;
 
+import edu.umass.marketplace.marketplace.service.PresenceTracker;
+import edu.umass.marketplace.marketplace.service.RegisteredUserCounter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -10,15 +13,20 @@ import java.util.Map;
 
 @RestController
 @RequestMapping("/api/stats")
+@RequiredArgsConstructor
 @Tag(name = "Platform Stats", description = "Platform-wide statistics")
 public class PlatformStatsController {
 
+    private final RegisteredUserCounter registeredUserCounter;
+    private final PresenceTracker presenceTracker;
+
     @GetMapping("/platform")
-    @Operation(summary = "Get platform stats", description = "Returns registered user count and online users")
+    @Operation(summary = "Get platform stats", description = "Returns registered user count, online users and estimated unique users today")
     public Map<String, Object> getPlatformStats() {
         return Map.of(
-            "totalStudents", 456,
-            "onlineNow", 3
+            "totalStudents", registeredUserCounter.get(),
+            "onlineNow", presenceTracker.onlineNow(),
+            "activeToday", presenceTracker.activeToday()
         );
     }
 }
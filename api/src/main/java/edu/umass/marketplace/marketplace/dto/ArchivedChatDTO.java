@@ -0,0 +1,26 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A chat's archived history, read back from cold storage. Participants and listing are ids only:
+ * the users and listing may no longer exist.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedChatDTO {
+    private UUID chatId;
+    private UUID listingId;
+    private UUID buyerId;
+    private UUID sellerId;
+    private OffsetDateTime chatCreatedAt;
+    // Oldest first
+    private List<SyncMessageDTO> messages;
+}
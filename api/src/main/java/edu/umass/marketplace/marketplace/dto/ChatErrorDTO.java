@@ -0,0 +1,27 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Error frame sent to the sender's /user/queue/errors when a STOMP chat frame is rejected or fails.
+ * The session stays open; status mirrors the HTTP code the equivalent REST call would return, and
+ * clientMessageId (when the client sent one) lets it match the error to its pending message.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatErrorDTO {
+    private int status;
+    private String error;
+    private String message;
+    private UUID chatId;
+    private UUID clientMessageId;
+    // Set for 429/503 so clients know when to retry
+    private Long retryAfterSeconds;
+    private OffsetDateTime sentAt;
+}
@@ -0,0 +1,34 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Frame on the per-user stream /user/queue/chat-events, which carries every chat the user takes
+ * part in over one subscription. Exactly one of message or signal is set, matching type.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatEventDTO {
+
+    public enum Type { MESSAGE, SIGNAL }
+
+    private Type type;
+    private UUID chatId;
+    private MessageDTO message;
+    private ChatSignalDTO signal;
+
+    public static ChatEventDTO message(MessageDTO message) {
+        return new ChatEventDTO(Type.MESSAGE, message.getChatId(), message, null);
+    }
+
+    public static ChatEventDTO signal(ChatSignalDTO signal) {
+        return new ChatEventDTO(Type.SIGNAL, signal.getChatId(), null, signal);
+    }
+}
@@ -0,0 +1,26 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Ephemeral chat frame broadcast on /topic/chat/{chatId}/signal. Never persisted; clients should
+ * treat TYPING as expired if it is not repeated within a few seconds.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSignalDTO {
+
+    public enum Type { TYPING, STOPPED_TYPING, VIEWING, AWAY }
+
+    private UUID chatId;
+    private UUID userId;
+    private String userName;
+    private Type type;
+    private OffsetDateTime sentAt;
+}
@@ -0,0 +1,25 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Body of POST /api/chats/sync. Send either per-chat cursors (the last message the client has in
+ * each chat, or chatCursors from the previous response) or one global cursor: cursor and cursorId
+ * from the previous sync response as since and sinceId.
+ * In per-chat mode, since is optional and limits newChats to chats created after it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSyncRequest {
+    private OffsetDateTime since;
+    private UUID sinceId;
+    private Map<UUID, SyncCursor> chats;
+    private Integer limit;
+}
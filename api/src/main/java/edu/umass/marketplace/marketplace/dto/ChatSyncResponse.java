@@ -0,0 +1,33 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * What a reconnecting client missed: chats it has not seen yet and new messages, oldest first.
+ * After a global sync, pass {@code cursor} and {@code cursorId} as {@code since} and {@code sinceId}.
+ * After a per-chat sync, pass {@code chatCursors} as the next request's {@code chats}: it holds a
+ * cursor for every requested chat, including ones the limit cut short or never reached, and for
+ * each chat in {@code newChats}. Chats in {@code removedChats} were deleted or are no longer the
+ * user's; drop them and their cursors. When {@code hasMore} is set, sync again right away.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSyncResponse {
+    // Global mode only
+    private OffsetDateTime cursor;
+    private UUID cursorId;
+    // Per-chat mode only
+    private Map<UUID, SyncCursor> chatCursors;
+    private List<UUID> removedChats;
+    private List<ChatDTO> newChats;
+    private List<SyncMessageDTO> messages;
+    private boolean hasMore;
+}
@@ -0,0 +1,24 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Compact inbox delta pushed to /user/queue/inbox whenever a chat receives a message.
+ * Carries just enough for the client to reorder its chat list and show a preview.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxUpdateDTO {
+    private UUID chatId;
+    private UUID messageId;
+    private UUID senderId;
+    private String preview;
+    private boolean unread;
+    private OffsetDateTime createdAt;
+}
@@ -12,6 +12,7 @@ import java.util.UUID;
 @AllArgsConstructor
 public class MessageDTO {
     private UUID id;
+    private UUID clientMessageId;
     private UUID chatId;
     private UserDto sender;
     private String content;
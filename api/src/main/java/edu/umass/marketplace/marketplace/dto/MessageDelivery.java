@@ -0,0 +1,24 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * A persisted message together with the chat participants it must be delivered to.
+ * Not serialized to clients; used to fan out topic and per-user frames without another lookup.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDelivery {
+    private MessageDTO message;
+    private UserDto buyer;
+    private UserDto seller;
+    // True when this is a retried send answered with the originally stored message; not re-broadcast
+    private boolean duplicate;
+
+    public MessageDelivery(MessageDTO message, UserDto buyer, UserDto seller) {
+        this(message, buyer, seller, false);
+    }
+}
@@ -0,0 +1,22 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * One listing in a renewal reminder on /user/queue/listing-renewals. POST
+ * /api/listings/{listingId}/renew keeps it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RenewalReminderDTO {
+    private UUID listingId;
+    private String title;
+    // Earliest time retention may delete the listing
+    private OffsetDateTime expiresAt;
+}
@@ -0,0 +1,43 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Keyset position in a message stream: the createdAt and id of the last message a client has.
+ * Messages are ordered by (createdAt, id), so two messages with the same timestamp are never
+ * skipped. A bare timestamp string is also accepted and means "strictly after createdAt".
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncCursor {
+    private OffsetDateTime createdAt;
+    private UUID id;
+
+    public static SyncCursor valueOf(String createdAt) {
+        return new SyncCursor(OffsetDateTime.parse(createdAt), null);
+    }
+
+    /**
+     * Whether a message at (createdAt, id) comes after this cursor in the database's order.
+     */
+    public boolean isBefore(OffsetDateTime messageCreatedAt, UUID messageId) {
+        if (!messageCreatedAt.isEqual(createdAt)) {
+            return messageCreatedAt.isAfter(createdAt);
+        }
+        return id != null && compareIds(messageId, id) > 0;
+    }
+
+    /**
+     * UUID order as Postgres sorts them (unsigned, byte by byte), unlike {@link UUID#compareTo}.
+     */
+    public static int compareIds(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
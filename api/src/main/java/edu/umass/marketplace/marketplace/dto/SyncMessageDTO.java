@@ -0,0 +1,24 @@
+package edu.umass.marketplace.marketplace.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Compact message for sync responses: ids instead of embedded sender and listing objects,
+ * which the client already has from its chat list.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncMessageDTO {
+    private UUID id;
+    private UUID chatId;
+    private UUID senderId;
+    private String content;
+    private UUID sharedListingId;
+    private OffsetDateTime createdAt;
+}
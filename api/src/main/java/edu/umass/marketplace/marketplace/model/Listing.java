@@ -67,6 +67,14 @@ public class Listing {
     @Column(name = "updated_at", nullable = false)
     private OffsetDateTime updatedAt;
 
+    // Retention counts from renewedAt instead of createdAt once the seller renews
+    @Column(name = "renewed_at")
+    private OffsetDateTime renewedAt;
+
+    // When the seller was reminded that the listing is about to expire; cleared on renewal
+    @Column(name = "renewal_reminded_at")
+    private OffsetDateTime renewalRemindedAt;
+
     // Constants for listing status
     public static final String STATUS_ACTIVE = "ACTIVE";
     public static final String STATUS_ON_HOLD = "ON_HOLD";
@@ -10,7 +10,13 @@ import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "messages")
+// (sender_id, client_message_id) uniqueness for retried sends is created by MessagePartitionManager (and
+// V12/V14): once V14 partitions the table it is a per-partition index, which ddl-auto must not try to
+// re-add as a table-wide constraint
+@Table(name = "messages", indexes = {
+        // Oldest-first chunks for ChatRetentionService
+        @Index(name = "idx_messages_created_at", columnList = "created_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -32,6 +38,9 @@ public class Message {
     @JoinColumn(name = "shared_listing_id")
     private Listing sharedListing;
 
+    @Column(name = "client_message_id")
+    private UUID clientMessageId;
+
     @Column(name = "content", nullable = false, columnDefinition = "TEXT")
     private String content;
 
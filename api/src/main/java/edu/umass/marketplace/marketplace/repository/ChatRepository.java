@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -26,6 +27,9 @@ public interface ChatRepository extends JpaRepository<Chat, UUID> {
     List<Chat> findByParticipantPair(@Param("firstUserId") UUID firstUserId,
                                      @Param("secondUserId") UUID secondUserId);
 
+    @Query("SELECT c FROM Chat c JOIN FETCH c.buyer JOIN FETCH c.seller WHERE c.id = :chatId")
+    Optional<Chat> findWithParticipantsById(@Param("chatId") UUID chatId);
+
     @Query("""
         SELECT COUNT(c) > 0 FROM Chat c
         WHERE c.id = :chatId
@@ -37,10 +41,4 @@ public interface ChatRepository extends JpaRepository<Chat, UUID> {
     @Modifying
     @Query("UPDATE Chat c SET c.listing = null WHERE c.listing.id = :listingId")
     int clearListingContextByListingId(@Param("listingId") UUID listingId);
-
-    // Delete chats that have no associated messages (orphan chats)
-    @Transactional
-    @Modifying
-    @Query("DELETE FROM Chat c WHERE c.id NOT IN (SELECT m.chat.id FROM Message m)")
-    int deleteOrphanChats();
 }
@@ -34,9 +34,6 @@ public interface ListingRepository extends JpaRepository<Listing, UUID> {
     // Count listings by seller ID and status
     long countBySellerIdAndStatus(UUID sellerId, String status);
 
-    // Find listings created before the given cutoff (for retention cleanup)
-    List<Listing> findByCreatedAtBefore(OffsetDateTime cutoff);
-
     // Find listings with multiple filters
     @Query("SELECT l FROM Listing l WHERE " +
            "((:query IS NULL) OR :query = '' OR (LOWER(l.title) LIKE LOWER(CONCAT('%', COALESCE(:query, ''), '%')) OR LOWER(l.description) LIKE LOWER(CONCAT('%', COALESCE(:query, ''), '%')))) AND " +
@@ -55,4 +52,19 @@ public interface ListingRepository extends JpaRepository<Listing, UUID> {
             @Param("maxPrice") BigDecimal maxPrice,
             Pageable pageable
     );
+
+    // Active listings with mustGoBy after the (afterMustGoBy, afterId) keyset position and no later
+    // than :until, soonest first; served by idx_listings_active_must_go_by. The redundant
+    // mustGoBy >= bound lets Postgres use it as an index condition.
+    @Query("SELECT l FROM Listing l JOIN FETCH l.seller WHERE " +
+           "l.status = 'ACTIVE' AND l.mustGoBy IS NOT NULL AND " +
+           "l.mustGoBy >= :afterMustGoBy AND l.mustGoBy <= :until AND " +
+           "(l.mustGoBy > :afterMustGoBy OR l.id > :afterId) " +
+           "ORDER BY l.mustGoBy ASC, l.id ASC")
+    List<Listing> findExpiringAfter(
+            @Param("afterMustGoBy") OffsetDateTime afterMustGoBy,
+            @Param("afterId") UUID afterId,
+            @Param("until") OffsetDateTime until,
+            Pageable pageable
+    );
 }
@@ -10,6 +10,9 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -17,12 +20,35 @@ import java.util.UUID;
 public interface MessageRepository extends JpaRepository<Message, UUID> {
     Page<Message> findByChatIdOrderByCreatedAtDesc(UUID chatId, Pageable pageable);
     Optional<Message> findTopByChatIdOrderByCreatedAtDesc(UUID chatId);
+    // Oldest match: a retry may have been stored again in a later monthly partition, whose unique
+    // index cannot see the first copy
+    Optional<Message> findFirstByChatIdAndSenderIdAndClientMessageIdOrderByCreatedAtAsc(
+            UUID chatId, UUID senderId, UUID clientMessageId);
+
+    // Messages after the (afterCreatedAt, afterId) keyset position, oldest first. The redundant
+    // createdAt >= bound lets Postgres use it as an index condition.
+    @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId AND " +
+           "m.createdAt >= :afterCreatedAt AND (m.createdAt > :afterCreatedAt OR m.id > :afterId) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findByChatIdAfter(
+            @Param("chatId") UUID chatId,
+            @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+            @Param("afterId") UUID afterId,
+            Pageable pageable
+    );
+
+    @Query("SELECT m FROM Message m WHERE m.chat.id IN :chatIds AND " +
+           "m.createdAt >= :afterCreatedAt AND (m.createdAt > :afterCreatedAt OR m.id > :afterId) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findByChatIdInAfter(
+            @Param("chatIds") Collection<UUID> chatIds,
+            @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+            @Param("afterId") UUID afterId,
+            Pageable pageable
+    );
 
     @Transactional
     @Modifying
     @Query("UPDATE Message m SET m.sharedListing = null WHERE m.sharedListing.id = :listingId")
     int clearSharedListingByListingId(@Param("listingId") UUID listingId);
-
-    // Delete messages older than the provided cutoff time and return number of deleted rows
-    long deleteByCreatedAtBefore(java.time.OffsetDateTime cutoff);
 }
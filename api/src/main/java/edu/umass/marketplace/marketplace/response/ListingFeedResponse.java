@@ -0,0 +1,22 @@
+package edu.umass.marketplace.marketplace.response;
+
+// Listing Feed Response - one keyset page of a listing feed
+// Pass nextMustGoBy and nextId back as afterMustGoBy and afterId to fetch the next page
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListingFeedResponse {
+    private List<ListingResponse> listings;
+    // Position of the last listing on this page; null when the page is empty
+    private OffsetDateTime nextMustGoBy;
+    private UUID nextId;
+    private boolean hasMore;
+}
@@ -37,6 +37,9 @@ public class ListingResponse {
     private Double latitude;
     private Double longitude;
     private OffsetDateTime mustGoBy;
+    private OffsetDateTime renewedAt;
+    // Set while the listing is close to auto-deletion and its seller has been reminded to renew it
+    private OffsetDateTime renewalRemindedAt;
 
     // Static factory method to convert from entity
     public static ListingResponse fromEntity(Listing listing) {
@@ -76,6 +79,8 @@ public class ListingResponse {
                     .latitude(listing.getLatitude())
                     .longitude(listing.getLongitude())
                     .mustGoBy(listing.getMustGoBy())
+                    .renewedAt(listing.getRenewedAt())
+                    .renewalRemindedAt(listing.getRenewalRemindedAt())
                     .build();
         } catch (Exception e) {
             throw new RuntimeException("Error creating ListingResponse: " + e.getMessage(), e);
@@ -39,7 +39,7 @@ public class AuthService {
         User user = userService.createUser(request);
 
         // Generate JWT token for the created user
-        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getName());
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getName(), user.getPictureUrl());
         boolean superuser = superuserConfig.isSuperuser(user.getEmail());
         AuthResponse response = AuthResponse.create(token, UserResponse.fromEntity(user, superuser));
 
@@ -61,7 +61,7 @@ public class AuthService {
             throw new RuntimeException("Invalid email or password");
         }
 
-        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getName());
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getName(), user.getPictureUrl());
         boolean superuser = superuserConfig.isSuperuser(user.getEmail());
         AuthResponse response = AuthResponse.create(token, UserResponse.fromEntity(user, superuser));
 
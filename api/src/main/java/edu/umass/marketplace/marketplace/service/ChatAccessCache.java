@@ -0,0 +1,129 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bounded, expiring cache of (chatId, userId) participant decisions.
+ * Keeps reconnect storms from turning every STOMP SUBSCRIBE into a database query.
+ * Grants are cached longer than rejections so a chat created on another node is
+ * picked up quickly; chats created here are granted eagerly from ChatService.startChat.
+ */
+@Component
+public class ChatAccessCache {
+
+    private final ChatRepository chatRepository;
+    private final Cache<Key, Boolean> decisions;
+    private final Counter rejections;
+    private final Counter cachedRejections;
+
+    public ChatAccessCache(ChatRepository chatRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.access-cache.max-entries:100000}") long maxEntries,
+                           @Value("${chat.access-cache.grant-ttl:PT10M}") Duration grantTtl,
+                           @Value("${chat.access-cache.reject-ttl:PT30S}") Duration rejectTtl) {
+        this.chatRepository = chatRepository;
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new DecisionExpiry(grantTtl, rejectTtl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, decisions, "chat.access");
+        Gauge.builder("chat.access.hit.ratio", decisions, c -> c.stats().hitRate())
+                .description("Share of participant checks answered without a database query")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("chat.access.rejections")
+                .description("Participant checks that denied access")
+                .register(meterRegistry);
+        this.cachedRejections = Counter.builder("chat.access.rejections.cached")
+                .description("Participant checks denied from a cached decision")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns whether the user is a participant of the chat, querying the database only on a cache miss.
+     */
+    public boolean isParticipant(UUID chatId, UUID userId) {
+        boolean[] loaded = {false};
+        boolean allowed = decisions.get(new Key(chatId, userId), key -> {
+            loaded[0] = true;
+            return chatRepository.existsByIdAndParticipant(key.chatId(), key.userId());
+        });
+        if (!allowed) {
+            rejections.increment();
+            if (!loaded[0]) {
+                cachedRejections.increment();
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Record both participants of a chat as allowed, replacing any cached rejection. Inside a
+     * transaction the grant is applied once it commits, so a rolled-back chat is never granted.
+     */
+    public void grant(UUID chatId, UUID buyerId, UUID sellerId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    putGrant(chatId, buyerId, sellerId);
+                }
+            });
+        } else {
+            putGrant(chatId, buyerId, sellerId);
+        }
+    }
+
+    private void putGrant(UUID chatId, UUID buyerId, UUID sellerId) {
+        decisions.put(new Key(chatId, buyerId), Boolean.TRUE);
+        decisions.put(new Key(chatId, sellerId), Boolean.TRUE);
+    }
+
+    /**
+     * Drop every cached decision for the given chats, e.g. after they were deleted.
+     */
+    public void invalidateChats(Collection<UUID> chatIds) {
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        Set<UUID> ids = chatIds instanceof Set<UUID> set ? set : new HashSet<>(chatIds);
+        decisions.asMap().keySet().removeIf(key -> ids.contains(key.chatId()));
+    }
+
+    private record Key(UUID chatId, UUID userId) {}
+
+    private record DecisionExpiry(Duration grantTtl, Duration rejectTtl) implements Expiry<Key, Boolean> {
+
+        @Override
+        public long expireAfterCreate(Key key, Boolean allowed, long currentTime) {
+            return (allowed ? grantTtl : rejectTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Boolean allowed, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, allowed, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Boolean allowed, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
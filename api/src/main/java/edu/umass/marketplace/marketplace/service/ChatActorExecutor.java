@@ -0,0 +1,166 @@
+package edu.umass.marketplace.marketplace.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs chat work on striped serial executors ("actors"), one stripe per chatId hash.
+ *
+ * Tasks for the same chat always land on the same stripe and run one at a time in submission
+ * order, so messages persist in the order they arrived. Different stripes drain in parallel on
+ * virtual threads, so a slow chat only delays chats that hash to its stripe and never holds a
+ * clientInbound thread. Each stripe's backlog is exported as chat.actor.queue.depth{stripe}.
+ *
+ * Ordering starts at the transport: WebSocketConfig preserves receive order per session, so one
+ * client's frames reach {@link #execute} in the order they were sent. Mailboxes are bounded by
+ * chat.actors.mailbox-capacity; a full stripe rejects new work (counted in chat.actor.rejected)
+ * so the caller can push back on the sender instead of growing the heap.
+ */
+@Component
+@Slf4j
+public class ChatActorExecutor {
+
+    // Tasks drained per turn before a busy stripe yields its thread
+    private static final int BATCH_SIZE = 64;
+
+    private final Stripe[] stripes;
+    private final ExecutorService carrier;
+    private final int mailboxCapacity;
+    private final Counter rejected;
+
+    public ChatActorExecutor(MeterRegistry meterRegistry,
+                             @Value("${chat.actors.stripes:64}") int stripeCount,
+                             @Value("${chat.actors.mailbox-capacity:1024}") int mailboxCapacity) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("chat.actors.stripes must be positive");
+        }
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException("chat.actors.mailbox-capacity must be positive");
+        }
+        this.mailboxCapacity = mailboxCapacity;
+        this.rejected = Counter.builder("chat.actor.rejected")
+                .description("Chat tasks refused because their stripe's mailbox was full")
+                .register(meterRegistry);
+        this.carrier = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-actor-", 0).factory());
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            Stripe stripe = new Stripe();
+            stripes[i] = stripe;
+            Gauge.builder("chat.actor.queue.depth", stripe.depth, AtomicInteger::get)
+                    .description("Chat tasks waiting or running on this stripe")
+                    .tag("stripe", Integer.toString(i))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Queue a task behind all earlier tasks for the same chat. Failures are only logged.
+     *
+     * @return false if the chat's stripe is full and the task was not queued
+     */
+    public boolean execute(UUID chatId, Runnable task) {
+        return execute(chatId, task, ex -> { });
+    }
+
+    /**
+     * Queue a task behind all earlier tasks for the same chat, calling onFailure on the actor
+     * thread if the task throws.
+     *
+     * @return false if the chat's stripe is full and the task was not queued
+     */
+    public boolean execute(UUID chatId, Runnable task, Consumer<? super Exception> onFailure) {
+        boolean accepted = stripes[Math.floorMod(chatId.hashCode(), stripes.length)].submit(task, onFailure);
+        if (!accepted) {
+            rejected.increment();
+        }
+        return accepted;
+    }
+
+    public int queueDepth(UUID chatId) {
+        return stripes[Math.floorMod(chatId.hashCode(), stripes.length)].depth.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        carrier.shutdown();
+        if (!carrier.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Chat actors still busy at shutdown; abandoning queued messages");
+            carrier.shutdownNow();
+        }
+    }
+
+    private final class Stripe {
+        private final Queue<Task> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        boolean submit(Runnable task, Consumer<? super Exception> onFailure) {
+            // depth counts queued and running tasks, so reserve a slot before enqueueing
+            if (depth.incrementAndGet() > mailboxCapacity) {
+                depth.decrementAndGet();
+                return false;
+            }
+            mailbox.add(new Task(task, onFailure));
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                carrier.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    Task task = mailbox.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        depth.decrementAndGet();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // A task may have arrived after the last poll but before we cleared the flag.
+                if (!mailbox.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private record Task(Runnable body, Consumer<? super Exception> onFailure) {
+        void run() {
+            try {
+                body.run();
+            } catch (Exception ex) {
+                log.warn("Chat task failed: {}", ex.getMessage(), ex);
+                try {
+                    onFailure.accept(ex);
+                } catch (Exception reportFailure) {
+                    log.warn("Could not report chat task failure: {}", reportFailure.getMessage());
+                }
+            }
+        }
+    }
+}
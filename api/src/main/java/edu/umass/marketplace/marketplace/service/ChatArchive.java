@@ -0,0 +1,221 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umass.marketplace.common.storage.ObjectStorage;
+import edu.umass.marketplace.marketplace.dto.ArchivedChatDTO;
+import edu.umass.marketplace.marketplace.dto.SyncMessageDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for expired chat history, so ChatRetentionService can remove messages from
+ * Postgres without losing them.
+ *
+ * Each write produces one immutable segment per chat under {chat.archive.prefix}{chatId}/, named
+ * by the epoch millis and id of its first message so keys sort chronologically. A segment is gzip
+ * JSON lines: a header with the chat's participants and listing, then one line per message.
+ * Segments are never rewritten; a chat's archive only grows by new segments. Retention archives
+ * before it deletes, so a crash in between re-archives the same messages; readers drop the
+ * duplicates by message id.
+ *
+ * Reads decode the segments straight from storage and never touch Postgres.
+ */
+@Component
+public class ChatArchive {
+
+    static final String CONTENT_TYPE = "application/gzip";
+    static final int FORMAT_VERSION = 1;
+    private static final Comparator<ArchivedMessage> ORDER =
+            Comparator.comparing(ArchivedMessage::createdAt).thenComparing(ArchivedMessage::id);
+
+    private final ObjectStorage storage;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final String prefix;
+    private final Counter archivedMessages;
+    private final Counter segmentsWritten;
+
+    public ChatArchive(ObjectStorage storage,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${chat.archive.enabled:${aws.s3.enabled:false}}") boolean enabled,
+                       @Value("${chat.archive.prefix:chat-archive/}") String prefix) {
+        this.storage = storage;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        this.archivedMessages = Counter.builder("chat.archive.messages")
+                .description("Messages written to the chat archive")
+                .register(meterRegistry);
+        this.segmentsWritten = Counter.builder("chat.archive.segments")
+                .description("Chat archive segments written")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Write the messages to storage, one segment per chat. Throws if any segment fails, in which
+     * case the caller must not delete the messages.
+     */
+    public void write(List<ArchivedMessage> messages) {
+        Map<UUID, List<ArchivedMessage>> byChat = new LinkedHashMap<>();
+        for (ArchivedMessage message : messages) {
+            byChat.computeIfAbsent(message.chatId(), id -> new ArrayList<>()).add(message);
+        }
+        for (List<ArchivedMessage> chatMessages : byChat.values()) {
+            chatMessages.sort(ORDER);
+            ArchivedMessage first = chatMessages.get(0);
+            storage.put(segmentKey(first), encode(chatMessages), CONTENT_TYPE);
+            segmentsWritten.increment();
+            archivedMessages.increment(chatMessages.size());
+        }
+    }
+
+    /**
+     * The chat's archived history, or empty if nothing of it was ever archived or the user is not
+     * its buyer or seller. Participants are checked against the first segment's header before any
+     * other segment is fetched, so outsiders cannot make us read a whole archive.
+     */
+    public Optional<ArchivedChatDTO> load(UUID chatId, UUID userId) {
+        List<String> keys = storage.list(prefix + chatId + "/");
+        if (keys.isEmpty()) {
+            return Optional.empty();
+        }
+        Segment latest = null;
+        Map<UUID, ArchivedMessage> messages = new LinkedHashMap<>();
+        for (String key : keys) {
+            Optional<byte[]> content = storage.get(key);
+            if (content.isEmpty()) {
+                // Listed, then deleted before we got to it
+                continue;
+            }
+            if (latest == null && !isParticipant(readHeader(content.get()), userId)) {
+                return Optional.empty();
+            }
+            Segment segment = decode(content.get());
+            latest = segment;
+            for (ArchivedMessage message : segment.messages()) {
+                messages.putIfAbsent(message.id(), message);
+            }
+        }
+        if (latest == null) {
+            return Optional.empty();
+        }
+        List<SyncMessageDTO> history = messages.values().stream()
+                .sorted(ORDER)
+                .map(m -> new SyncMessageDTO(m.id(), m.chatId(), m.senderId(), m.content(), m.sharedListingId(),
+                        m.createdAt()))
+                .toList();
+        SegmentHeader header = latest.header();
+        return Optional.of(new ArchivedChatDTO(chatId, header.listingId(), header.buyerId(), header.sellerId(),
+                header.chatCreatedAt(), history));
+    }
+
+    String segmentKey(ArchivedMessage first) {
+        return String.format("%s%s/%013d-%s.jsonl.gz", prefix, first.chatId(),
+                first.createdAt().toInstant().toEpochMilli(), first.id());
+    }
+
+    private byte[] encode(List<ArchivedMessage> messages) {
+        ArchivedMessage first = messages.get(0);
+        SegmentHeader header = new SegmentHeader(FORMAT_VERSION, first.chatId(), first.listingId(),
+                first.buyerId(), first.sellerId(), first.chatCreatedAt());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            out.write(objectMapper.writeValueAsString(header));
+            out.write('\n');
+            for (ArchivedMessage message : messages) {
+                out.write(objectMapper.writeValueAsString(SegmentLine.of(message)));
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode archive segment for chat " + first.chatId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static boolean isParticipant(SegmentHeader header, UUID userId) {
+        return userId.equals(header.buyerId()) || userId.equals(header.sellerId());
+    }
+
+    // Only inflates as far as the first line
+    private SegmentHeader readHeader(byte[] content) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(content)), StandardCharsets.UTF_8))) {
+            return objectMapper.readValue(in.readLine(), SegmentHeader.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode archive segment header", e);
+        }
+    }
+
+    private Segment decode(byte[] content) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(content)), StandardCharsets.UTF_8))) {
+            SegmentHeader header = objectMapper.readValue(in.readLine(), SegmentHeader.class);
+            List<ArchivedMessage> messages = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    messages.add(objectMapper.readValue(line, SegmentLine.class).toMessage(header));
+                }
+            }
+            return new Segment(header, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode archive segment", e);
+        }
+    }
+
+    /**
+     * One message plus the chat it belongs to, as selected by retention just before deletion.
+     */
+    public record ArchivedMessage(UUID id, UUID chatId, UUID senderId, UUID clientMessageId,
+                                  UUID sharedListingId, String content, OffsetDateTime createdAt,
+                                  UUID listingId, UUID buyerId, UUID sellerId, OffsetDateTime chatCreatedAt) {
+    }
+
+    record SegmentHeader(int version, UUID chatId, UUID listingId, UUID buyerId, UUID sellerId,
+                         OffsetDateTime chatCreatedAt) {
+    }
+
+    record SegmentLine(UUID id, UUID senderId, UUID clientMessageId, UUID sharedListingId, String content,
+                       OffsetDateTime createdAt) {
+
+        static SegmentLine of(ArchivedMessage m) {
+            return new SegmentLine(m.id(), m.senderId(), m.clientMessageId(), m.sharedListingId(), m.content(),
+                    m.createdAt());
+        }
+
+        ArchivedMessage toMessage(SegmentHeader header) {
+            return new ArchivedMessage(id, header.chatId(), senderId, clientMessageId, sharedListingId, content,
+                    createdAt, header.listingId(), header.buyerId(), header.sellerId(), header.chatCreatedAt());
+        }
+    }
+
+    private record Segment(SegmentHeader header, List<ArchivedMessage> messages) {
+    }
+}
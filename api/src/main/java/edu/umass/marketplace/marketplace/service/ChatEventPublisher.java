@@ -0,0 +1,96 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.ChatErrorDTO;
+import edu.umass.marketplace.marketplace.dto.ChatEventDTO;
+import edu.umass.marketplace.marketplace.dto.InboxUpdateDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Publishes chat traffic to STOMP subscribers.
+ * Full messages go to each participant's /user/queue/chat-events, a single stream multiplexing all
+ * of that user's chats, and (unless chat.events.topic-broadcast is off) to /topic/chat/{chatId} for
+ * clients still subscribing per chat. Each participant also gets a compact inbox delta on
+ * /user/queue/inbox so their chat list stays current over one subscription.
+ * Sends go through StompFanout so subscribers connected to other API nodes receive them too.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatEventPublisher {
+
+    public static final String INBOX_DESTINATION = "/queue/inbox";
+    public static final String CHAT_EVENTS_DESTINATION = "/queue/chat-events";
+    public static final String ERRORS_DESTINATION = "/queue/errors";
+    static final int PREVIEW_LENGTH = 80;
+
+    private final StompFanout stompFanout;
+
+    // Per-chat topics cost the broker one subscription per open chat per client; turn off once
+    // all clients read /user/queue/chat-events instead
+    @Value("${chat.events.topic-broadcast:true}")
+    private boolean topicBroadcast = true;
+
+    public void publish(MessageDelivery delivery) {
+        MessageDTO message = delivery.getMessage();
+        if (topicBroadcast) {
+            stompFanout.sendToTopic("/topic/chat/" + message.getChatId(), message);
+        }
+
+        ChatEventDTO event = ChatEventDTO.message(message);
+        sendChatEvent(delivery.getBuyer(), event);
+        sendChatEvent(delivery.getSeller(), event);
+
+        UUID senderId = message.getSender() != null ? message.getSender().getId() : null;
+        sendInboxUpdate(delivery.getBuyer(), message, senderId);
+        sendInboxUpdate(delivery.getSeller(), message, senderId);
+    }
+
+    /**
+     * Tell the sender of a STOMP frame that it was rejected or failed, without closing their session.
+     *
+     * @param user STOMP user name of the sender, i.e. the account email
+     */
+    public void publishError(String user, ChatErrorDTO error) {
+        if (user != null) {
+            stompFanout.sendToUser(user, ERRORS_DESTINATION, error);
+        }
+    }
+
+    private void sendChatEvent(UserDto participant, ChatEventDTO event) {
+        if (participant != null && participant.getEmail() != null) {
+            stompFanout.sendToUser(participant.getEmail(), CHAT_EVENTS_DESTINATION, event);
+        }
+    }
+
+    private void sendInboxUpdate(UserDto participant, MessageDTO message, UUID senderId) {
+        if (participant == null || participant.getEmail() == null) {
+            return;
+        }
+        InboxUpdateDTO update = new InboxUpdateDTO(
+                message.getChatId(),
+                message.getId(),
+                senderId,
+                preview(message.getContent()),
+                !participant.getId().equals(senderId),
+                message.getCreatedAt());
+        // STOMP user destinations resolve by Principal#getName(), which is the account email.
+        stompFanout.sendToUser(participant.getEmail(), INBOX_DESTINATION, update);
+    }
+
+    static String preview(String content) {
+        if (content == null) {
+            return "";
+        }
+        String singleLine = content.replaceAll("\\s+", " ").trim();
+        return singleLine.length() <= PREVIEW_LENGTH
+                ? singleLine
+                : singleLine.substring(0, PREVIEW_LENGTH - 1) + "…";
+    }
+}
@@ -0,0 +1,77 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Cached buyer/seller of each chat, for paths that route by participant at send time without a
+ * transaction: write-behind message acceptance and the per-user chat event stream.
+ * Participants of a chat never change, so entries only go stale when the chat is deleted.
+ */
+@Component
+public class ChatParticipantDirectory {
+
+    private final ChatRepository chatRepository;
+    private final Cache<UUID, Participants> participants;
+
+    public ChatParticipantDirectory(ChatRepository chatRepository,
+                                    @Value("${chat.persistence.participant-cache-ttl:PT10M}") Duration ttl,
+                                    @Value("${chat.persistence.participant-cache-max-entries:100000}") long maxEntries) {
+        this.chatRepository = chatRepository;
+        this.participants = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Participants of the chat, or null if it does not exist.
+     */
+    public Participants get(UUID chatId) {
+        return participants.get(chatId, this::load);
+    }
+
+    /**
+     * Drop cached participants for deleted chats.
+     */
+    public void invalidateChats(Collection<UUID> chatIds) {
+        participants.invalidateAll(chatIds);
+    }
+
+    private Participants load(UUID chatId) {
+        return chatRepository.findWithParticipantsById(chatId)
+                .map(chat -> new Participants(toUserDto(chat.getBuyer()), toUserDto(chat.getSeller())))
+                .orElse(null);
+    }
+
+    private static UserDto toUserDto(User user) {
+        return UserDto.builder()
+                .id(user.getId())
+                .name(user.getName())
+                .email(user.getEmail())
+                .pictureUrl(user.getPictureUrl())
+                .build();
+    }
+
+    public record Participants(UserDto buyer, UserDto seller) {
+
+        /**
+         * The participant with this id, or null if the user is not part of the chat.
+         */
+        public UserDto participant(UUID userId) {
+            if (userId.equals(buyer.getId())) {
+                return buyer;
+            }
+            return userId.equals(seller.getId()) ? seller : null;
+        }
+    }
+}
@@ -1,42 +1,404 @@
 package edu.umass.marketplace.marketplace.service;
 
-import edu.umass.marketplace.marketplace.repository.ChatRepository;
-import edu.umass.marketplace.marketplace.repository.MessageRepository;
-import lombok.RequiredArgsConstructor;
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.marketplace.service.ChatArchive.ArchivedMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Scheduled task to purge old chat messages and orphan chats based on retention policy.
+ *
+ * Both phases run in bounded batches of chat.retention.batch-size rows, each batch a single
+ * autocommitted statement, with chat.retention.batch-pause between batches so the job never holds
+ * locks or I/O long enough to show up in live chat latency. Expired messages go oldest first
+ * (idx_messages_created_at); orphan chats are found with a keyset scan over chats and a NOT EXISTS
+ * probe on idx_messages_chat_id, rechecked in the DELETE so a chat that just got its first
+ * message survives. A run stops after max-batches-per-run batches per phase and the next run
+ * continues from there; the orphan scan keeps its keyset position between runs.
+ *
+ * Once messages is partitioned by month (see MessagePartitionManager), expired months are dropped
+ * whole and only messages_default is purged row by row.
+ *
+ * With chat.archive.enabled (see ChatArchive) nothing is deleted before it is archived: expired
+ * rows are selected, written to cold storage, and only then deleted by id; an expired partition is
+ * archived a page of batch-size rows at a time, keyset-ordered by chat, and dropped once all of it
+ * is archived. Partition archiving spends the same budget as the row purge, so a large month is
+ * archived over several runs, each continuing from where the last one stopped. If the archive
+ * cannot be written, the rows stay until a later run.
+ *
+ * With retention.mode=continuous (see RetentionSchedule) the nightly run is replaced by short
+ * ticks; both phases share one tick's row and time budget, expired messages first.
+ * chat.retention.lag reports how far the oldest row-purged message is past the cutoff.
+ * With several API nodes, ClusterJobLock makes sure only one of them runs the job at a time.
  */
 @Component
-@RequiredArgsConstructor
 public class ChatRetentionService {
 
     private static final Logger log = LoggerFactory.getLogger(ChatRetentionService.class);
 
-    private final MessageRepository messageRepository;
-    private final ChatRepository chatRepository;
+    // %1$s is the table: messages, or messages_default when partitioned
+    static final String DELETE_MESSAGES_SQL = """
+            DELETE FROM %1$s WHERE id IN (
+                SELECT id FROM %1$s
+                WHERE created_at < ?
+                ORDER BY created_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING chat_id""";
+    // Only chats created before the cutoff: a chat opened moments ago has simply not had its first message yet
+    static final String FIND_ORPHAN_CHATS_SQL = """
+            SELECT c.id FROM chats c
+            WHERE c.id > ?
+              AND c.created_at < ?
+              AND NOT EXISTS (SELECT 1 FROM messages m WHERE m.chat_id = c.id)
+            ORDER BY c.id
+            LIMIT ?""";
+    static final String DELETE_ORPHAN_CHATS_SQL = """
+            DELETE FROM chats c
+            WHERE c.id = ANY(?)
+              AND NOT EXISTS (SELECT 1 FROM messages m WHERE m.chat_id = c.id)
+            RETURNING c.id""";
+    // %1$s as above; the chat columns go into each archive segment's header
+    static final String SELECT_EXPIRED_FOR_ARCHIVE_SQL = """
+            SELECT m.id, m.chat_id, m.sender_id, m.client_message_id, m.shared_listing_id, m.content, m.created_at,
+                   c.listing_id, c.buyer_id, c.seller_id, c.created_at AS chat_created_at
+            FROM %1$s m
+            JOIN chats c ON c.id = m.chat_id
+            WHERE m.created_at < ?
+            ORDER BY m.created_at
+            LIMIT ?""";
+    static final String DELETE_ARCHIVED_MESSAGES_SQL = "DELETE FROM %1$s WHERE id = ANY(?) RETURNING chat_id";
+    // %1$s is an expired monthly partition, archived one page at a time after the
+    // (chat_id, created_at, id) position of the previous page; newest first within a chat to follow
+    // idx_messages_chat_created_at_desc
+    static final String SELECT_PARTITION_PAGE_FOR_ARCHIVE_SQL = """
+            SELECT m.id, m.chat_id, m.sender_id, m.client_message_id, m.shared_listing_id, m.content, m.created_at,
+                   c.listing_id, c.buyer_id, c.seller_id, c.created_at AS chat_created_at
+            FROM %1$s m
+            JOIN chats c ON c.id = m.chat_id
+            WHERE m.chat_id >= ?
+              AND (m.chat_id > ? OR (m.created_at, m.id) < (?, ?))
+            ORDER BY m.chat_id, m.created_at DESC, m.id DESC
+            LIMIT ?""";
+    static final String OLDEST_MESSAGE_SQL = "SELECT MIN(created_at) FROM %s";
+    static final String JOB_NAME = "chat-retention";
+    static final String NIGHTLY_CRON = "0 0 3 * * ?";
+    private static final UUID FIRST_ID = new UUID(0, 0);
+    private static final PartitionPosition PARTITION_START =
+            new PartitionPosition(FIRST_ID, OffsetDateTime.parse("1970-01-01T00:00:00Z"), FIRST_ID);
+    private static final RowMapper<ArchivedMessage> ARCHIVE_ROW = (rs, rowNum) -> new ArchivedMessage(
+            rs.getObject("id", UUID.class),
+            rs.getObject("chat_id", UUID.class),
+            rs.getObject("sender_id", UUID.class),
+            rs.getObject("client_message_id", UUID.class),
+            rs.getObject("shared_listing_id", UUID.class),
+            rs.getString("content"),
+            rs.getObject("created_at", OffsetDateTime.class),
+            rs.getObject("listing_id", UUID.class),
+            rs.getObject("buyer_id", UUID.class),
+            rs.getObject("seller_id", UUID.class),
+            rs.getObject("chat_created_at", OffsetDateTime.class));
 
-    // retention in days (default 90)
-    @Value("${chat.retentionDays:90}")
-    private long retentionDays;
+    private final JdbcTemplate jdbcTemplate;
+    private final MessagePartitionManager partitions;
+    private final ChatArchive archive;
+    private final ChatAccessCache chatAccessCache;
+    private final MessageWriteBehind messageWriteBehind;
+    private final RecentMessageBuffer recentMessages;
+    private final RetentionSchedule schedule;
+    private final ClusterJobLock jobLock;
+    private final long retentionDays;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Duration batchPause;
+    private final Counter deletedMessages;
+    private final Counter deletedChats;
+    private final Timer runTimer;
+    // Seconds the oldest message left after the last run is past the cutoff, 0 when caught up
+    private final AtomicLong lagSeconds = new AtomicLong();
+    // Keyset position of this node's orphan chat scan; only touched under the job lock
+    private UUID orphanCursor = FIRST_ID;
+    // Partition being archived and how far; only touched under the job lock
+    private String archivingPartition;
+    private PartitionPosition partitionPosition = PARTITION_START;
 
-    // Run once daily at 03:00 AM
-    @Scheduled(cron = "0 0 3 * * ?")
+    public ChatRetentionService(JdbcTemplate jdbcTemplate,
+                                MessagePartitionManager partitions,
+                                ChatArchive archive,
+                                ChatAccessCache chatAccessCache,
+                                MessageWriteBehind messageWriteBehind,
+                                RecentMessageBuffer recentMessages,
+                                RetentionSchedule schedule,
+                                ClusterJobLock jobLock,
+                                MeterRegistry meterRegistry,
+                                // retention in days (default 90)
+                                @Value("${chat.retentionDays:90}") long retentionDays,
+                                @Value("${chat.retention.batch-size:1000}") int batchSize,
+                                @Value("${chat.retention.max-batches-per-run:500}") int maxBatchesPerRun,
+                                @Value("${chat.retention.batch-pause:PT0.2S}") Duration batchPause) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitions = partitions;
+        this.archive = archive;
+        this.chatAccessCache = chatAccessCache;
+        this.messageWriteBehind = messageWriteBehind;
+        this.recentMessages = recentMessages;
+        this.schedule = schedule;
+        this.jobLock = jobLock;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.batchPause = batchPause;
+        this.deletedMessages = Counter.builder("chat.retention.messages.deleted")
+                .description("Expired chat messages deleted by the retention job")
+                .register(meterRegistry);
+        this.deletedChats = Counter.builder("chat.retention.chats.deleted")
+                .description("Orphan chats deleted by the retention job")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("chat.retention.run")
+                .description("Duration of one nightly retention run or continuous tick")
+                .register(meterRegistry);
+        Gauge.builder("chat.retention.lag", lagSeconds, AtomicLong::get)
+                .description("How far the oldest expired message left is past the retention cutoff")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    // Run once daily at 03:00 AM, on one node per night
+    @Scheduled(cron = NIGHTLY_CRON)
     public void purgeOldChatsAndMessages() {
+        if (schedule.isContinuous()) {
+            return;
+        }
+        long maxRows = (long) batchSize * maxBatchesPerRun;
+        jobLock.runOncePerWindow(JOB_NAME, NIGHTLY_CRON, () -> {
+            log.info("Running chat retention cleanup. Deleting messages older than {} days", retentionDays);
+            runTimer.record(() -> run(schedule.nightly(maxRows), schedule.nightly(maxRows)));
+        });
+    }
+
+    /**
+     * One continuous-mode tick; a no-op in nightly mode.
+     */
+    @Scheduled(fixedDelayString = "${retention.continuous.interval:PT5M}",
+            initialDelayString = "${retention.continuous.interval:PT5M}")
+    public void purgeIncrementally() {
+        if (schedule.isContinuous()) {
+            jobLock.runExclusively(JOB_NAME, () -> {
+                RetentionSchedule.Budget budget = schedule.tick();
+                runTimer.record(() -> run(budget, budget));
+            });
+        }
+    }
+
+    private void run(RetentionSchedule.Budget messageBudget, RetentionSchedule.Budget chatBudget) {
         OffsetDateTime cutoff = OffsetDateTime.now().minusDays(retentionDays);
-        log.info("Running chat retention cleanup. Deleting messages before {} ({} days)", cutoff, retentionDays);
 
-        long deletedMessages = messageRepository.deleteByCreatedAtBefore(cutoff);
-        log.info("Deleted {} old messages", deletedMessages);
+        // Land any write-behind messages first so chats they belong to are not mistaken for orphans.
+        messageWriteBehind.flushNow();
+
+        String table = "messages";
+        try {
+            if (partitions.isPartitioned()) {
+                int dropped = dropExpiredPartitions(cutoff, messageBudget);
+                if (dropped > 0) {
+                    // Buffered totals and history no longer match the table.
+                    recentMessages.invalidateAll();
+                    log.info("Dropped {} expired message partitions", dropped);
+                }
+                table = "messages_default";
+            }
+            long messages = purgeMessages(table, cutoff, messageBudget);
+            report("Deleted {} old messages", messages);
+            long chats = purgeOrphanChats(cutoff, chatBudget);
+            report("Deleted {} orphan chats (no messages)", chats);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Chat retention interrupted; the next run continues where this one stopped");
+        }
+        updateLag(table, cutoff);
+    }
+
+    private int dropExpiredPartitions(OffsetDateTime cutoff, RetentionSchedule.Budget budget)
+            throws InterruptedException {
+        int dropped = 0;
+        for (String partition : partitions.expiredPartitions(cutoff)) {
+            if (archive.isEnabled() && !archivePartition(partition, budget)) {
+                break;
+            }
+            if (!partitions.dropPartition(partition)) {
+                break;
+            }
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Archive the rest of an expired partition, one page of at most batch-size rows in memory at a
+     * time. Returns true once all of it is archived; false if the budget ran out first (the next run
+     * continues from the saved position) or the archive could not be written.
+     */
+    private boolean archivePartition(String partition, RetentionSchedule.Budget budget) throws InterruptedException {
+        if (!partition.equals(archivingPartition)) {
+            archivingPartition = partition;
+            partitionPosition = PARTITION_START;
+        }
+        String sql = SELECT_PARTITION_PAGE_FOR_ARCHIVE_SQL.formatted(partition);
+        long messages = 0;
+        while (!budget.exhausted()) {
+            int limit = budget.nextBatch(batchSize);
+            PartitionPosition after = partitionPosition;
+            List<ArchivedMessage> rows = jdbcTemplate.query(sql, ARCHIVE_ROW,
+                    after.chatId(), after.chatId(), after.createdAt(), after.id(), limit);
+            if (!rows.isEmpty() && !write(rows)) {
+                log.error("Keeping expired partition {} until it can be archived", partition);
+                return false;
+            }
+            budget.spend(rows.size());
+            messages += rows.size();
+            if (rows.size() < limit) {
+                log.info("Archived {} messages from expired partition {}", messages, partition);
+                archivingPartition = null;
+                partitionPosition = PARTITION_START;
+                return true;
+            }
+            ArchivedMessage last = rows.get(rows.size() - 1);
+            partitionPosition = new PartitionPosition(last.chatId(), last.createdAt(), last.id());
+            pause();
+        }
+        log.info("Archived {} messages from expired partition {} before running out of budget; "
+                + "the next run continues it", messages, partition);
+        return false;
+    }
+
+    private long purgeMessages(String table, OffsetDateTime cutoff, RetentionSchedule.Budget budget)
+            throws InterruptedException {
+        String sql = DELETE_MESSAGES_SQL.formatted(table);
+        long total = 0;
+        while (!budget.exhausted()) {
+            int limit = budget.nextBatch(batchSize);
+            int selected;
+            List<UUID> chatIds;
+            if (archive.isEnabled()) {
+                List<ArchivedMessage> rows = jdbcTemplate.query(SELECT_EXPIRED_FOR_ARCHIVE_SQL.formatted(table),
+                        ARCHIVE_ROW, cutoff, limit);
+                if (!rows.isEmpty() && !write(rows)) {
+                    return total;
+                }
+                selected = rows.size();
+                chatIds = rows.isEmpty() ? List.of() : deleteArchived(table, rows);
+            } else {
+                chatIds = jdbcTemplate.queryForList(sql, UUID.class, cutoff, limit);
+                selected = chatIds.size();
+            }
+            budget.spend(selected);
+            if (!chatIds.isEmpty()) {
+                // Buffered totals and history of these chats no longer match the table.
+                recentMessages.invalidateChats(new HashSet<>(chatIds));
+                deletedMessages.increment(chatIds.size());
+                total += chatIds.size();
+            }
+            if (selected < limit) {
+                return total;
+            }
+            pause();
+        }
+        log.info("Message retention stopped after {} messages; more remain for the next run", total);
+        return total;
+    }
+
+    private boolean write(List<ArchivedMessage> rows) {
+        try {
+            archive.write(rows);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to archive {} expired messages; they are kept for the next run: {}",
+                    rows.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private List<UUID> deleteArchived(String table, List<ArchivedMessage> rows) {
+        Object[] ids = rows.stream().map(ArchivedMessage::id).toArray();
+        return jdbcTemplate.query(DELETE_ARCHIVED_MESSAGES_SQL.formatted(table),
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids)),
+                (rs, rowNum) -> rs.getObject(1, UUID.class));
+    }
+
+    private long purgeOrphanChats(OffsetDateTime cutoff, RetentionSchedule.Budget budget) throws InterruptedException {
+        long total = 0;
+        while (!budget.exhausted()) {
+            int limit = budget.nextBatch(batchSize);
+            List<UUID> candidates = jdbcTemplate.queryForList(FIND_ORPHAN_CHATS_SQL, UUID.class,
+                    orphanCursor, cutoff, limit);
+            // Scanned candidates are the work done, whether or not they turn out to be orphans
+            budget.spend(candidates.size());
+            if (candidates.isEmpty()) {
+                orphanCursor = FIRST_ID;
+                return total;
+            }
+            orphanCursor = candidates.get(candidates.size() - 1);
+            Object[] ids = candidates.toArray();
+            List<UUID> deleted = jdbcTemplate.query(DELETE_ORPHAN_CHATS_SQL,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids)),
+                    (rs, rowNum) -> rs.getObject(1, UUID.class));
+            if (!deleted.isEmpty()) {
+                Set<UUID> chatIds = new HashSet<>(deleted);
+                chatAccessCache.invalidateChats(chatIds);
+                messageWriteBehind.invalidateChats(chatIds);
+                recentMessages.invalidateChats(chatIds);
+                deletedChats.increment(deleted.size());
+                total += deleted.size();
+            }
+            if (candidates.size() < limit) {
+                orphanCursor = FIRST_ID;
+                return total;
+            }
+            pause();
+        }
+        log.info("Orphan chat cleanup deleted {} chats before running out of budget; the next run continues the scan", total);
+        return total;
+    }
+
+    // Continuous ticks only log when they did something
+    private void report(String message, long count) {
+        if (count > 0 || !schedule.isContinuous()) {
+            log.info(message, count);
+        }
+    }
+
+    private void updateLag(String table, OffsetDateTime cutoff) {
+        try {
+            OffsetDateTime oldest = jdbcTemplate.queryForObject(OLDEST_MESSAGE_SQL.formatted(table), OffsetDateTime.class);
+            lagSeconds.set(oldest == null || !oldest.isBefore(cutoff) ? 0 : Duration.between(oldest, cutoff).toSeconds());
+        } catch (Exception e) {
+            log.warn("Could not measure chat retention lag: {}", e.getMessage());
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (!batchPause.isZero()) {
+            Thread.sleep(batchPause.toMillis());
+        }
+    }
 
-        int deletedChats = chatRepository.deleteOrphanChats();
-        log.info("Deleted {} orphan chats (no messages)", deletedChats);
+    private record PartitionPosition(UUID chatId, OffsetDateTime createdAt, UUID id) {
     }
 }
@@ -1,8 +1,12 @@
 package edu.umass.marketplace.marketplace.service;
 
 import edu.umass.marketplace.marketplace.dto.ChatDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSyncResponse;
 import edu.umass.marketplace.marketplace.dto.ListingDto;
 import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.SyncCursor;
+import edu.umass.marketplace.marketplace.dto.SyncMessageDTO;
 import edu.umass.marketplace.marketplace.dto.UserDto;
 import edu.umass.marketplace.marketplace.model.Chat;
 import edu.umass.marketplace.marketplace.model.Listing;
@@ -13,15 +17,24 @@ import edu.umass.marketplace.marketplace.repository.ListingRepository;
 import edu.umass.marketplace.marketplace.repository.MessageRepository;
 import edu.umass.marketplace.marketplace.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -33,6 +46,16 @@ public class ChatService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final ListingRepository listingRepository;
+    private final ChatAccessCache chatAccessCache;
+    private final MessageWriteBehind messageWriteBehind;
+    private final RecentMessageBuffer recentMessages;
+    private final MessageDeduplicator messageDeduplicator;
+    private final TransactionTemplate transactionTemplate;
+
+    // Lowest and highest UUIDs in database order, for keyset cursors at the edges of a timestamp
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+    private static final UUID LAST_ID = new UUID(-1L, -1L);
+    private static final OffsetDateTime EPOCH = OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC);
 
     @Transactional
     public ChatDTO startChat(UUID listingId, UUID buyerId) {
@@ -52,7 +75,7 @@ public class ChatService {
             Chat chat = existingChats.get(0);
             // Keep latest listing context so the UI can show what item is being discussed now.
             chat.setListing(listing);
-            return convertToDTO(chatRepository.save(chat));
+            return convertToDTO(grantAccess(chatRepository.save(chat)));
         }
 
         Chat chat = new Chat();
@@ -60,7 +83,7 @@ public class ChatService {
         chat.setBuyer(buyer);
         chat.setSeller(listing.getSeller());
 
-        return convertToDTO(chatRepository.save(chat));
+        return convertToDTO(grantAccess(chatRepository.save(chat)));
     }
 
     @Transactional(readOnly = true)
@@ -71,13 +94,82 @@ public class ChatService {
                 .collect(Collectors.toList());
     }
 
-    @Transactional
     public MessageDTO sendMessage(UUID chatId, UUID senderId, String content) {
         return sendMessage(chatId, senderId, content, null);
     }
 
-    @Transactional
     public MessageDTO sendMessage(UUID chatId, UUID senderId, String content, UUID sharedListingId) {
+        return deliverMessage(chatId, senderId, content, sharedListingId).getMessage();
+    }
+
+    public MessageDelivery deliverMessage(UUID chatId, UUID senderId, String content, UUID sharedListingId) {
+        return deliverMessage(chatId, senderId, content, sharedListingId, null);
+    }
+
+    /**
+     * Persist a message and return it with both participants so callers can fan it out
+     * to the chat topic and each participant's inbox without another lookup.
+     *
+     * In write-behind mode plain text messages are only journaled here and inserted shortly after
+     * by MessageWriteBehind; messages sharing a listing still take the synchronous path because
+     * they update the chat's listing context.
+     *
+     * With a client message id the send is idempotent: a retry returns the originally stored message
+     * with {@link MessageDelivery#isDuplicate()} set, and callers must not broadcast it again.
+     * Retries within MessageDeduplicator's window are answered from memory; later ones on the
+     * synchronous path hit the (sender_id, client_message_id) unique index and are answered with
+     * the stored row, so a first send costs no extra query. A late retry in write-behind mode is
+     * acknowledged again but its row is skipped when the journal is flushed.
+     */
+    public MessageDelivery deliverMessage(UUID chatId, UUID senderId, String content, UUID sharedListingId,
+                                          UUID clientMessageId) {
+        String normalizedContent = content != null ? content.trim() : "";
+        if (normalizedContent.isEmpty() && sharedListingId == null) {
+            throw new IllegalArgumentException("Message content cannot be empty unless a listing is shared");
+        }
+        if (clientMessageId == null) {
+            return deliverNew(chatId, senderId, normalizedContent, sharedListingId, null);
+        }
+        return messageDeduplicator.deliverOnce(chatId, senderId, clientMessageId,
+                () -> deliverNew(chatId, senderId, normalizedContent, sharedListingId, clientMessageId));
+    }
+
+    private MessageDelivery deliverNew(UUID chatId, UUID senderId, String normalizedContent, UUID sharedListingId,
+                                       UUID clientMessageId) {
+        MessageDelivery delivery;
+        if (sharedListingId == null && messageWriteBehind.isEnabled()) {
+            delivery = messageWriteBehind.accept(chatId, senderId, normalizedContent, clientMessageId);
+        } else {
+            try {
+                delivery = transactionTemplate.execute(status ->
+                        persistMessage(chatId, senderId, normalizedContent, sharedListingId, clientMessageId));
+            } catch (DataIntegrityViolationException e) {
+                if (clientMessageId == null) {
+                    throw e;
+                }
+                // Retried after the dedup window or on another node: answer with the stored row.
+                delivery = findStored(chatId, senderId, clientMessageId);
+                if (delivery == null) {
+                    throw e;
+                }
+                return delivery;
+            }
+        }
+        recentMessages.append(delivery.getMessage());
+        return delivery;
+    }
+
+    private MessageDelivery findStored(UUID chatId, UUID senderId, UUID clientMessageId) {
+        return transactionTemplate.execute(status -> messageRepository
+                .findFirstByChatIdAndSenderIdAndClientMessageIdOrderByCreatedAtAsc(chatId, senderId, clientMessageId)
+                .map(existing -> new MessageDelivery(convertToMessageDTO(existing),
+                        convertToUserDTO(existing.getChat().getBuyer()),
+                        convertToUserDTO(existing.getChat().getSeller()), true))
+                .orElse(null));
+    }
+
+    private MessageDelivery persistMessage(UUID chatId, UUID senderId, String normalizedContent, UUID sharedListingId,
+                                           UUID clientMessageId) {
         Chat chat = chatRepository.findById(chatId)
                 .orElseThrow(() -> new IllegalArgumentException("Chat not found"));
 
@@ -86,14 +178,10 @@ public class ChatService {
 
         assertUserIsParticipant(chat, sender.getId());
 
-        String normalizedContent = content != null ? content.trim() : "";
-        if (normalizedContent.isEmpty() && sharedListingId == null) {
-            throw new IllegalArgumentException("Message content cannot be empty unless a listing is shared");
-        }
-
         Message message = new Message();
         message.setChat(chat);
         message.setSender(sender);
+        message.setClientMessageId(clientMessageId);
         message.setContent(normalizedContent.isEmpty() ? "Shared a listing" : normalizedContent);
 
         if (sharedListingId != null) {
@@ -105,18 +193,186 @@ public class ChatService {
             chatRepository.save(chat);
         }
 
-        return convertToMessageDTO(messageRepository.save(message));
+        // Flush inside the transaction so a duplicate client id surfaces here as DataIntegrityViolationException.
+        MessageDTO saved = convertToMessageDTO(messageRepository.saveAndFlush(message));
+        return new MessageDelivery(saved, convertToUserDTO(chat.getBuyer()), convertToUserDTO(chat.getSeller()));
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Message history, newest first. Page 0 is served from RecentMessageBuffer once the chat's
+     * ring is seeded; the participant check goes through ChatAccessCache, so a warm chat costs no query.
+     */
     public Page<MessageDTO> getChatMessages(UUID chatId, UUID userId, Pageable pageable) {
-        Chat chat = chatRepository.findById(chatId)
-                .orElseThrow(() -> new IllegalArgumentException("Chat not found"));
+        assertCanRead(chatId, userId);
+
+        Page<MessageDTO> buffered = recentMessages.firstPage(chatId, pageable);
+        if (buffered != null) {
+            return buffered;
+        }
+        if (!recentMessages.covers(pageable)) {
+            return transactionTemplate.execute(status -> messageRepository
+                    .findByChatIdOrderByCreatedAtDesc(chatId, pageable)
+                    .map(this::convertToMessageDTO));
+        }
+
+        // Seed the ring with one full-size page so later page-0 requests of any size are hits.
+        recentMessages.track(chatId);
+        // Messages journaled before track() reach the ring only through the database; seeding while
+        // they are unflushed would leave a ring that looks complete but is missing them.
+        boolean journalFlushed = messageWriteBehind.flushNow();
+        Page<MessageDTO> newest = transactionTemplate.execute(status -> messageRepository
+                .findByChatIdOrderByCreatedAtDesc(chatId, PageRequest.of(0, recentMessages.capacity()))
+                .map(this::convertToMessageDTO));
+        Page<MessageDTO> seeded = null;
+        if (journalFlushed) {
+            recentMessages.seed(chatId, newest.getContent(), newest.getTotalElements());
+            seeded = recentMessages.firstPage(chatId, pageable);
+        }
+        return seeded != null ? seeded : new PageImpl<>(
+                newest.getContent().subList(0, Math.min(pageable.getPageSize(), newest.getNumberOfElements())),
+                pageable, newest.getTotalElements());
+    }
 
-        assertUserIsParticipant(chat, userId);
+    /**
+     * Messages created after {@code since}, oldest first, for catching up after a WebSocket reconnect.
+     * Answered from memory when the chat's ring covers the gap; at most {@code limit} messages otherwise.
+     */
+    public List<MessageDTO> getMessagesSince(UUID chatId, UUID userId, OffsetDateTime since, int limit) {
+        return getMessagesSince(chatId, userId, new SyncCursor(since, null), limit);
+    }
+
+    /**
+     * Keyset variant of {@link #getMessagesSince(UUID, UUID, OffsetDateTime, int)}: messages after
+     * the cursor in (createdAt, id) order, so messages sharing a timestamp are never skipped.
+     */
+    public List<MessageDTO> getMessagesSince(UUID chatId, UUID userId, SyncCursor after, int limit) {
+        assertCanRead(chatId, userId);
 
-        return messageRepository.findByChatIdOrderByCreatedAtDesc(chatId, pageable)
-                .map(this::convertToMessageDTO);
+        List<MessageDTO> buffered = recentMessages.since(chatId, after);
+        if (buffered != null) {
+            return buffered.size() <= limit ? buffered : buffered.subList(0, limit);
+        }
+        return transactionTemplate.execute(status -> messageRepository
+                .findByChatIdAfter(chatId, after.getCreatedAt(), afterId(after), PageRequest.of(0, limit))
+                .stream()
+                .map(this::convertToMessageDTO)
+                .toList());
+    }
+
+    /**
+     * Delta sync from per-chat cursors: new messages in each listed chat, oldest first per chat,
+     * at most {@code limit} in total. Recently active chats are answered from RecentMessageBuffer.
+     * The response carries a cursor per chat, so chats the limit cut short or never reached resume
+     * where they stopped. Chats the client sent no cursor for (created after {@code newChatsSince},
+     * when given) come back in newChats with a cursor at their start. A cursor for a chat that no
+     * longer exists or that the user cannot read is skipped and reported in removedChats, so one
+     * stale cursor cannot fail the whole sync on every reconnect.
+     */
+    public ChatSyncResponse syncChats(UUID userId, Map<UUID, SyncCursor> cursors, OffsetDateTime newChatsSince,
+                                      int limit) {
+        List<SyncMessageDTO> messages = new ArrayList<>();
+        Map<UUID, SyncCursor> chatCursors = new LinkedHashMap<>(cursors);
+        List<UUID> removedChats = new ArrayList<>();
+        boolean hasMore = false;
+        for (Map.Entry<UUID, SyncCursor> entry : cursors.entrySet()) {
+            if (!chatAccessCache.isParticipant(entry.getKey(), userId)) {
+                removedChats.add(entry.getKey());
+                chatCursors.remove(entry.getKey());
+                continue;
+            }
+            int remaining = limit - messages.size();
+            List<MessageDTO> missed = getMessagesSince(entry.getKey(), userId, entry.getValue(), remaining + 1);
+            if (missed.size() > remaining) {
+                missed = missed.subList(0, remaining);
+                hasMore = true;
+            }
+            for (MessageDTO message : missed) {
+                messages.add(toSyncMessage(message));
+            }
+            if (!missed.isEmpty()) {
+                MessageDTO last = missed.get(missed.size() - 1);
+                chatCursors.put(entry.getKey(), new SyncCursor(last.getCreatedAt(), last.getId()));
+            }
+            if (hasMore) {
+                break;
+            }
+        }
+
+        List<ChatDTO> newChats = transactionTemplate.execute(status -> chatRepository.findAllChatsForUser(userId)
+                .stream()
+                .filter(chat -> !cursors.containsKey(chat.getId()))
+                .filter(chat -> newChatsSince == null
+                        || (chat.getCreatedAt() != null && chat.getCreatedAt().isAfter(newChatsSince)))
+                .map(this::convertToDTO)
+                .toList());
+        for (ChatDTO chat : newChats) {
+            // Every message of a new chat sorts after (chat createdAt, lowest id)
+            OffsetDateTime start = chat.getCreatedAt() != null ? chat.getCreatedAt() : EPOCH;
+            chatCursors.put(chat.getId(), new SyncCursor(start, FIRST_ID));
+        }
+        return new ChatSyncResponse(null, null, chatCursors, removedChats, newChats, messages, hasMore);
+    }
+
+    /**
+     * Delta sync from one global keyset cursor: chats created after it and new messages across all
+     * of the user's chats in (createdAt, id) order, at most {@code limit}. The returned cursor and
+     * cursorId are the next {@code since} and {@code sinceId}.
+     */
+    public ChatSyncResponse syncSince(UUID userId, SyncCursor since, int limit) {
+        // Make locally journaled messages visible so the cursor cannot move past them.
+        messageWriteBehind.flushNow();
+
+        return transactionTemplate.execute(status -> {
+            List<Chat> chats = chatRepository.findAllChatsForUser(userId);
+            if (chats.isEmpty()) {
+                return new ChatSyncResponse(since.getCreatedAt(), since.getId(), null, null, List.of(), List.of(), false);
+            }
+            List<ChatDTO> newChats = chats.stream()
+                    .filter(chat -> chat.getCreatedAt() != null && chat.getCreatedAt().isAfter(since.getCreatedAt()))
+                    .map(this::convertToDTO)
+                    .toList();
+
+            List<Message> found = messageRepository.findByChatIdInAfter(chats.stream().map(Chat::getId).toList(),
+                    since.getCreatedAt(), afterId(since), PageRequest.of(0, limit + 1));
+            boolean hasMore = found.size() > limit;
+            List<SyncMessageDTO> messages = found.stream()
+                    .limit(limit)
+                    .map(this::toSyncMessage)
+                    .toList();
+            if (messages.isEmpty()) {
+                return new ChatSyncResponse(since.getCreatedAt(), since.getId(), null, null, newChats, messages, hasMore);
+            }
+            SyncMessageDTO last = messages.get(messages.size() - 1);
+            return new ChatSyncResponse(last.getCreatedAt(), last.getId(), null, null, newChats, messages, hasMore);
+        });
+    }
+
+    // A cursor without an id means "strictly after createdAt": no id sorts after the highest UUID.
+    private static UUID afterId(SyncCursor cursor) {
+        return cursor.getId() != null ? cursor.getId() : LAST_ID;
+    }
+
+    private SyncMessageDTO toSyncMessage(MessageDTO message) {
+        return new SyncMessageDTO(message.getId(), message.getChatId(),
+                message.getSender() != null ? message.getSender().getId() : null,
+                message.getContent(), message.getSharedListingId(), message.getCreatedAt());
+    }
+
+    private SyncMessageDTO toSyncMessage(Message message) {
+        // Proxy ids are available without initializing sender or listing.
+        return new SyncMessageDTO(message.getId(), message.getChat().getId(), message.getSender().getId(),
+                message.getContent(),
+                message.getSharedListing() != null ? message.getSharedListing().getId() : null,
+                message.getCreatedAt());
+    }
+
+    private void assertCanRead(UUID chatId, UUID userId) {
+        if (!chatAccessCache.isParticipant(chatId, userId)) {
+            if (!chatRepository.existsById(chatId)) {
+                throw new IllegalArgumentException("Chat not found");
+            }
+            throw new AccessDeniedException("User is not part of this chat");
+        }
     }
 
     private ChatDTO convertToDTO(Chat chat) {
@@ -139,6 +395,7 @@ public class ChatService {
     private MessageDTO convertToMessageDTO(Message message) {
         MessageDTO dto = new MessageDTO();
         dto.setId(message.getId());
+        dto.setClientMessageId(message.getClientMessageId());
         dto.setChatId(message.getChat().getId());
         dto.setSender(convertToUserDTO(message.getSender()));
         dto.setContent(message.getContent());
@@ -157,6 +414,12 @@ public class ChatService {
         }
     }
 
+    // Warm the participant cache so the client's first SUBSCRIBE to this chat skips the database.
+    private Chat grantAccess(Chat chat) {
+        chatAccessCache.grant(chat.getId(), chat.getBuyer().getId(), chat.getSeller().getId());
+        return chat;
+    }
+
     private OffsetDateTime activityTime(ChatDTO chatDTO) {
         return chatDTO.getLastMessage() != null ? chatDTO.getLastMessage().getCreatedAt() : chatDTO.getCreatedAt();
     }
@@ -0,0 +1,201 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.ChatEventDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSignalDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSignalDTO.Type;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory.Participants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays ephemeral chat signals (typing, viewing) between participants without going through
+ * ChatService, the actor stripes or the database.
+ *
+ * Signals are coalesced per (user, chat): at most one frame per interval is broadcast. Repeats of
+ * the last broadcast state inside the interval are dropped; a different state is held back and sent
+ * when the interval ends, so the final "stopped typing" is never lost. The only shared resource with
+ * persisted traffic is the broker itself, and the coalescing bounds what ephemeral frames put on it.
+ *
+ * Each broadcast goes to /topic/chat/{chatId}/signal and to the other participant's
+ * /user/queue/chat-events stream, looked up in ChatParticipantDirectory at send time.
+ */
+@Component
+public class ChatSignalRelay {
+
+    private final ChatAccessCache chatAccessCache;
+    private final ChatParticipantDirectory participants;
+    private final StompFanout stompFanout;
+    private final Clock clock;
+    private final long intervalMillis;
+    private final Cache<Key, Slot> slots;
+    // Slots holding a state to send once their interval ends
+    private final Set<Key> pending = ConcurrentHashMap.newKeySet();
+    private final Counter received;
+    private final Counter broadcast;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public ChatSignalRelay(ChatAccessCache chatAccessCache,
+                           ChatParticipantDirectory participants,
+                           StompFanout stompFanout,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.signals.interval:PT2S}") Duration interval,
+                           @Value("${chat.signals.max-entries:100000}") long maxEntries) {
+        this(chatAccessCache, participants, stompFanout, meterRegistry, interval, maxEntries, Clock.systemUTC());
+    }
+
+    public ChatSignalRelay(ChatAccessCache chatAccessCache, ChatParticipantDirectory participants,
+                           StompFanout stompFanout, MeterRegistry meterRegistry,
+                           Duration interval, long maxEntries, Clock clock) {
+        this.chatAccessCache = chatAccessCache;
+        this.participants = participants;
+        this.stompFanout = stompFanout;
+        this.clock = clock;
+        this.intervalMillis = interval.toMillis();
+        this.slots = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(interval.multipliedBy(10))
+                .build();
+        this.received = Counter.builder("chat.signals.received")
+                .description("Ephemeral chat signals received from clients")
+                .register(meterRegistry);
+        this.broadcast = Counter.builder("chat.signals.broadcast")
+                .description("Ephemeral chat signals broadcast after coalescing")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-signal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(10, intervalMillis / 4);
+        flusher.scheduleWithFixedDelay(this::flushPending, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+    }
+
+    /**
+     * Accept a signal from a chat participant. Throws AccessDeniedException for non-participants.
+     */
+    public void signal(UUID chatId, UUID userId, String userName, Type type) {
+        if (!chatAccessCache.isParticipant(chatId, userId)) {
+            throw new AccessDeniedException("User is not part of this chat");
+        }
+        received.increment();
+        Key key = new Key(chatId, userId);
+        Slot slot = slots.get(key, k -> new Slot(userName));
+        Type toSend = slot.offer(type, clock.millis(), intervalMillis);
+        if (toSend != null) {
+            send(key, slot, toSend);
+        } else if (slot.hasPending()) {
+            pending.add(key);
+        }
+    }
+
+    /**
+     * Send held-back states whose interval has ended. Runs on a timer; public for tests.
+     */
+    public void flushPending() {
+        long now = clock.millis();
+        for (Key key : pending) {
+            Slot slot = slots.getIfPresent(key);
+            if (slot == null) {
+                pending.remove(key);
+                continue;
+            }
+            Type toSend = slot.takeDue(now, intervalMillis);
+            if (toSend != null) {
+                send(key, slot, toSend);
+            }
+            if (!slot.hasPending()) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    private void send(Key key, Slot slot, Type type) {
+        broadcast.increment();
+        ChatSignalDTO signal = new ChatSignalDTO(key.chatId(), key.userId(), slot.userName, type, OffsetDateTime.now(clock));
+        stompFanout.sendEphemeral("/topic/chat/" + key.chatId() + "/signal", signal);
+
+        Participants chat = participants.get(key.chatId());
+        if (chat == null) {
+            return;
+        }
+        UserDto recipient = key.userId().equals(chat.buyer().getId()) ? chat.seller() : chat.buyer();
+        if (recipient.getEmail() != null) {
+            stompFanout.sendEphemeralToUser(recipient.getEmail(), ChatEventPublisher.CHAT_EVENTS_DESTINATION,
+                    ChatEventDTO.signal(signal));
+        }
+    }
+
+    private record Key(UUID chatId, UUID userId) {}
+
+    /**
+     * Coalescing state for one (user, chat). Only that user's own frames contend on the monitor.
+     */
+    private static final class Slot {
+        private final String userName;
+        private long lastSentAt = Long.MIN_VALUE / 2;
+        private Type lastSent;
+        private Type held;
+
+        Slot(String userName) {
+            this.userName = userName;
+        }
+
+        synchronized Type offer(Type type, long now, long interval) {
+            if (now - lastSentAt >= interval) {
+                return markSent(type, now);
+            }
+            held = type == lastSent ? null : type;
+            return null;
+        }
+
+        synchronized Type takeDue(long now, long interval) {
+            if (held == null || now - lastSentAt < interval) {
+                return null;
+            }
+            return markSent(held, now);
+        }
+
+        synchronized boolean hasPending() {
+            return held != null;
+        }
+
+        private Type markSent(Type type, long now) {
+            lastSentAt = now;
+            lastSent = type;
+            held = null;
+            return type;
+        }
+    }
+}
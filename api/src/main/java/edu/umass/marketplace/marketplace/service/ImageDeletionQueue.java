@@ -0,0 +1,195 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.storage.ObjectStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes stored images in the background, in ObjectStorage batches of up to 1000 keys
+ * (one S3 DeleteObjects request each) instead of one synchronous request per image.
+ *
+ * Keys enqueued inside a transaction are only queued once it commits, so a rolled-back delete
+ * never loses its image. Keys that fail are retried with exponential backoff up to
+ * image.deletion.max-attempts times and then dropped with a warning; an orphaned image costs
+ * storage, not correctness. The queue is in memory: keys still pending at shutdown get one final
+ * attempt and are otherwise left behind.
+ */
+@Component
+@Slf4j
+public class ImageDeletionQueue {
+
+    private final ObjectStorage storage;
+    private final Clock clock;
+    private final long flushIntervalMillis;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Counter deleted;
+    private final Counter retried;
+    private final Counter abandoned;
+    private ScheduledExecutorService worker;
+
+    @Autowired
+    public ImageDeletionQueue(ObjectStorage storage,
+                              MeterRegistry meterRegistry,
+                              @Value("${image.deletion.flush-interval:PT2S}") Duration flushInterval,
+                              @Value("${image.deletion.max-attempts:5}") int maxAttempts,
+                              @Value("${image.deletion.retry-backoff:PT30S}") Duration retryBackoff) {
+        this(storage, meterRegistry, flushInterval, maxAttempts, retryBackoff, Clock.systemUTC());
+    }
+
+    public ImageDeletionQueue(ObjectStorage storage, MeterRegistry meterRegistry, Duration flushInterval,
+                              int maxAttempts, Duration retryBackoff, Clock clock) {
+        this.storage = storage;
+        this.clock = clock;
+        this.flushIntervalMillis = flushInterval.toMillis();
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.deleted = Counter.builder("image.deletions.deleted")
+                .description("Stored images deleted by the background queue")
+                .register(meterRegistry);
+        this.retried = Counter.builder("image.deletions.retried")
+                .description("Image deletions that failed and were scheduled for retry")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder("image.deletions.abandoned")
+                .description("Image deletions dropped after exhausting their retries")
+                .register(meterRegistry);
+        Gauge.builder("image.deletions.pending", size, AtomicInteger::get)
+                .description("Image keys waiting to be deleted")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "image-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker != null) {
+            worker.shutdown();
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flushSafely();
+        if (size.get() > 0) {
+            log.warn("Shutting down with {} image deletions still pending", size.get());
+        }
+    }
+
+    /**
+     * Queue a storage key for deletion, after the current transaction commits if there is one.
+     */
+    public void enqueue(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(new Pending(key, 0, 0));
+                }
+            });
+        } else {
+            add(new Pending(key, 0, 0));
+        }
+    }
+
+    public int pendingCount() {
+        return size.get();
+    }
+
+    /**
+     * Delete every key that is due, in batches of ObjectStorage.MAX_DELETE_BATCH. Runs on the
+     * worker thread; public for tests.
+     */
+    public synchronized void flush() {
+        long now = clock.millis();
+        List<Pending> due = new ArrayList<>();
+        List<Pending> notDue = new ArrayList<>();
+        for (int n = size.get(); n > 0; n--) {
+            Pending next = pending.poll();
+            if (next == null) {
+                break;
+            }
+            size.decrementAndGet();
+            (next.dueAt() <= now ? due : notDue).add(next);
+            if (due.size() == ObjectStorage.MAX_DELETE_BATCH) {
+                deleteBatch(due, now);
+                due.clear();
+            }
+        }
+        if (!due.isEmpty()) {
+            deleteBatch(due, now);
+        }
+        notDue.forEach(this::add);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Image deletion flush failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void deleteBatch(List<Pending> batch, long now) {
+        List<String> keys = batch.stream().map(Pending::key).toList();
+        List<String> failed;
+        try {
+            failed = storage.deleteAll(keys);
+        } catch (Exception e) {
+            log.warn("Deleting {} images failed: {}", keys.size(), e.getMessage());
+            failed = keys;
+        }
+        deleted.increment(keys.size() - failed.size());
+        if (failed.isEmpty()) {
+            return;
+        }
+        Set<String> failedKeys = new HashSet<>(failed);
+        for (Pending item : batch) {
+            if (!failedKeys.contains(item.key())) {
+                continue;
+            }
+            int attempts = item.attempts() + 1;
+            if (attempts >= maxAttempts) {
+                abandoned.increment();
+                log.warn("Giving up deleting image {} after {} attempts", item.key(), attempts);
+            } else {
+                retried.increment();
+                add(new Pending(item.key(), attempts, now + (retryBackoffMillis << (attempts - 1))));
+            }
+        }
+    }
+
+    private void add(Pending item) {
+        pending.add(item);
+        size.incrementAndGet();
+    }
+
+    private record Pending(String key, int attempts, long dueAt) {}
+}
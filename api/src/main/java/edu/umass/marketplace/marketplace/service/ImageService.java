@@ -1,13 +1,11 @@
 package edu.umass.marketplace.marketplace.service;
 
+import edu.umass.marketplace.common.storage.ObjectStorage;
 import lombok.extern.slf4j.Slf4j;
 import net.coobird.thumbnailator.Thumbnails;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -19,13 +17,17 @@ import java.util.UUID;
 /**
  * Service for handling image compression and S3 storage.
  * Compresses images to reduce storage costs and improve performance.
+ * Deletes are handed to ImageDeletionQueue, which removes them from storage in batches.
  */
 @Service
 @Slf4j
 public class ImageService {
 
-    @Autowired(required = false)
-    private S3Client s3Client;
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Autowired
+    private ImageDeletionQueue deletionQueue;
 
     @Value("${aws.s3.bucket-name:umass-marketplace-images}")
     private String bucketName;
@@ -151,16 +153,8 @@ public class ImageService {
      * Upload compressed image to S3.
      */
     private void uploadToS3(byte[] imageBytes, String s3Key) {
-        if (s3Client == null) return;
         try {
-            PutObjectRequest putRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(s3Key)
-                .contentType("image/jpeg")
-                .cacheControl("max-age=31536000") // 1 year cache
-                .build();
-
-            s3Client.putObject(putRequest, RequestBody.fromBytes(imageBytes));
+            objectStorage.put(s3Key, imageBytes, "image/jpeg");
             log.debug("Uploaded image to S3: {}", s3Key);
         } catch (Exception e) {
             log.error("Error uploading to S3: {}", e.getMessage(), e);
@@ -169,24 +163,18 @@ public class ImageService {
     }
 
     /**
-     * Delete image from S3.
+     * Queue an image for deletion from S3. Returns immediately; inside a transaction the image is
+     * only queued once it commits.
      */
     public void deleteImage(String s3Url) {
-        if (!s3Enabled || s3Client == null || s3Url == null || !s3Url.startsWith("https://")) {
+        if (!s3Enabled || s3Url == null || !s3Url.startsWith("https://")) {
             return;
         }
 
         try {
-            String s3Key = extractS3Key(s3Url);
-            DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
-                .bucket(bucketName)
-                .key(s3Key)
-                .build();
-
-            s3Client.deleteObject(deleteRequest);
-            log.debug("Deleted image from S3: {}", s3Key);
+            deletionQueue.enqueue(extractS3Key(s3Url));
         } catch (Exception e) {
-            log.error("Error deleting image from S3: {}", e.getMessage(), e);
+            log.error("Error queueing S3 image deletion: {}", e.getMessage(), e);
         }
     }
 
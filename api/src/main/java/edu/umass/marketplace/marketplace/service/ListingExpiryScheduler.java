@@ -0,0 +1,261 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.util.HierarchicalTimerWheel;
+import edu.umass.marketplace.marketplace.model.Listing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts ACTIVE listings ON_HOLD when their mustGoBy deadline passes.
+ *
+ * Every pending deadline lives in an in-memory HierarchicalTimerWheel, loaded once on startup
+ * from the ACTIVE listings that have one and kept current by ListingService after each create,
+ * update and delete commits. A dedicated thread advances the wheel every
+ * listing.must-go-by.tick (default 1 s); a tick with nothing due costs a few bit tests and no
+ * query. Due listings are flipped in one UPDATE guarded by status and must_go_by, so a stale
+ * timer (deadline since moved, listing sold or deleted) does nothing, and several nodes firing
+ * for the same listing is harmless. Chat history rings showing the listing are then dropped.
+ *
+ * A node learns about deadlines set through other nodes from a resync every
+ * listing.must-go-by.resync (default 5 min): a range scan of idx_listings_active_must_go_by for
+ * deadlines due before the following resync, scheduled into the wheel (rescheduling a known
+ * listing just replaces its timer). So a deadline set through a node that went away still fires
+ * on time on every surviving node, unless it was set less than one resync interval before it was
+ * due; then it fires at most one interval late.
+ */
+@Component
+@Slf4j
+public class ListingExpiryScheduler {
+
+    static final String LOAD_SQL =
+            "SELECT id, must_go_by FROM listings WHERE status = 'ACTIVE' AND must_go_by IS NOT NULL";
+    // Deadlines due by the horizon, from the same partial index
+    static final String RESYNC_SQL = LOAD_SQL + " AND must_go_by <= ?";
+    static final String EXPIRE_SQL = """
+            UPDATE listings SET status = '%s', updated_at = ?
+            WHERE id = ANY(?) AND status = '%s' AND must_go_by <= ?
+            RETURNING id""".formatted(Listing.STATUS_ON_HOLD, Listing.STATUS_ACTIVE);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RecentMessageBuffer recentMessages;
+    private final boolean enabled;
+    private final Duration tick;
+    private final Duration retryDelay;
+    private final Duration resyncInterval;
+    private final Clock clock;
+    private final HierarchicalTimerWheel<UUID> wheel;
+    private final Counter expired;
+    private ScheduledExecutorService ticker;
+
+    @Autowired
+    public ListingExpiryScheduler(JdbcTemplate jdbcTemplate,
+                                  RecentMessageBuffer recentMessages,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${listing.must-go-by.enabled:true}") boolean enabled,
+                                  @Value("${listing.must-go-by.tick:PT1S}") Duration tick,
+                                  @Value("${listing.must-go-by.retry-delay:PT30S}") Duration retryDelay,
+                                  @Value("${listing.must-go-by.resync:PT5M}") Duration resyncInterval) {
+        this(jdbcTemplate, recentMessages, meterRegistry, enabled, tick, retryDelay, resyncInterval,
+                Clock.systemUTC());
+    }
+
+    public ListingExpiryScheduler(JdbcTemplate jdbcTemplate, RecentMessageBuffer recentMessages,
+                                  MeterRegistry meterRegistry, boolean enabled, Duration tick,
+                                  Duration retryDelay, Duration resyncInterval, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recentMessages = recentMessages;
+        this.enabled = enabled;
+        this.tick = tick;
+        this.retryDelay = retryDelay;
+        this.resyncInterval = resyncInterval;
+        this.clock = clock;
+        this.wheel = new HierarchicalTimerWheel<>(tick, clock.millis());
+        this.expired = Counter.builder("listings.must-go-by.expired")
+                .description("Listings put on hold because their mustGoBy deadline passed")
+                .register(meterRegistry);
+        Gauge.builder("listings.must-go-by.pending", this, ListingExpiryScheduler::pendingCount)
+                .description("mustGoBy deadlines waiting in the timer wheel")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        load();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "listing-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMillis = tick.toMillis();
+        ticker.scheduleAtFixedRate(this::tickSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        long resyncMillis = resyncInterval.toMillis();
+        ticker.scheduleAtFixedRate(this::resyncSafely, resyncMillis, resyncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (ticker != null) {
+            ticker.shutdown();
+            ticker.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Track the listing's current deadline: schedule it if the listing is ACTIVE with a mustGoBy,
+     * otherwise forget it. Applied after the current transaction commits if there is one.
+     */
+    public void track(Listing listing) {
+        if (!enabled) {
+            return;
+        }
+        UUID id = listing.getId();
+        OffsetDateTime deadline = Listing.STATUS_ACTIVE.equals(listing.getStatus()) ? listing.getMustGoBy() : null;
+        afterCommit(() -> {
+            synchronized (wheel) {
+                if (deadline != null) {
+                    wheel.schedule(id, deadline.toInstant().toEpochMilli());
+                } else {
+                    wheel.cancel(id);
+                }
+            }
+        });
+    }
+
+    public void forget(UUID listingId) {
+        if (enabled) {
+            afterCommit(() -> {
+                synchronized (wheel) {
+                    wheel.cancel(listingId);
+                }
+            });
+        }
+    }
+
+    public int pendingCount() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    /**
+     * Fire every deadline that has passed. Runs on the ticker thread; public for tests.
+     */
+    public void tick() {
+        List<UUID> due;
+        synchronized (wheel) {
+            due = wheel.advance(clock.millis());
+        }
+        if (!due.isEmpty()) {
+            expire(due);
+        }
+    }
+
+    /**
+     * Schedule every ACTIVE deadline due before the next resync, including those set through
+     * other nodes. The horizon spans two intervals so a late run leaves no gap. Runs on the ticker
+     * thread; public for tests.
+     */
+    public void resync() {
+        OffsetDateTime horizon = OffsetDateTime.now(clock).plus(resyncInterval.multipliedBy(2));
+        List<Deadline> due = jdbcTemplate.query(RESYNC_SQL, (rs, rowNum) -> new Deadline(
+                rs.getObject("id", UUID.class), rs.getObject("must_go_by", OffsetDateTime.class)), horizon);
+        // Queried outside the lock so track() after a commit never waits on the database
+        synchronized (wheel) {
+            due.forEach(deadline -> wheel.schedule(deadline.id(), deadline.mustGoBy().toInstant().toEpochMilli()));
+        }
+        log.debug("Resynced {} mustGoBy deadlines due by {}", due.size(), horizon);
+    }
+
+    void load() {
+        int[] loaded = {0};
+        synchronized (wheel) {
+            jdbcTemplate.query(LOAD_SQL, (RowCallbackHandler) rs -> {
+                wheel.schedule(rs.getObject("id", UUID.class),
+                        rs.getObject("must_go_by", OffsetDateTime.class).toInstant().toEpochMilli());
+                loaded[0]++;
+            });
+        }
+        log.info("Loaded {} mustGoBy deadlines", loaded[0]);
+    }
+
+    private void expire(List<UUID> due) {
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        List<UUID> onHold;
+        try {
+            onHold = jdbcTemplate.query(EXPIRE_SQL, ps -> {
+                ps.setObject(1, now);
+                ps.setArray(2, ps.getConnection().createArrayOf("uuid", due.toArray()));
+                ps.setObject(3, now);
+            }, (rs, rowNum) -> rs.getObject("id", UUID.class));
+        } catch (Exception e) {
+            log.warn("Putting {} listings past mustGoBy on hold failed; retrying in {}: {}",
+                    due.size(), retryDelay, e.getMessage());
+            long retryAt = clock.millis() + retryDelay.toMillis();
+            synchronized (wheel) {
+                due.forEach(id -> wheel.schedule(id, retryAt));
+            }
+            return;
+        }
+        onHold.forEach(recentMessages::invalidateListing);
+        expired.increment(onHold.size());
+        if (!onHold.isEmpty()) {
+            log.info("Put {} listings on hold past their mustGoBy", onHold.size());
+        }
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (Exception e) {
+            log.error("Listing expiry tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void resyncSafely() {
+        try {
+            resync();
+        } catch (Exception e) {
+            log.warn("Listing expiry resync failed; retrying in {}: {}", resyncInterval, e.getMessage());
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record Deadline(UUID id, OffsetDateTime mustGoBy) {
+    }
+}
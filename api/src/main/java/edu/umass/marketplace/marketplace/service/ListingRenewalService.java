@@ -0,0 +1,136 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.RenewalReminderDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Warns sellers before ListingRetentionService deletes their listings, so they can renew one in
+ * place (POST /api/listings/{id}/renew) instead of re-creating it and uploading its image again.
+ *
+ * Hourly, one UPDATE ... RETURNING flags every listing whose retention anchor (renewed_at, else
+ * created_at) is within listing.renewal.reminder-lead of the cutoff and has not been flagged yet.
+ * The flagged listings are then sent to their sellers on /user/queue/listing-renewals, one
+ * message per seller. The flag is durable, so a seller who was offline still sees it on the
+ * listing (renewalRemindedAt).
+ *
+ * While reminders are enabled, retention only deletes a listing whose reminder is at least
+ * listing.renewal.grace old, so no seller loses a listing without warning, even if this job was
+ * down when the reminder was due.
+ */
+@Component
+@Slf4j
+public class ListingRenewalService {
+
+    public static final String RENEWALS_DESTINATION = "/queue/listing-renewals";
+    static final String JOB_NAME = "listing-renewal-reminders";
+    static final String HOURLY_CRON = "0 15 * * * ?";
+    static final String FLAG_EXPIRING_SQL = """
+            UPDATE listings l SET renewal_reminded_at = ?
+            FROM users u
+            WHERE u.id = l.seller_id
+              AND COALESCE(l.renewed_at, l.created_at) < ?
+              AND l.renewal_reminded_at IS NULL
+            RETURNING l.id, l.title, u.email, COALESCE(l.renewed_at, l.created_at) AS anchor""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StompFanout stompFanout;
+    private final ClusterJobLock jobLock;
+    private final long retentionDays;
+    private final boolean enabled;
+    private final Duration reminderLead;
+    private final Duration grace;
+    private final Clock clock;
+    private final Counter reminded;
+
+    @Autowired
+    public ListingRenewalService(JdbcTemplate jdbcTemplate,
+                                 StompFanout stompFanout,
+                                 ClusterJobLock jobLock,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${listing.retentionDays:14}") long retentionDays,
+                                 @Value("${listing.renewal.enabled:true}") boolean enabled,
+                                 @Value("${listing.renewal.reminder-lead:P2D}") Duration reminderLead,
+                                 @Value("${listing.renewal.grace:P1D}") Duration grace) {
+        this(jdbcTemplate, stompFanout, jobLock, meterRegistry, retentionDays, enabled, reminderLead, grace,
+                Clock.systemUTC());
+    }
+
+    public ListingRenewalService(JdbcTemplate jdbcTemplate, StompFanout stompFanout, ClusterJobLock jobLock,
+                                 MeterRegistry meterRegistry, long retentionDays, boolean enabled,
+                                 Duration reminderLead, Duration grace, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stompFanout = stompFanout;
+        this.jobLock = jobLock;
+        this.retentionDays = retentionDays;
+        this.enabled = enabled;
+        this.reminderLead = reminderLead;
+        this.grace = grace;
+        this.clock = clock;
+        this.reminded = Counter.builder("listings.renewal.reminders")
+                .description("Listings flagged for renewal and reported to their sellers")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = HOURLY_CRON)
+    public void sendReminders() {
+        if (enabled) {
+            jobLock.runOncePerWindow(JOB_NAME, HOURLY_CRON, this::flagAndNotify);
+        }
+    }
+
+    /**
+     * Retention may only delete listings reminded before the returned time, or any listing when
+     * reminders are disabled (null).
+     */
+    public OffsetDateTime remindedBefore() {
+        return enabled ? OffsetDateTime.now(clock).minus(grace) : null;
+    }
+
+    /**
+     * When a listing whose retention clock started at the anchor becomes eligible for deletion.
+     */
+    public OffsetDateTime expiresAt(OffsetDateTime anchor) {
+        return anchor.plusDays(retentionDays);
+    }
+
+    private void flagAndNotify() {
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        OffsetDateTime threshold = now.minusDays(retentionDays).plus(reminderLead);
+        Map<String, List<RenewalReminderDTO>> bySeller = new LinkedHashMap<>();
+        jdbcTemplate.query(FLAG_EXPIRING_SQL, (RowCallbackHandler) rs -> {
+            RenewalReminderDTO reminder = new RenewalReminderDTO(rs.getObject("id", UUID.class),
+                    rs.getString("title"), expiresAt(rs.getObject("anchor", OffsetDateTime.class)));
+            bySeller.computeIfAbsent(rs.getString("email"), email -> new ArrayList<>()).add(reminder);
+        }, now, threshold);
+        if (bySeller.isEmpty()) {
+            return;
+        }
+        int listings = 0;
+        for (Map.Entry<String, List<RenewalReminderDTO>> entry : bySeller.entrySet()) {
+            // STOMP user destinations resolve by Principal#getName(), which is the account email.
+            stompFanout.sendToUser(entry.getKey(), RENEWALS_DESTINATION, entry.getValue());
+            listings += entry.getValue().size();
+        }
+        reminded.increment(listings);
+        log.info("Sent renewal reminders for {} listings to {} sellers", listings, bySeller.size());
+    }
+}
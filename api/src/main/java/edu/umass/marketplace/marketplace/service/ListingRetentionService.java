@@ -1,95 +1,249 @@
 package edu.umass.marketplace.marketplace.service;
 
-import edu.umass.marketplace.marketplace.model.Listing;
-import edu.umass.marketplace.marketplace.repository.ChatRepository;
-import edu.umass.marketplace.marketplace.repository.ListingRepository;
-import edu.umass.marketplace.marketplace.repository.MessageRepository;
-import lombok.RequiredArgsConstructor;
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Array;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Scheduled task to auto-delete listings older than configured retention period.
  * Runs daily to clean up old listings and free up storage.
+ *
+ * Listings are deleted in chunks of listing.retention.chunk-size, oldest first, each chunk in its
+ * own short transaction: one SELECT ... FOR UPDATE SKIP LOCKED picks the chunk, then one
+ * set-based UPDATE per referencing table and one DELETE remove it. A run stops after
+ * max-chunks-per-run chunks or on the first failing chunk; since every chunk is simply "the oldest
+ * expired rows left", the next run resumes where the previous one stopped. Images are removed only
+ * after their chunk has committed, so a failure can leave an orphaned image but never a listing
+ * pointing at a deleted one.
+ *
+ * A listing's age counts from its last renewal, if any. While renewal reminders are enabled
+ * (ListingRenewalService), only listings whose seller was reminded at least the grace period ago
+ * are deleted.
+ *
+ * With retention.mode=continuous (see RetentionSchedule) the nightly run is replaced by short
+ * ticks that each stop after a row and time budget. listings.retention.lag reports how far the
+ * oldest remaining expired listing is past the cutoff; listings.retention.deleted gives throughput.
+ * With several API nodes, ClusterJobLock makes sure only one of them runs the job at a time.
  */
 @Component
-@RequiredArgsConstructor
 public class ListingRetentionService {
 
     private static final Logger log = LoggerFactory.getLogger(ListingRetentionService.class);
 
-    private final ListingRepository listingRepository;
-    private final ChatRepository chatRepository;
-    private final MessageRepository messageRepository;
+    // Age counts from the last renewal (idx_listings_retention_anchor); %s is the reminder grace check
+    static final String SELECT_CHUNK_SQL = """
+            SELECT id, image_url FROM listings
+            WHERE COALESCE(renewed_at, created_at) < ?%s
+            ORDER BY COALESCE(renewed_at, created_at)
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED""";
+    static final String REMINDED_BEFORE_SQL = "\n  AND renewal_reminded_at < ?";
+    // 1:1 conversation model: preserve chat history and only clear listing references.
+    static final String CLEAR_SHARED_LISTING_SQL =
+            "UPDATE messages SET shared_listing_id = NULL WHERE shared_listing_id = ANY(?)";
+    static final String CLEAR_CHAT_LISTING_SQL =
+            "UPDATE chats SET listing_id = NULL WHERE listing_id = ANY(?)";
+    static final String DELETE_LISTINGS_SQL = "DELETE FROM listings WHERE id = ANY(?)";
+    // The lag only counts listings a chunk could delete, so the same cutoff and reminder grace check
+    static final String OLDEST_LISTING_SQL = """
+            SELECT MIN(COALESCE(renewed_at, created_at)) FROM listings
+            WHERE COALESCE(renewed_at, created_at) < ?%s""";
+    static final String JOB_NAME = "listing-retention";
+    static final String NIGHTLY_CRON = "0 0 2 * * ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final ImageService imageService;
+    private final RecentMessageBuffer recentMessages;
+    private final ListingRenewalService renewals;
+    private final RetentionSchedule schedule;
+    private final ClusterJobLock jobLock;
+    private final long retentionDays;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+    private final Counter deleted;
+    private final Timer chunkTimer;
+    private final Timer runTimer;
+    // Listings deleted so far by the current (or last) run
+    private final AtomicLong runProgress = new AtomicLong();
+    // Seconds the oldest listing left after the last run is past the cutoff, 0 when caught up
+    private final AtomicLong lagSeconds = new AtomicLong();
 
-    // Retention period in days (default 14 days)
-    @Value("${listing.retentionDays:14}")
-    private long retentionDays;
+    public ListingRetentionService(JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   ImageService imageService,
+                                   RecentMessageBuffer recentMessages,
+                                   ListingRenewalService renewals,
+                                   RetentionSchedule schedule,
+                                   ClusterJobLock jobLock,
+                                   MeterRegistry meterRegistry,
+                                   // Retention period in days (default 14 days)
+                                   @Value("${listing.retentionDays:14}") long retentionDays,
+                                   @Value("${listing.retention.chunk-size:500}") int chunkSize,
+                                   @Value("${listing.retention.max-chunks-per-run:200}") int maxChunksPerRun) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.imageService = imageService;
+        this.recentMessages = recentMessages;
+        this.renewals = renewals;
+        this.schedule = schedule;
+        this.jobLock = jobLock;
+        this.retentionDays = retentionDays;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.deleted = Counter.builder("listings.retention.deleted")
+                .description("Listings deleted by the retention job")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("listings.retention.chunk")
+                .description("Time to delete and commit one retention chunk")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("listings.retention.run")
+                .description("Duration of one nightly retention run or continuous tick")
+                .register(meterRegistry);
+        Gauge.builder("listings.retention.run.progress", runProgress, AtomicLong::get)
+                .description("Listings deleted so far by the current or last retention run")
+                .register(meterRegistry);
+        Gauge.builder("listings.retention.lag", lagSeconds, AtomicLong::get)
+                .description("How far the oldest expired listing left is past the retention cutoff")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
 
     /**
-     * Run daily at 2:00 AM to delete old listings.
+     * Run daily at 2:00 AM to delete old listings, once per night across the cluster.
      * Uses cron expression: second, minute, hour, day, month, weekday
      */
-    @Scheduled(cron = "0 0 2 * * ?")
-    @Transactional
+    @Scheduled(cron = NIGHTLY_CRON)
     public void deleteOldListings() {
-        OffsetDateTime cutoff = OffsetDateTime.now().minusDays(retentionDays);
-        log.info("Running listing retention cleanup. Deleting listings created before {} ({} days old)", 
-            cutoff, retentionDays);
-
-        // Find only old listings server-side to avoid loading all listings into memory
-        List<Listing> oldListings = listingRepository.findByCreatedAtBefore(cutoff);
-
-        if (oldListings.isEmpty()) {
-            log.info("No old listings to delete");
+        if (schedule.isContinuous()) {
             return;
         }
+        jobLock.runOncePerWindow(JOB_NAME, NIGHTLY_CRON, () -> {
+            log.info("Running listing retention cleanup. Deleting listings older than {} days", retentionDays);
+            runTimer.record(() -> run(schedule.nightly((long) chunkSize * maxChunksPerRun)));
+        });
+    }
 
-        log.info("Found {} listings to delete", oldListings.size());
-
-        // Delete associated images from S3 if applicable
-        for (Listing listing : oldListings) {
-            if (listing.getImageUrl() != null && listing.getImageUrl().startsWith("https://")) {
-                try {
-                    imageService.deleteImage(listing.getImageUrl());
-                } catch (Exception e) {
-                    log.warn("Failed to delete image for listing {}: {}", listing.getId(), e.getMessage());
-                }
-            }
+    /**
+     * One continuous-mode tick; a no-op in nightly mode.
+     */
+    @Scheduled(fixedDelayString = "${retention.continuous.interval:PT5M}",
+            initialDelayString = "${retention.continuous.interval:PT5M}")
+    public void deleteOldListingsIncrementally() {
+        if (schedule.isContinuous()) {
+            jobLock.runExclusively(JOB_NAME, () -> runTimer.record(() -> run(schedule.tick())));
         }
+    }
 
-        // Delete listings from database
-        int deletedCount = 0;
-        for (Listing listing : oldListings) {
+    /**
+     * Manual trigger for testing purposes.
+     * Can be called via admin endpoint if needed.
+     */
+    public int deleteOldListingsManually() {
+        jobLock.runExclusively(JOB_NAME, () -> run(schedule.nightly((long) chunkSize * maxChunksPerRun)));
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM listings", Integer.class);
+    }
+
+    private void run(RetentionSchedule.Budget budget) {
+        OffsetDateTime cutoff = OffsetDateTime.now().minusDays(retentionDays);
+        OffsetDateTime remindedBefore = renewals.remindedBefore();
+        runProgress.set(0);
+        int chunks = 0;
+        boolean drained = false;
+        while (!budget.exhausted()) {
+            int limit = budget.nextBatch(chunkSize);
+            List<ExpiredListing> chunk;
             try {
-                // 1:1 conversation model: preserve chat history and only clear listing references.
-                messageRepository.clearSharedListingByListingId(listing.getId());
-                chatRepository.clearListingContextByListingId(listing.getId());
-                listingRepository.delete(listing);
-                deletedCount++;
+                chunk = chunkTimer.record(() -> transactionTemplate.execute(status -> deleteChunk(cutoff, remindedBefore, limit)));
             } catch (Exception e) {
-                log.error("Failed to delete listing {}: {}", listing.getId(), e.getMessage());
+                log.error("Listing retention chunk failed after {} listings; the next run resumes from here: {}",
+                        runProgress.get(), e.getMessage());
+                break;
+            }
+            chunks++;
+            budget.spend(chunk.size());
+            afterCommit(chunk);
+            log.debug("Listing retention chunk {}: deleted {} ({} so far)", chunks, chunk.size(), runProgress.get());
+            if (chunk.size() < limit) {
+                drained = true;
+                break;
             }
         }
+        updateLag(cutoff, remindedBefore);
 
-        log.info("Deleted {} old listings (older than {} days)", deletedCount, retentionDays);
+        if (drained) {
+            if (runProgress.get() > 0 || !schedule.isContinuous()) {
+                log.info("Deleted {} old listings (older than {} days)", runProgress.get(), retentionDays);
+            }
+        } else {
+            log.info("Deleted {} old listings in {} chunks; more remain for the next run (lag {}s)",
+                    runProgress.get(), chunks, lagSeconds.get());
+        }
     }
 
-    /**
-     * Manual trigger for testing purposes.
-     * Can be called via admin endpoint if needed.
-     */
-    @Transactional
-    public int deleteOldListingsManually() {
-        deleteOldListings();
-        return (int) listingRepository.count();
+    private void updateLag(OffsetDateTime cutoff, OffsetDateTime remindedBefore) {
+        try {
+            OffsetDateTime oldest = remindedBefore == null
+                    ? jdbcTemplate.queryForObject(OLDEST_LISTING_SQL.formatted(""), OffsetDateTime.class, cutoff)
+                    : jdbcTemplate.queryForObject(OLDEST_LISTING_SQL.formatted(REMINDED_BEFORE_SQL),
+                            OffsetDateTime.class, cutoff, remindedBefore);
+            lagSeconds.set(oldest == null || !oldest.isBefore(cutoff) ? 0 : Duration.between(oldest, cutoff).toSeconds());
+        } catch (Exception e) {
+            log.warn("Could not measure listing retention lag: {}", e.getMessage());
+        }
     }
+
+    private List<ExpiredListing> deleteChunk(OffsetDateTime cutoff, OffsetDateTime remindedBefore, int limit) {
+        RowMapper<ExpiredListing> mapper =
+                (rs, rowNum) -> new ExpiredListing(rs.getObject("id", UUID.class), rs.getString("image_url"));
+        List<ExpiredListing> chunk = remindedBefore == null
+                ? jdbcTemplate.query(SELECT_CHUNK_SQL.formatted(""), mapper, cutoff, limit)
+                : jdbcTemplate.query(SELECT_CHUNK_SQL.formatted(REMINDED_BEFORE_SQL), mapper, cutoff, remindedBefore, limit);
+        if (chunk.isEmpty()) {
+            return chunk;
+        }
+        Object[] ids = chunk.stream().map(ExpiredListing::id).toArray();
+        for (String sql : List.of(CLEAR_SHARED_LISTING_SQL, CLEAR_CHAT_LISTING_SQL, DELETE_LISTINGS_SQL)) {
+            jdbcTemplate.update(sql, ps -> {
+                Array array = ps.getConnection().createArrayOf("uuid", ids);
+                ps.setArray(1, array);
+            });
+        }
+        return chunk;
+    }
+
+    private void afterCommit(List<ExpiredListing> chunk) {
+        runProgress.addAndGet(chunk.size());
+        deleted.increment(chunk.size());
+        for (ExpiredListing listing : chunk) {
+            recentMessages.invalidateListing(listing.id());
+            // Delete associated images from S3 if applicable
+            if (listing.imageUrl() != null && listing.imageUrl().startsWith("https://")) {
+                try {
+                    imageService.deleteImage(listing.imageUrl());
+                } catch (Exception e) {
+                    log.warn("Failed to delete image for listing {}: {}", listing.id(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private record ExpiredListing(UUID id, String imageUrl) {}
 }
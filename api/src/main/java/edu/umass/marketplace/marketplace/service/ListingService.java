@@ -9,6 +9,7 @@ import edu.umass.marketplace.marketplace.repository.ChatRepository;
 import edu.umass.marketplace.marketplace.repository.ListingRepository;
 import edu.umass.marketplace.marketplace.repository.MessageRepository;
 import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.response.ListingFeedResponse;
 import edu.umass.marketplace.marketplace.response.ListingResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,8 +19,11 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -31,12 +35,17 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class ListingService {
 
+    // Largest uuid in Postgres' ordering; the starting keyset position of a feed
+    private static final UUID LAST_ID = new UUID(-1L, -1L);
+
     private final ListingRepository listingRepository;
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
     private final MessageRepository messageRepository;
     private final ImageService imageService;
     private final SuperuserConfig superuserConfig;
+    private final RecentMessageBuffer recentMessages;
+    private final ListingExpiryScheduler listingExpiry;
 
     @Transactional
     public ListingResponse createListing(CreateListingRequest request, java.security.Principal principal) {
@@ -74,6 +83,7 @@ public class ListingService {
         listing.setSeller(seller);
 
         Listing savedListing = listingRepository.save(listing);
+        listingExpiry.track(savedListing);
         
         // Upload image with actual listing ID so S3 key is listings/{actualId}/...
         if (imageUrlFromRequest != null && !imageUrlFromRequest.trim().isEmpty()) {
@@ -184,6 +194,30 @@ public class ListingService {
         return listings.map(ListingResponse::fromEntity);
     }
 
+    /**
+     * Active listings whose mustGoBy falls within the next withinDays, soonest first, one keyset
+     * page at a time. Without a cursor the feed starts at now; otherwise it continues after
+     * (afterMustGoBy, afterId) from the previous page.
+     */
+    public ListingFeedResponse getExpiringSoon(int withinDays, OffsetDateTime afterMustGoBy, UUID afterId, int size) {
+        OffsetDateTime now = OffsetDateTime.now();
+        if (afterMustGoBy == null) {
+            // Sorts after every id, so the first page starts strictly after now
+            afterMustGoBy = now;
+            afterId = LAST_ID;
+        }
+        List<Listing> found = listingRepository.findExpiringAfter(afterMustGoBy, afterId, now.plusDays(withinDays),
+                PageRequest.of(0, size + 1));
+        boolean hasMore = found.size() > size;
+        List<Listing> page = hasMore ? found.subList(0, size) : found;
+        Listing last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return new ListingFeedResponse(
+                page.stream().map(ListingResponse::fromEntity).collect(Collectors.toList()),
+                last != null ? last.getMustGoBy() : null,
+                last != null ? last.getId() : null,
+                hasMore);
+    }
+
     /**
      * Get a single listing by ID
      */
@@ -253,6 +287,7 @@ public class ListingService {
                 .collect(Collectors.toList());
 
         List<Listing> savedListings = listingRepository.saveAll(listings);
+        savedListings.forEach(listingExpiry::track);
         log.debug("🔍 Created {} listings successfully", savedListings.size());
 
         // Upload images using actual listing IDs (listings/{id}/...)
@@ -360,11 +395,40 @@ public class ListingService {
         }
 
         Listing savedListing = listingRepository.save(listing);
+        listingExpiry.track(savedListing);
+        // Shared-listing cards in buffered chat history show the old title, price, image and status
+        UUID savedId = savedListing.getId();
+        afterCommit(() -> recentMessages.invalidateListing(savedId));
         log.debug("🔍 Updated listing with ID: {}", savedListing.getId());
 
         return ListingResponse.fromEntity(savedListing);
     }
 
+    /**
+     * Restart a listing's retention period in place, keeping its id, image and chats.
+     * Caller must be the listing owner or a superuser.
+     */
+    @Transactional
+    public ListingResponse renewListing(UUID id, java.security.Principal principal) {
+        Listing listing = listingRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
+
+        String callerEmail = principal != null ? principal.getName() : null;
+        boolean isSuperuser = superuserConfig.isSuperuser(callerEmail);
+        boolean isOwner = listing.getSeller() != null && listing.getSeller().getEmail() != null
+                && listing.getSeller().getEmail().equals(callerEmail);
+        if (!isOwner && !isSuperuser) {
+            throw new org.springframework.security.access.AccessDeniedException("Not authorized to renew this listing");
+        }
+
+        listing.setRenewedAt(java.time.OffsetDateTime.now());
+        listing.setRenewalRemindedAt(null);
+        Listing savedListing = listingRepository.save(listing);
+        log.debug("🔍 Renewed listing with ID: {}", savedListing.getId());
+
+        return ListingResponse.fromEntity(savedListing);
+    }
+
     /**
      * Delete a listing. Caller must be the listing owner or a superuser (app.superuser-email from env).
      */
@@ -395,6 +459,8 @@ public class ListingService {
         // 1:1 conversation model: preserve chat history and only clear listing references.
         messageRepository.clearSharedListingByListingId(id);
         chatRepository.clearListingContextByListingId(id);
+        afterCommit(() -> recentMessages.invalidateListing(id));
+        listingExpiry.forget(id);
         listingRepository.deleteById(id);
         log.debug("🔍 Deleted listing with ID: {}", id);
     }
@@ -443,4 +509,18 @@ public class ListingService {
 
         return new edu.umass.marketplace.marketplace.response.StatsResponse(activeCount, soldCount, onHoldCount);
     }
+
+    // Rings dropped before the commit could be reseeded from the old rows in between
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded window of recent (chatId, senderId, clientMessageId) sends, so a client retrying over a
+ * flaky connection gets its original message back instead of a second row and a second broadcast.
+ *
+ * Each entry is the in-flight attempt's future. The send itself runs on the caller's thread outside
+ * the cache, so a slow insert or journal fsync never holds a cache lock; concurrent retries of the
+ * same id wait on the future rather than racing it. Retries that fall outside the window, or land on
+ * another node, are answered by ChatService's lookup of the stored message.
+ */
+@Component
+public class MessageDeduplicator {
+
+    private final Cache<Key, Attempt> recent;
+    private final Counter duplicates;
+
+    public MessageDeduplicator(MeterRegistry meterRegistry,
+                               @Value("${chat.dedup.window:PT10M}") Duration window,
+                               @Value("${chat.dedup.max-entries:100000}") long maxEntries) {
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(window)
+                .build();
+        this.duplicates = Counter.builder("chat.messages.duplicates")
+                .description("Retried sends answered with the already stored message")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run {@code send} once per (chat, sender, client id) within the window. A repeat returns the first
+     * result marked as duplicate; if the first attempt failed nothing is remembered and a retry runs again.
+     */
+    public MessageDelivery deliverOnce(UUID chatId, UUID senderId, UUID clientMessageId,
+                                       Supplier<MessageDelivery> send) {
+        Key key = new Key(chatId, senderId, clientMessageId);
+        while (true) {
+            Attempt mine = new Attempt(new CompletableFuture<>(), Thread.currentThread());
+            Attempt earlier = recent.asMap().putIfAbsent(key, mine);
+            if (earlier == null) {
+                MessageDelivery delivery = run(key, mine, send);
+                return delivery.isDuplicate() ? duplicate(delivery) : delivery;
+            }
+            if (earlier.owner() == Thread.currentThread() && !earlier.result().isDone()) {
+                throw new IllegalStateException("Re-entrant send of client message " + clientMessageId);
+            }
+            try {
+                return duplicate(earlier.result().join());
+            } catch (CompletionException e) {
+                // The earlier attempt failed and has been forgotten; try again ourselves.
+            }
+        }
+    }
+
+    private MessageDelivery run(Key key, Attempt attempt, Supplier<MessageDelivery> send) {
+        try {
+            MessageDelivery delivery = send.get();
+            attempt.result().complete(delivery);
+            return delivery;
+        } catch (RuntimeException | Error e) {
+            recent.asMap().remove(key, attempt);
+            attempt.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private MessageDelivery duplicate(MessageDelivery delivery) {
+        duplicates.increment();
+        return new MessageDelivery(delivery.getMessage(), delivery.getBuyer(), delivery.getSeller(), true);
+    }
+
+    private record Key(UUID chatId, UUID senderId, UUID clientMessageId) {}
+
+    private record Attempt(CompletableFuture<MessageDelivery> result, Thread owner) {}
+}
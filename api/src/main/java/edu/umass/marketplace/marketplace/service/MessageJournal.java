@@ -0,0 +1,388 @@
+package edu.umass.marketplace.marketplace.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, fsync'd journal of chat messages that have been broadcast but not yet written to
+ * the messages table. Used by MessageWriteBehind.
+ *
+ * The journal is a directory of numbered segment files. Each record is framed as
+ * [int length][int crc32][payload], so a write torn by a crash is detected on recovery and
+ * everything before it is kept. The writer appends to the open segment; the flusher seals it
+ * with rotate(), inserts its entries and deletes the file only after the insert committed.
+ * The client message id is an optional trailing field, so segments written before it existed
+ * still decode.
+ *
+ * Appends use group commit: each caller writes its record and then waits while a single forcer
+ * thread fsyncs everything written so far and releases the whole batch at once. When the forcer
+ * is idle it lingers for at most groupCommitDelay after the first append so concurrent sends can
+ * join the batch; appends that arrive while an fsync is running simply go into the next one.
+ * A failed fsync is not retried and fails every later append, because the kernel may already
+ * have dropped the unwritten pages.
+ */
+@Slf4j
+public class MessageJournal implements AutoCloseable {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{12})\\.log");
+    private static final int HEADER_BYTES = 8;
+    // Generous upper bound; anything larger is a corrupt length field, not a real message
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final List<Segment> recovered;
+    private final long groupCommitDelayNanos;
+    private final Thread forcer;
+    private Segment current;
+
+    // Group commit state, guarded by this: records written, records known to be on disk
+    private long appended;
+    private long forced;
+    private long syncs;
+    private IOException forceFailure;
+    private boolean closed;
+
+    /**
+     * Open the journal without a group commit delay: concurrent appends still share an fsync
+     * whenever they arrive while one is running.
+     */
+    public MessageJournal(Path directory) throws IOException {
+        this(directory, Duration.ZERO);
+    }
+
+    /**
+     * Open the journal, reading back every entry left by a previous run.
+     */
+    public MessageJournal(Path directory, Duration groupCommitDelay) throws IOException {
+        this.directory = directory;
+        this.groupCommitDelayNanos = groupCommitDelay.toNanos();
+        Files.createDirectories(directory);
+        this.recovered = recover();
+        long nextSequence = recovered.isEmpty() ? 1 : recovered.get(recovered.size() - 1).sequence + 1;
+        this.current = openSegment(nextSequence);
+        this.forcer = new Thread(this::forceLoop, "message-journal-fsync");
+        forcer.setDaemon(true);
+        forcer.start();
+    }
+
+    /**
+     * Segments found on disk at startup, oldest first. Their entries were never confirmed as
+     * inserted and must be replayed.
+     */
+    public List<Segment> recoveredSegments() {
+        return List.copyOf(recovered);
+    }
+
+    /**
+     * Durably append an entry: returns only after the record has been forced to disk.
+     */
+    public void append(JournalEntry entry) throws IOException {
+        ByteBuffer frame = frame(entry);
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Message journal is closed");
+            }
+            if (forceFailure != null) {
+                throw new IOException("Message journal could not be forced to disk", forceFailure);
+            }
+            while (frame.hasRemaining()) {
+                current.channel.write(frame);
+            }
+            current.entries.add(entry);
+            long ticket = ++appended;
+            notifyAll();
+            awaitForced(ticket);
+        }
+    }
+
+    /**
+     * Number of fsyncs issued by appends so far; compared with the number of appends it shows
+     * how well group commit is batching.
+     */
+    public synchronized long syncs() {
+        return syncs;
+    }
+
+    /**
+     * Seal the open segment and start a new one. Returns the sealed segment,
+     * or null if nothing was appended since the last rotation.
+     */
+    public synchronized Segment rotate() throws IOException {
+        if (current.entries.isEmpty()) {
+            return null;
+        }
+        Segment sealed = current;
+        // Appends may still be waiting for the forcer; settle them before the channel goes away
+        forceCurrent();
+        sealed.channel.close();
+        current = openSegment(sealed.sequence + 1);
+        return sealed;
+    }
+
+    /**
+     * Forget a sealed segment whose entries are safely in the database.
+     */
+    public void delete(Segment segment) throws IOException {
+        Files.deleteIfExists(segment.path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!current.entries.isEmpty()) {
+                    forceCurrent();
+                }
+            } finally {
+                notifyAll();
+                current.channel.close();
+            }
+            if (current.entries.isEmpty()) {
+                Files.deleteIfExists(current.path);
+            }
+        }
+        try {
+            forcer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitForced(long ticket) throws IOException {
+        boolean interrupted = false;
+        while (forced < ticket && forceFailure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // The record is already written; the caller must not be told it failed
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (forced < ticket) {
+            throw new IOException("Message journal could not be forced to disk", forceFailure);
+        }
+    }
+
+    // Called with the monitor held, by rotate() and close()
+    private void forceCurrent() throws IOException {
+        if (forced == appended) {
+            return;
+        }
+        try {
+            current.channel.force(false);
+        } catch (IOException e) {
+            forceFailure = e;
+            notifyAll();
+            throw e;
+        }
+        syncs++;
+        forced = appended;
+        notifyAll();
+    }
+
+    private void forceLoop() {
+        try {
+            while (true) {
+                long target;
+                FileChannel channel;
+                synchronized (this) {
+                    if (!closed && forced == appended) {
+                        while (!closed && forced == appended) {
+                            wait();
+                        }
+                        // Idle until now: give concurrent appends a bounded moment to join this fsync
+                        long deadline = System.nanoTime() + groupCommitDelayNanos;
+                        long left = groupCommitDelayNanos;
+                        while (left > 0 && !closed) {
+                            TimeUnit.NANOSECONDS.timedWait(this, left);
+                            left = deadline - System.nanoTime();
+                        }
+                    }
+                    if (closed || forceFailure != null) {
+                        return;
+                    }
+                    target = appended;
+                    channel = current.channel;
+                }
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // rotate() or close() forced this segment itself before closing it
+                    continue;
+                } catch (IOException e) {
+                    log.error("Message journal fsync failed; rejecting further appends", e);
+                    synchronized (this) {
+                        forceFailure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    syncs++;
+                    forced = Math.max(forced, target);
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ByteBuffer frame(JournalEntry entry) throws IOException {
+        byte[] payload = encode(entry);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return frame;
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("segment-%012d.log", sequence));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Segment(sequence, path, channel, new ArrayList<>());
+    }
+
+    private List<Segment> recover() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.sorted().toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                List<JournalEntry> entries = readEntries(path);
+                if (entries.isEmpty()) {
+                    Files.delete(path);
+                } else {
+                    segments.add(new Segment(Long.parseLong(matcher.group(1)), path, null, entries));
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static List<JournalEntry> readEntries(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<JournalEntry> entries = new ArrayList<>();
+        int validEnd = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            entries.add(decode(payload));
+            validEnd = buffer.position();
+        }
+        if (validEnd < buffer.limit()) {
+            log.warn("Message journal {} has a torn or corrupt tail; recovered {} entries before it",
+                    path.getFileName(), entries.size());
+        }
+        return entries;
+    }
+
+    private static byte[] encode(JournalEntry entry) throws IOException {
+        byte[] content = entry.content().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + content.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeUuid(out, entry.id());
+            writeUuid(out, entry.chatId());
+            writeUuid(out, entry.senderId());
+            Instant createdAt = entry.createdAt().toInstant();
+            out.writeLong(createdAt.getEpochSecond());
+            out.writeInt(createdAt.getNano());
+            out.writeInt(content.length);
+            out.write(content);
+            if (entry.clientMessageId() != null) {
+                writeUuid(out, entry.clientMessageId());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JournalEntry decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        UUID id = new UUID(in.getLong(), in.getLong());
+        UUID chatId = new UUID(in.getLong(), in.getLong());
+        UUID senderId = new UUID(in.getLong(), in.getLong());
+        Instant createdAt = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        byte[] content = new byte[in.getInt()];
+        in.get(content);
+        UUID clientMessageId = in.remaining() >= 16 ? new UUID(in.getLong(), in.getLong()) : null;
+        return new JournalEntry(id, chatId, senderId, new String(content, StandardCharsets.UTF_8),
+                OffsetDateTime.ofInstant(createdAt, ZoneOffset.UTC), clientMessageId);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    public record JournalEntry(UUID id, UUID chatId, UUID senderId, String content, OffsetDateTime createdAt,
+                               UUID clientMessageId) {
+
+        public JournalEntry(UUID id, UUID chatId, UUID senderId, String content, OffsetDateTime createdAt) {
+            this(id, chatId, senderId, content, createdAt, null);
+        }
+    }
+
+    public static final class Segment {
+        private final long sequence;
+        private final Path path;
+        private final FileChannel channel;
+        private final List<JournalEntry> entries;
+
+        private Segment(long sequence, Path path, FileChannel channel, List<JournalEntry> entries) {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = channel;
+            this.entries = entries;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        public List<JournalEntry> entries() {
+            return entries;
+        }
+    }
+}
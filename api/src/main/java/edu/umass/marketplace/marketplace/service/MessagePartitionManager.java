@@ -0,0 +1,207 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains monthly partitions of the messages table once it has been converted by
+ * V14__partition_messages_by_month.sql. On an unpartitioned table every method is a no-op, so the
+ * same build runs against both layouts.
+ *
+ * Partitions are named messages_yYYYYmMM and cover one UTC month each; chat.partitions.months-ahead
+ * future months are created at startup and nightly, so inserts never fall through to
+ * messages_default. Each partition carries its own unique index on (sender_id, client_message_id),
+ * which Postgres cannot enforce on the partitioned parent.
+ *
+ * The schema is built by ddl-auto, not the migrations, and Message cannot declare that index
+ * because ddl-auto would then try to add it to a partitioned table too. So on an unpartitioned
+ * table the same startup job creates uk_messages_sender_client_message if it is missing.
+ *
+ * An expired month is detached first and dropped afterwards. Dropping a partition directly holds
+ * an ACCESS EXCLUSIVE lock on messages for the whole drop, and a lock request queued behind one
+ * long read blocks every chat read and write behind it. DETACH ... CONCURRENTLY would avoid that
+ * but Postgres refuses it while messages_default exists, so the plain DETACH gives up after
+ * DETACH_LOCK_TIMEOUT and the month is retried on the next retention run. The DROP then only
+ * locks the detached table.
+ */
+@Component
+@Slf4j
+public class MessagePartitionManager {
+
+    static final String IS_PARTITIONED_SQL = """
+            SELECT EXISTS (
+                SELECT 1 FROM pg_partitioned_table pt
+                JOIN pg_class c ON c.oid = pt.partrelid
+                WHERE c.relname = 'messages'
+                  AND c.relnamespace = current_schema()::regnamespace)""";
+    // Monthly tables whether still attached or left detached by a run that stopped before dropping
+    static final String LIST_MONTHLY_TABLES_SQL = """
+            SELECT c.relname FROM pg_class c
+            WHERE c.relkind = 'r'
+              AND c.relname LIKE 'messages\\_y%'
+              AND c.relnamespace = current_schema()::regnamespace""";
+    static final String IS_ATTACHED_SQL = """
+            SELECT EXISTS (
+                SELECT 1 FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE c.relname = ? AND p.relname = 'messages'
+                  AND c.relnamespace = current_schema()::regnamespace)""";
+    static final String DETACH_LOCK_TIMEOUT = "2s";
+    // Skipped where V12 already added the constraint of that name
+    static final String CLIENT_ID_INDEX_SQL =
+            "CREATE UNIQUE INDEX IF NOT EXISTS uk_messages_sender_client_message ON messages (sender_id, client_message_id)";
+    static final String JOB_NAME = "message-partitions";
+    private static final Pattern MONTHLY_PARTITION = Pattern.compile("messages_y(\\d{4})m(\\d{2})");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterJobLock jobLock;
+    private final int monthsAhead;
+    private final Clock clock;
+
+    @Autowired
+    public MessagePartitionManager(JdbcTemplate jdbcTemplate,
+                                   ClusterJobLock jobLock,
+                                   @Value("${chat.partitions.months-ahead:3}") int monthsAhead) {
+        this(jdbcTemplate, jobLock, monthsAhead, Clock.systemUTC());
+    }
+
+    public MessagePartitionManager(JdbcTemplate jdbcTemplate, ClusterJobLock jobLock, int monthsAhead, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobLock = jobLock;
+        this.monthsAhead = monthsAhead;
+        this.clock = clock;
+    }
+
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class));
+    }
+
+    /**
+     * Create partitions for the current month and the next months-ahead months if missing, or the
+     * client message id index on an unpartitioned table. Nodes starting together would race on the
+     * same DDL, so only one runs it at a time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 30 2 * * ?")
+    public void ensureUpcomingPartitions() {
+        jobLock.runExclusively(JOB_NAME, this::createUpcomingPartitions);
+    }
+
+    private void createUpcomingPartitions() {
+        try {
+            if (!isPartitioned()) {
+                jdbcTemplate.execute(CLIENT_ID_INDEX_SQL);
+                return;
+            }
+            YearMonth current = YearMonth.now(clock.withZone(ZoneOffset.UTC));
+            for (int i = 0; i <= monthsAhead; i++) {
+                createPartition(current.plusMonths(i));
+            }
+        } catch (Exception e) {
+            log.error("Failed to create upcoming message partitions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Monthly partitions that end on or before the cutoff, oldest first. A partition still holding
+     * any message newer than the cutoff is kept whole, so messages live between retentionDays and
+     * retentionDays plus one month.
+     */
+    public List<String> expiredPartitions(OffsetDateTime cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(LIST_MONTHLY_TABLES_SQL, String.class)) {
+            Matcher matcher = MONTHLY_PARTITION.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (!start(month.plusMonths(1)).isAfter(cutoff)) {
+                expired.add(name);
+            }
+        }
+        // Names sort by month
+        expired.sort(null);
+        return expired;
+    }
+
+    /**
+     * Detach and drop a monthly partition. Returns false, leaving it in place, if messages stayed
+     * locked by other sessions for longer than DETACH_LOCK_TIMEOUT.
+     */
+    public boolean dropPartition(String name) {
+        if (!MONTHLY_PARTITION.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not a monthly message partition: " + name);
+        }
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_ATTACHED_SQL, Boolean.class, name))) {
+            try {
+                detach(name);
+            } catch (CannotAcquireLockException e) {
+                log.warn("Could not lock messages within {} to detach {}; retrying on the next run",
+                        DETACH_LOCK_TIMEOUT, name);
+                return false;
+            }
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+        log.info("Dropped expired message partition {}", name);
+        return true;
+    }
+
+    private void detach(String name) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET lock_timeout = '" + DETACH_LOCK_TIMEOUT + "'");
+                try {
+                    statement.execute("ALTER TABLE messages DETACH PARTITION " + name);
+                } catch (SQLException e) {
+                    try {
+                        statement.execute("RESET lock_timeout");
+                    } catch (SQLException ignored) {
+                        // inside an aborted transaction, whose rollback undoes the SET anyway
+                    }
+                    throw e;
+                }
+                statement.execute("RESET lock_timeout");
+            }
+            return null;
+        });
+    }
+
+    static String partitionName(YearMonth month) {
+        return String.format("messages_y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private void createPartition(YearMonth month) {
+        String name = partitionName(month);
+        jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF messages FOR VALUES FROM ('%s') TO ('%s')",
+                name, start(month), start(month.plusMonths(1))));
+        jdbcTemplate.execute(String.format(
+                "CREATE UNIQUE INDEX IF NOT EXISTS %s_sender_client_uk ON %s (sender_id, client_message_id)",
+                name, name));
+    }
+
+    private static OffsetDateTime start(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
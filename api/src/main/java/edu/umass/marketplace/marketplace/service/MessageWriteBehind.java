@@ -0,0 +1,254 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory.Participants;
+import edu.umass.marketplace.marketplace.service.MessageJournal.JournalEntry;
+import edu.umass.marketplace.marketplace.service.MessageJournal.Segment;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind persistence for chat messages (chat.persistence.mode=write-behind).
+ *
+ * A message is checked against cached chat participants, appended to the fsync'd MessageJournal
+ * and handed back for broadcast straight away; a background flusher inserts journaled messages
+ * into the messages table in JDBC batches and only then deletes their journal segment. Inserts use
+ * ON CONFLICT DO NOTHING, so replaying a segment after a crash never duplicates a message, and a
+ * retried send whose client message id is already stored (outside MessageDeduplicator's window) is
+ * skipped. No conflict target is named because a month-partitioned messages table has no unique
+ * index on id alone.
+ * See docs/CHAT_WRITE_BEHIND.md for the durability guarantee.
+ *
+ * In the default "sync" mode this bean stays inert and ChatService inserts as before.
+ */
+@Component
+@Slf4j
+public class MessageWriteBehind {
+
+    static final String INSERT_SQL = """
+            INSERT INTO messages (id, chat_id, sender_id, content, created_at, client_message_id)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT DO NOTHING""";
+
+    private final ChatParticipantDirectory participants;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Path journalDirectory;
+    private final Duration flushInterval;
+    private final int batchSize;
+    private final Duration groupCommitDelay;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Sealed segments waiting to be inserted, oldest first; guarded by flushLock
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final Object flushLock = new Object();
+    private MessageJournal journal;
+    private ScheduledExecutorService flusher;
+
+    public MessageWriteBehind(ChatParticipantDirectory participants,
+                              JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.persistence.mode:sync}") String mode,
+                              @Value("${chat.persistence.journal-dir:./data/message-journal}") Path journalDirectory,
+                              @Value("${chat.persistence.flush-interval:PT0.2S}") Duration flushInterval,
+                              @Value("${chat.persistence.batch-size:500}") int batchSize,
+                              @Value("${chat.persistence.group-commit-delay:PT0.002S}") Duration groupCommitDelay) {
+        this.participants = participants;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = switch (mode.trim().toLowerCase()) {
+            case "sync" -> false;
+            case "write-behind" -> true;
+            default -> throw new IllegalArgumentException("Unknown chat.persistence.mode: " + mode);
+        };
+        this.journalDirectory = journalDirectory;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+        this.groupCommitDelay = groupCommitDelay;
+        Gauge.builder("chat.writebehind.pending", pending, AtomicInteger::get)
+                .description("Messages broadcast and journaled but not yet inserted")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.writebehind.fsyncs", this,
+                        writeBehind -> writeBehind.journal == null ? 0 : writeBehind.journal.syncs())
+                .description("Journal fsyncs; each one acknowledges a whole group of appended messages")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        journal = new MessageJournal(journalDirectory, groupCommitDelay);
+        List<Segment> recovered = journal.recoveredSegments();
+        if (!recovered.isEmpty()) {
+            int count = recovered.stream().mapToInt(segment -> segment.entries().size()).sum();
+            log.info("Replaying {} journaled messages from {} segment(s)", count, recovered.size());
+            pending.addAndGet(count);
+            sealed.addAll(recovered);
+            flushNow();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "message-write-behind"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Chat write-behind enabled: journal {}, flush every {}", journalDirectory.toAbsolutePath(), flushInterval);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flushNow();
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validate and durably journal a text message, returning it ready for broadcast.
+     * The insert into messages happens later on the flusher thread.
+     */
+    public MessageDelivery accept(UUID chatId, UUID senderId, String content) {
+        return accept(chatId, senderId, content, null);
+    }
+
+    public MessageDelivery accept(UUID chatId, UUID senderId, String content, UUID clientMessageId) {
+        Participants chat = participants.get(chatId);
+        if (chat == null) {
+            throw new IllegalArgumentException("Chat not found");
+        }
+        UserDto sender = chat.participant(senderId);
+        if (sender == null) {
+            throw new AccessDeniedException("User is not part of this chat");
+        }
+
+        JournalEntry entry = new JournalEntry(UUID.randomUUID(), chatId, senderId, content, OffsetDateTime.now(),
+                clientMessageId);
+        try {
+            journal.append(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal chat message", e);
+        }
+        pending.incrementAndGet();
+
+        MessageDTO message = new MessageDTO(entry.id(), clientMessageId, chatId, sender, content, null, null,
+                entry.createdAt());
+        return new MessageDelivery(message, chat.buyer(), chat.seller());
+    }
+
+    /**
+     * Drop cached participants for deleted chats.
+     */
+    public void invalidateChats(Collection<UUID> chatIds) {
+        participants.invalidateChats(chatIds);
+    }
+
+    /**
+     * Insert everything journaled so far. Segments that fail to insert stay queued and on disk
+     * and are retried on the next flush.
+     *
+     * @return true if every message journaled before the call is now in the messages table
+     */
+    public boolean flushNow() {
+        if (!enabled) {
+            return true;
+        }
+        synchronized (flushLock) {
+            try {
+                Segment rotated = journal.rotate();
+                if (rotated != null) {
+                    sealed.addLast(rotated);
+                }
+                while (!sealed.isEmpty()) {
+                    Segment segment = sealed.peekFirst();
+                    if (!insert(segment.entries())) {
+                        return false;
+                    }
+                    journal.delete(segment);
+                    sealed.removeFirst();
+                    pending.addAndGet(-segment.entries().size());
+                }
+                return true;
+            } catch (IOException e) {
+                log.error("Message journal I/O failed during flush", e);
+                return false;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flushNow();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush failed", e);
+        }
+    }
+
+    private boolean insert(List<JournalEntry> entries) {
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            List<JournalEntry> chunk = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, chunk.stream().map(MessageWriteBehind::toRow).toList());
+            } catch (DataIntegrityViolationException e) {
+                // Usually a chat or sender deleted in the meantime; find and drop the offending rows.
+                if (!insertIndividually(chunk)) {
+                    return false;
+                }
+            } catch (DataAccessException e) {
+                log.warn("Write-behind insert failed, will retry: {}", e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean insertIndividually(List<JournalEntry> chunk) {
+        for (JournalEntry entry : chunk) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, toRow(entry));
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Dropping journaled message {} for chat {}: {}", entry.id(), entry.chatId(), e.getMessage());
+            } catch (DataAccessException e) {
+                log.warn("Write-behind insert failed, will retry: {}", e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object[] toRow(JournalEntry entry) {
+        return new Object[] {entry.id(), entry.chatId(), entry.senderId(), entry.content(), entry.createdAt(),
+                entry.clientMessageId()};
+    }
+}
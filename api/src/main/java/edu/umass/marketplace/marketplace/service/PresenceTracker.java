@@ -0,0 +1,201 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.security.UserPrincipal;
+import edu.umass.marketplace.common.util.HyperLogLog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks who is online from STOMP session events and authenticated HTTP requests.
+ *
+ * A user counts as online while they hold an open WebSocket session or made a request within
+ * the activity window. All updates are CAS-based on per-user records in a ConcurrentHashMap,
+ * so the request path never takes a lock; a periodic sweep retires idle records.
+ * Daily unique users are estimated with a HyperLogLog sketch that rolls over at local midnight.
+ */
+@Component
+public class PresenceTracker {
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final long activityWindowMillis;
+    // STOMP session id -> user, so duplicate disconnect events are only counted once
+    private final ConcurrentHashMap<String, UUID> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Presence> users = new ConcurrentHashMap<>();
+    private final AtomicReference<DailySketch> today = new AtomicReference<>();
+
+    @Autowired
+    public PresenceTracker(MeterRegistry meterRegistry,
+                           @Value("${app.presence.activity-window:PT5M}") Duration activityWindow,
+                           @Value("${app.presence.zone:America/New_York}") ZoneId zone) {
+        this(meterRegistry, activityWindow, zone, Clock.system(zone));
+    }
+
+    public PresenceTracker(MeterRegistry meterRegistry, Duration activityWindow, ZoneId zone, Clock clock) {
+        this.clock = clock;
+        this.zone = zone;
+        this.activityWindowMillis = activityWindow.toMillis();
+        Gauge.builder("presence.online", this, PresenceTracker::onlineNow)
+                .description("Users with an open WebSocket session or recent HTTP activity")
+                .register(meterRegistry);
+        Gauge.builder("presence.daily.unique", this, PresenceTracker::activeToday)
+                .description("Estimated distinct users seen since local midnight")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        UUID userId = userId(event.getUser());
+        String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+        if (userId != null && sessionId != null) {
+            connected(sessionId, userId);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        disconnected(event.getSessionId());
+    }
+
+    public void connected(String sessionId, UUID userId) {
+        if (sessions.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+        long now = clock.millis();
+        while (true) {
+            Presence presence = presenceFor(userId, now);
+            int open = presence.openSessions.get();
+            if (open < 0) {
+                users.remove(userId, presence);
+            } else if (presence.openSessions.compareAndSet(open, open + 1)) {
+                presence.lastSeen = now;
+                break;
+            }
+        }
+        recordDaily(userId, now);
+    }
+
+    public void disconnected(String sessionId) {
+        UUID userId = sessionId == null ? null : sessions.remove(sessionId);
+        if (userId == null) {
+            return;
+        }
+        Presence presence = users.get(userId);
+        if (presence != null) {
+            presence.lastSeen = clock.millis();
+            presence.openSessions.getAndUpdate(open -> open > 0 ? open - 1 : open);
+        }
+    }
+
+    /**
+     * Record an authenticated HTTP request.
+     */
+    public void touch(UUID userId) {
+        long now = clock.millis();
+        Presence presence = presenceFor(userId, now);
+        presence.lastSeen = now;
+        if (presence.openSessions.get() < 0) {
+            // Raced with the sweep retiring this record; start a fresh one.
+            users.remove(userId, presence);
+            presenceFor(userId, now).lastSeen = now;
+        }
+        recordDaily(userId, now);
+    }
+
+    public int onlineNow() {
+        long cutoff = clock.millis() - activityWindowMillis;
+        int online = 0;
+        for (Presence presence : users.values()) {
+            if (presence.openSessions.get() > 0 || presence.lastSeen >= cutoff) {
+                online++;
+            }
+        }
+        return online;
+    }
+
+    public long activeToday() {
+        DailySketch sketch = today.get();
+        if (sketch == null || !sketch.day.equals(LocalDate.ofInstant(clock.instant(), zone))) {
+            return 0;
+        }
+        return sketch.uniques.estimate();
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.sweep-interval:PT1M}")
+    public void sweep() {
+        long cutoff = clock.millis() - activityWindowMillis;
+        users.forEach((userId, presence) -> {
+            // Retire only idle records; a connect racing with this sees -1 and creates a new record.
+            if (presence.lastSeen < cutoff && presence.openSessions.compareAndSet(0, -1)) {
+                users.remove(userId, presence);
+            }
+        });
+    }
+
+    private Presence presenceFor(UUID userId, long now) {
+        Presence presence = users.get(userId);
+        if (presence == null) {
+            Presence created = new Presence(now);
+            presence = users.putIfAbsent(userId, created);
+            if (presence == null) {
+                presence = created;
+            }
+        }
+        return presence;
+    }
+
+    private void recordDaily(UUID userId, long now) {
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(now), zone);
+        DailySketch sketch = today.get();
+        while (sketch == null || sketch.day.isBefore(day)) {
+            DailySketch next = new DailySketch(day, new HyperLogLog());
+            if (today.compareAndSet(sketch, next)) {
+                sketch = next;
+            } else {
+                sketch = today.get();
+            }
+        }
+        if (sketch.day.equals(day)) {
+            sketch.uniques.add(userId);
+        }
+    }
+
+    private static UUID userId(Principal user) {
+        if (user instanceof UsernamePasswordAuthenticationToken auth
+                && auth.getPrincipal() instanceof UserPrincipal principal) {
+            return principal.getId();
+        }
+        return null;
+    }
+
+    private static final class Presence {
+        // Open WebSocket sessions; -1 once the sweep has retired the record
+        final AtomicInteger openSessions = new AtomicInteger();
+        volatile long lastSeen;
+
+        Presence(long lastSeen) {
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private record DailySketch(LocalDate day, HyperLogLog uniques) {}
+}
@@ -0,0 +1,247 @@
+package edu.umass.marketplace.marketplace.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.SyncCursor;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bounded ring buffer of the newest messages per active chat.
+ *
+ * Serves page 0 of the message history and "messages since" reconnect replay from memory.
+ * A chat's ring is seeded from one database page the first time its history is opened and then
+ * kept current from ChatService.deliverMessage; rings for idle chats are evicted by size
+ * (Caffeine, same policy as the other in-memory caches). A ring only answers when it can prove
+ * the answer is complete, otherwise callers fall back to the database.
+ *
+ * Rings only see messages sent through this node, so the buffer is off when
+ * app.websocket.cluster.enabled is set: {@link #covers} is then always false and every read goes
+ * to the database.
+ */
+@Component
+public class RecentMessageBuffer {
+
+    private final int capacity;
+    private final boolean enabled;
+    private final Cache<UUID, Ring> rings;
+
+    @Autowired
+    public RecentMessageBuffer(MeterRegistry meterRegistry,
+                               @Value("${chat.recent-messages.per-chat:50}") int capacity,
+                               @Value("${chat.recent-messages.max-chats:10000}") long maxChats,
+                               @Value("${app.websocket.cluster.enabled:false}") boolean clustered) {
+        this.capacity = capacity;
+        this.enabled = !clustered;
+        this.rings = Caffeine.newBuilder()
+                .maximumSize(maxChats)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rings, "chat.recent-messages");
+    }
+
+    public RecentMessageBuffer(MeterRegistry meterRegistry, int capacity, long maxChats) {
+        this(meterRegistry, capacity, maxChats, false);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Whether a request for this page can ever be answered from a ring: the first page,
+     * newest first (the endpoint's only ordering), no larger than the ring.
+     */
+    public boolean covers(Pageable pageable) {
+        return enabled
+                && pageable.isPaged()
+                && pageable.getPageNumber() == 0
+                && pageable.getPageSize() <= capacity
+                && pageable.getSort().isUnsorted();
+    }
+
+    /**
+     * Page 0 from memory, or null if this chat's ring has not been seeded.
+     */
+    public Page<MessageDTO> firstPage(UUID chatId, Pageable pageable) {
+        if (!covers(pageable)) {
+            return null;
+        }
+        Ring ring = rings.getIfPresent(chatId);
+        return ring == null ? null : ring.firstPage(pageable);
+    }
+
+    /**
+     * Start buffering a chat before its seed query runs, so messages sent while the query is in
+     * flight are not lost.
+     */
+    public void track(UUID chatId) {
+        rings.get(chatId, id -> new Ring(capacity));
+    }
+
+    /**
+     * Install a ring from the newest database page (newest first) and the chat's total message count.
+     */
+    public void seed(UUID chatId, List<MessageDTO> newestFirst, long total) {
+        rings.get(chatId, id -> new Ring(capacity)).seed(newestFirst, total);
+    }
+
+    /**
+     * Messages created after the given time, oldest first, or null if the ring may be missing some.
+     */
+    public List<MessageDTO> since(UUID chatId, OffsetDateTime since) {
+        return since(chatId, new SyncCursor(since, null));
+    }
+
+    /**
+     * Messages after the keyset cursor in (createdAt, id) order, or null if the ring may be missing some.
+     */
+    public List<MessageDTO> since(UUID chatId, SyncCursor after) {
+        Ring ring = rings.getIfPresent(chatId);
+        return ring == null ? null : ring.since(after);
+    }
+
+    /**
+     * Record a message that was just sent. Only chats whose history is already buffered are updated.
+     */
+    public void append(MessageDTO message) {
+        Ring ring = rings.getIfPresent(message.getChatId());
+        if (ring != null) {
+            ring.append(message);
+        }
+    }
+
+    public void invalidateChats(Collection<UUID> chatIds) {
+        rings.invalidateAll(chatIds);
+    }
+
+    /**
+     * Drop rings holding a card for this listing, whose shared-listing snapshot is now stale.
+     */
+    public void invalidateListing(UUID listingId) {
+        rings.asMap().values().removeIf(ring -> ring.references(listingId));
+    }
+
+    public void invalidateAll() {
+        rings.invalidateAll();
+    }
+
+    private static final Comparator<MessageDTO> KEYSET_ORDER = Comparator
+            .comparing(MessageDTO::getCreatedAt, OffsetDateTime.timeLineOrder())
+            .thenComparing(MessageDTO::getId, SyncCursor::compareIds);
+
+    private static final class Ring {
+        private final int capacity;
+        // Oldest first
+        private final ArrayDeque<MessageDTO> messages;
+        private final Set<UUID> ids = new HashSet<>();
+        private boolean seeded;
+        private long total;
+        private boolean evicted;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.messages = new ArrayDeque<>(capacity);
+        }
+
+        synchronized void seed(List<MessageDTO> newestFirst, long dbTotal) {
+            if (seeded) {
+                return;
+            }
+            // Messages appended while the seed query ran may or may not be in its result.
+            List<MessageDTO> appendedMeanwhile = new ArrayList<>(messages);
+            messages.clear();
+            ids.clear();
+            total = dbTotal;
+            evicted = dbTotal > newestFirst.size();
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                add(newestFirst.get(i));
+            }
+            for (MessageDTO message : appendedMeanwhile) {
+                if (!ids.contains(message.getId())) {
+                    total++;
+                    add(message);
+                }
+            }
+            seeded = true;
+        }
+
+        synchronized void append(MessageDTO message) {
+            if (ids.contains(message.getId())) {
+                return;
+            }
+            if (seeded) {
+                total++;
+            }
+            add(message);
+        }
+
+        private void add(MessageDTO message) {
+            messages.addLast(message);
+            ids.add(message.getId());
+            if (messages.size() > capacity) {
+                ids.remove(messages.removeFirst().getId());
+                evicted = true;
+            }
+        }
+
+        synchronized Page<MessageDTO> firstPage(Pageable pageable) {
+            if (!seeded) {
+                return null;
+            }
+            List<MessageDTO> content = new ArrayList<>(Math.min(pageable.getPageSize(), messages.size()));
+            Iterator<MessageDTO> newestFirst = messages.descendingIterator();
+            while (newestFirst.hasNext() && content.size() < pageable.getPageSize()) {
+                content.add(newestFirst.next());
+            }
+            return new PageImpl<>(content, pageable, total);
+        }
+
+        synchronized List<MessageDTO> since(SyncCursor after) {
+            if (!seeded) {
+                return null;
+            }
+            // Complete only if nothing older was ever dropped, or the oldest kept message is not past the cursor.
+            MessageDTO oldest = messages.peekFirst();
+            if (evicted && (oldest == null || after.isBefore(oldest.getCreatedAt(), oldest.getId()))) {
+                return null;
+            }
+            List<MessageDTO> result = new ArrayList<>();
+            for (MessageDTO message : messages) {
+                if (after.isBefore(message.getCreatedAt(), message.getId())) {
+                    result.add(message);
+                }
+            }
+            // Arrival order can differ from (createdAt, id) order when sends race; match the database.
+            result.sort(KEYSET_ORDER);
+            return result;
+        }
+
+        synchronized boolean references(UUID listingId) {
+            for (MessageDTO message : messages) {
+                if (listingId.equals(message.getSharedListingId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registered-user total for the landing page, refreshed in the background so
+ * page views never run COUNT(*) on users.
+ */
+@Component
+@RequiredArgsConstructor
+public class RegisteredUserCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(RegisteredUserCounter.class);
+
+    private final UserRepository userRepository;
+    private final AtomicLong total = new AtomicLong(-1);
+
+    public long get() {
+        long value = total.get();
+        if (value < 0) {
+            // First caller before the scheduled refresh has run: load once.
+            synchronized (this) {
+                value = total.get();
+                if (value < 0) {
+                    refresh();
+                    value = total.get();
+                }
+            }
+        }
+        return Math.max(value, 0);
+    }
+
+    @Scheduled(fixedDelayString = "${app.stats.user-count-refresh:PT5M}")
+    public void refresh() {
+        try {
+            total.set(userRepository.count());
+        } catch (Exception ex) {
+            log.warn("Failed to refresh registered user count: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.umass.marketplace.marketplace.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * How ListingRetentionService and ChatRetentionService pace their work (retention.mode).
+ *
+ * nightly (default): each job runs once a day on its cron and works through the day's backlog,
+ * capped only by its own per-run batch limit.
+ * continuous: each job runs every retention.continuous.interval and stops a tick after
+ * max-rows-per-tick rows or time-budget, whichever comes first, so cleanup is spread evenly over
+ * the day instead of arriving as one spike. Whatever a tick leaves behind shows up in the jobs'
+ * lag gauges and is picked up by the next tick.
+ */
+@Component
+public class RetentionSchedule {
+
+    public enum Mode { NIGHTLY, CONTINUOUS }
+
+    private final Mode mode;
+    private final long maxRowsPerTick;
+    private final Duration timeBudget;
+
+    public RetentionSchedule(@Value("${retention.mode:nightly}") String mode,
+                             @Value("${retention.continuous.max-rows-per-tick:5000}") long maxRowsPerTick,
+                             @Value("${retention.continuous.time-budget:PT20S}") Duration timeBudget) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.maxRowsPerTick = maxRowsPerTick;
+        this.timeBudget = timeBudget;
+    }
+
+    public boolean isContinuous() {
+        return mode == Mode.CONTINUOUS;
+    }
+
+    /**
+     * Budget for a nightly run: a row cap and no deadline.
+     */
+    public Budget nightly(long maxRows) {
+        return new Budget(maxRows, 0, false);
+    }
+
+    /**
+     * Budget for one continuous tick, starting now.
+     */
+    public Budget tick() {
+        return new Budget(maxRowsPerTick, System.nanoTime() + timeBudget.toNanos(), true);
+    }
+
+    /**
+     * Rows and time left in one run or tick. Not thread-safe; a run owns its budget.
+     */
+    public static final class Budget {
+        private long remainingRows;
+        private final long deadlineNanos;
+        private final boolean hasDeadline;
+
+        Budget(long remainingRows, long deadlineNanos, boolean hasDeadline) {
+            this.remainingRows = remainingRows;
+            this.deadlineNanos = deadlineNanos;
+            this.hasDeadline = hasDeadline;
+        }
+
+        public boolean exhausted() {
+            return remainingRows <= 0 || (hasDeadline && System.nanoTime() - deadlineNanos >= 0);
+        }
+
+        /**
+         * Size of the next batch: the batch size, or fewer if the budget has fewer rows left.
+         */
+        public int nextBatch(int batchSize) {
+            return (int) Math.min(batchSize, remainingRows);
+        }
+
+        public void spend(int rows) {
+            remainingRows -= rows;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.umass.marketplace.marketplace.service;
 
+import edu.umass.marketplace.common.security.JwtPrincipalResolver;
 import edu.umass.marketplace.marketplace.dto.RegisterRequest;
 import edu.umass.marketplace.marketplace.model.User;
 import edu.umass.marketplace.marketplace.repository.UserRepository;
@@ -20,6 +21,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final JwtPrincipalResolver jwtPrincipalResolver;
 
     /**
      * Get user by ID
@@ -91,6 +93,8 @@ public class UserService {
         }
 
         userRepository.deleteById(id);
+        // Tokens are authenticated from their claims, so make sure this user's outstanding ones stop working
+        jwtPrincipalResolver.revoke(id);
         log.debug("🔍 Deleted user with ID: {}", id);
     }
 
@@ -0,0 +1,112 @@
+package edu.umass.marketplace.marketplace.service;
+
+import edu.umass.marketplace.common.exception.RateLimitExceededException;
+import edu.umass.marketplace.common.security.UserPrincipal;
+import edu.umass.marketplace.common.util.TokenBucketLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Per-user throttling for the write paths a script could use to saturate the database:
+ * chat sends (REST and STOMP) and listing creation (single and bulk).
+ *
+ * Each action has its own token bucket per user; a bulk create costs one token per listing. A bulk
+ * larger than the bucket could never be admitted, so it is rejected outright and the client is
+ * told the most it may send at once.
+ */
+@Component
+@Slf4j
+public class WriteRateLimiter {
+
+    private final boolean enabled;
+    private final TokenBucketLimiter chatMessages;
+    private final TokenBucketLimiter listingWrites;
+    private final Duration listingRefillPeriod;
+    private final Counter throttledChatMessages;
+    private final Counter throttledListingWrites;
+
+    public WriteRateLimiter(MeterRegistry meterRegistry,
+                            @Value("${app.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${app.rate-limit.chat-messages.capacity:30}") int chatCapacity,
+                            @Value("${app.rate-limit.chat-messages.refill-period:PT30S}") Duration chatRefillPeriod,
+                            @Value("${app.rate-limit.listing-writes.capacity:20}") int listingCapacity,
+                            @Value("${app.rate-limit.listing-writes.refill-period:PT10M}") Duration listingRefillPeriod) {
+        this.enabled = enabled;
+        this.chatMessages = new TokenBucketLimiter(chatCapacity, chatRefillPeriod);
+        this.listingWrites = new TokenBucketLimiter(listingCapacity, listingRefillPeriod);
+        this.listingRefillPeriod = listingRefillPeriod;
+        this.throttledChatMessages = throttledCounter(meterRegistry, "chat-message");
+        this.throttledListingWrites = throttledCounter(meterRegistry, "listing-write");
+        Gauge.builder("ratelimit.buckets", this, limiter -> limiter.chatMessages.size() + limiter.listingWrites.size())
+                .description("Users with a partly used rate-limit bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Charge one chat message to the user, or throw RateLimitExceededException.
+     */
+    public void acquireChatMessage(UUID userId) {
+        acquire(chatMessages, throttledChatMessages, userId, 1, "Too many messages");
+    }
+
+    /**
+     * Charge {@code count} new listings to the authenticated user. Requests without a resolved
+     * user are left to the service's own authentication check.
+     */
+    public void acquireListingWrites(Principal principal, int count) {
+        UUID userId = userId(principal);
+        if (userId == null || !enabled) {
+            return;
+        }
+        if (count > listingWrites.capacity()) {
+            throttledListingWrites.increment();
+            throw new RateLimitExceededException("At most " + listingWrites.capacity()
+                    + " listings can be created at once; split the request", listingRefillPeriod);
+        }
+        acquire(listingWrites, throttledListingWrites, userId, Math.max(1, count), "Too many listings created");
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.sweep-interval:PT1M}")
+    public void sweep() {
+        chatMessages.sweep();
+        listingWrites.sweep();
+    }
+
+    private void acquire(TokenBucketLimiter limiter, Counter throttled, UUID userId, int permits, String message) {
+        if (!enabled) {
+            return;
+        }
+        long waitNanos = limiter.tryAcquire(userId, permits);
+        if (waitNanos > 0) {
+            throttled.increment();
+            log.debug("Rate limited user {}: {}", userId, message);
+            Duration retryAfter = Duration.ofNanos(waitNanos);
+            throw new RateLimitExceededException(message + "; retry in " + RateLimitExceededException.seconds(retryAfter) + "s",
+                    retryAfter);
+        }
+    }
+
+    private static Counter throttledCounter(MeterRegistry meterRegistry, String action) {
+        return Counter.builder("ratelimit.throttled")
+                .description("Write requests rejected by the per-user rate limiter")
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+
+    private static UUID userId(Principal principal) {
+        if (principal instanceof Authentication auth && auth.getPrincipal() instanceof UserPrincipal userPrincipal) {
+            return userPrincipal.getId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,9 @@
+-- Overflow storage for multi-node STOMP fan-out (app.websocket.cluster.enabled).
+-- Envelopes too large for a Postgres NOTIFY payload are stored here and referenced by id.
+-- Rows are short-lived; PostgresStompFanout deletes anything older than a few minutes.
+-- PostgresStompFanout also creates this table on startup, since Flyway is not enabled everywhere.
+CREATE TABLE IF NOT EXISTS stomp_fanout_payload (
+    id UUID PRIMARY KEY,
+    body TEXT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
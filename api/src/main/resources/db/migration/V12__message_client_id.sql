@@ -0,0 +1,18 @@
+-- Idempotent message sends: clients may attach their own message id and retry freely.
+-- A retry with the same (sender, client id) is answered with the stored row instead of a new one.
+-- Older rows and clients without ids keep client_message_id NULL, which the constraint ignores.
+ALTER TABLE messages
+ADD COLUMN IF NOT EXISTS client_message_id UUID;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1
+        FROM pg_constraint
+        WHERE conname = 'uk_messages_sender_client_message'
+    ) THEN
+        ALTER TABLE messages
+        ADD CONSTRAINT uk_messages_sender_client_message
+            UNIQUE (sender_id, client_message_id);
+    END IF;
+END $$;
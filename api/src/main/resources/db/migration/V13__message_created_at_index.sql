@@ -0,0 +1,3 @@
+-- Chat retention deletes expired messages oldest first in small chunks; without this index every
+-- chunk would scan the whole messages table. Orphan-chat checks use idx_messages_chat_id.
+CREATE INDEX IF NOT EXISTS idx_messages_created_at ON messages(created_at);
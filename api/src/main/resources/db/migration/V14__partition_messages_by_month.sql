@@ -0,0 +1,80 @@
+-- Range-partition messages by month on created_at so chat retention can drop whole months
+-- instead of deleting rows (see docs/CHAT_RETENTION.md).
+--
+-- Runs in one transaction and copies every row, so messages are unavailable for the duration;
+-- schedule it in a maintenance window on large tables. Skipped if messages is already partitioned.
+--
+-- Postgres requires unique constraints on a partitioned table to include the partition key, so:
+--   * the primary key becomes (id, created_at); ids are still random UUIDs;
+--   * uk_messages_sender_client_message cannot exist on the parent. Each monthly partition gets its
+--     own unique index on (sender_id, client_message_id) instead, created by MessagePartitionManager
+--     along with the partition. A retry that straddles a month boundary is left to MessageDeduplicator.
+DO $$
+DECLARE
+    month_start DATE;
+    last_month DATE := (date_trunc('month', now() AT TIME ZONE 'UTC') + INTERVAL '3 months')::DATE;
+    partition_name TEXT;
+BEGIN
+    IF EXISTS (
+        SELECT 1
+        FROM pg_partitioned_table pt
+        JOIN pg_class c ON c.oid = pt.partrelid
+        WHERE c.relname = 'messages'
+          AND c.relnamespace = current_schema()::regnamespace
+    ) THEN
+        RETURN;
+    END IF;
+
+    ALTER TABLE messages RENAME TO messages_unpartitioned;
+
+    CREATE TABLE messages (
+        id UUID NOT NULL,
+        chat_id UUID NOT NULL,
+        sender_id UUID NOT NULL,
+        shared_listing_id UUID,
+        client_message_id UUID,
+        content TEXT NOT NULL,
+        created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        CONSTRAINT pk_messages PRIMARY KEY (id, created_at),
+        CONSTRAINT fk_messages_chat FOREIGN KEY (chat_id) REFERENCES chats(id),
+        CONSTRAINT fk_messages_sender FOREIGN KEY (sender_id) REFERENCES users(id),
+        CONSTRAINT fk_messages_shared_listing FOREIGN KEY (shared_listing_id)
+            REFERENCES listings(id) ON DELETE SET NULL
+    ) PARTITION BY RANGE (created_at);
+
+    -- Catches rows outside every monthly partition (e.g. a clock far in the future)
+    CREATE TABLE messages_default PARTITION OF messages DEFAULT;
+    CREATE UNIQUE INDEX messages_default_sender_client_uk ON messages_default (sender_id, client_message_id);
+
+    SELECT COALESCE(date_trunc('month', MIN(created_at) AT TIME ZONE 'UTC')::DATE,
+                    date_trunc('month', now() AT TIME ZONE 'UTC')::DATE)
+    INTO month_start
+    FROM messages_unpartitioned;
+
+    WHILE month_start <= last_month LOOP
+        partition_name := format('messages_y%sm%s', to_char(month_start, 'YYYY'), to_char(month_start, 'MM'));
+        EXECUTE format(
+            'CREATE TABLE %I PARTITION OF messages FOR VALUES FROM (%L) TO (%L)',
+            partition_name,
+            month_start::TIMESTAMP AT TIME ZONE 'UTC',
+            (month_start + INTERVAL '1 month')::TIMESTAMP AT TIME ZONE 'UTC');
+        EXECUTE format(
+            'CREATE UNIQUE INDEX %I ON %I (sender_id, client_message_id)',
+            partition_name || '_sender_client_uk',
+            partition_name);
+        month_start := (month_start + INTERVAL '1 month')::DATE;
+    END LOOP;
+
+    INSERT INTO messages (id, chat_id, sender_id, shared_listing_id, client_message_id, content, created_at)
+    SELECT id, chat_id, sender_id, shared_listing_id, client_message_id, content, created_at
+    FROM messages_unpartitioned;
+
+    -- Dropping the old table frees its index names for the partitioned ones below
+    DROP TABLE messages_unpartitioned;
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_messages_chat_id ON messages(chat_id);
+CREATE INDEX IF NOT EXISTS idx_messages_sender_id ON messages(sender_id);
+CREATE INDEX IF NOT EXISTS idx_messages_shared_listing_id ON messages(shared_listing_id);
+CREATE INDEX IF NOT EXISTS idx_messages_chat_created_at_desc ON messages(chat_id, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_messages_created_at ON messages(created_at);
@@ -0,0 +1,7 @@
+-- Listing renewal (see ListingRenewalService): a renewed listing's retention clock restarts at
+-- renewed_at, and renewal_reminded_at records when its seller was told it is about to expire.
+ALTER TABLE listings ADD COLUMN IF NOT EXISTS renewed_at TIMESTAMP WITH TIME ZONE;
+ALTER TABLE listings ADD COLUMN IF NOT EXISTS renewal_reminded_at TIMESTAMP WITH TIME ZONE;
+
+-- Retention and the reminder sweep both range-scan on the retention anchor
+CREATE INDEX IF NOT EXISTS idx_listings_retention_anchor ON listings ((COALESCE(renewed_at, created_at)));
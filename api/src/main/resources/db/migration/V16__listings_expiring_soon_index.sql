@@ -0,0 +1,5 @@
+-- "Expiring soon" feed (GET /api/listings/expiring-soon) pages ACTIVE listings by (must_go_by, id).
+-- Only listings with a deadline are indexed, so the index stays small; ListingExpiryScheduler's
+-- startup load reads the same rows.
+CREATE INDEX IF NOT EXISTS idx_listings_active_must_go_by ON listings (must_go_by, id)
+    WHERE status = 'ACTIVE' AND must_go_by IS NOT NULL;
@@ -0,0 +1,8 @@
+-- Last completion and current lease per cron job, so ClusterJobLock.runOncePerWindow runs each
+-- schedule window once across the cluster and a survivor can take over a window whose node died.
+-- ClusterJobLock also creates the table on first use, as it is not a JPA entity.
+CREATE TABLE IF NOT EXISTS scheduled_jobs (
+    job VARCHAR(100) PRIMARY KEY,
+    lease_until TIMESTAMPTZ,
+    last_completed_at TIMESTAMPTZ
+);
@@ -0,0 +1,167 @@
+package edu.umass.marketplace.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple-broker cost of the two ways a client can follow its chats, at 10k connected users:
+ * "per-chat" subscribes to /topic/chat/{chatId} for every open chat plus /user/queue/inbox;
+ * "multiplexed" subscribes to /user/queue/inbox and /user/queue/chat-events only.
+ * User destinations are registered the way UserDestinationMessageHandler rewrites them
+ * (/queue/chat-events-user{sessionId}).
+ *
+ * reconnect measures one client resubscribing (disconnect plus SUBSCRIBE frames); deliver measures
+ * the registry lookups for one chat message to both participants. Lookups for destinations outside
+ * the registry's destination cache scan every subscription, so both scale with the total count.
+ * main() also logs the heap retained by a registry holding every session's subscriptions.
+ *
+ * Run from api/ (JMH forks, so it needs a plain java classpath rather than exec:java):
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *       edu.umass.marketplace.benchmark.ChatSubscriptionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatSubscriptionBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatSubscriptionBenchmark.class);
+
+    static final int USERS = 10_000;
+    static final int CHATS_PER_USER = 8;
+
+    @Param({"per-chat", "multiplexed"})
+    public String layout;
+
+    private DefaultSubscriptionRegistry registry;
+    private List<List<Message<byte[]>>> subscribeFrames;
+
+    @Setup
+    public void setUp() {
+        subscribeFrames = subscribeFrames(layout.equals("multiplexed"));
+        registry = register(subscribeFrames);
+    }
+
+    @Benchmark
+    public Object reconnect() {
+        int user = ThreadLocalRandom.current().nextInt(USERS);
+        registry.unregisterAllSubscriptions(sessionId(user));
+        for (Message<byte[]> frame : subscribeFrames.get(user)) {
+            registry.registerSubscription(frame);
+        }
+        return registry;
+    }
+
+    @Benchmark
+    public int deliver() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(USERS);
+        int partner = user ^ 1;
+        int found = 0;
+        if (layout.equals("multiplexed")) {
+            found += registry.findSubscriptions(send("/queue/chat-events-user" + sessionId(user))).size();
+            found += registry.findSubscriptions(send("/queue/chat-events-user" + sessionId(partner))).size();
+        } else {
+            found += registry.findSubscriptions(send(chatTopic(user, random.nextInt(CHATS_PER_USER)))).size();
+        }
+        found += registry.findSubscriptions(send("/queue/inbox-user" + sessionId(user))).size();
+        found += registry.findSubscriptions(send("/queue/inbox-user" + sessionId(partner))).size();
+        return found;
+    }
+
+    // Users 2n and 2n+1 share CHATS_PER_USER chats, so every chat topic has two subscribers
+    static String chatTopic(int user, int chat) {
+        return "/topic/chat/" + (chat * USERS + user) / 2;
+    }
+
+    static String sessionId(int user) {
+        return "session-" + user;
+    }
+
+    static List<List<Message<byte[]>>> subscribeFrames(boolean multiplexed) {
+        List<List<Message<byte[]>>> frames = new ArrayList<>(USERS);
+        for (int user = 0; user < USERS; user++) {
+            List<Message<byte[]>> userFrames = new ArrayList<>();
+            userFrames.add(subscribe(user, "inbox", "/queue/inbox-user" + sessionId(user)));
+            if (multiplexed) {
+                userFrames.add(subscribe(user, "events", "/queue/chat-events-user" + sessionId(user)));
+            } else {
+                for (int chat = 0; chat < CHATS_PER_USER; chat++) {
+                    userFrames.add(subscribe(user, "chat-" + chat, chatTopic(user, chat)));
+                }
+            }
+            frames.add(userFrames);
+        }
+        return frames;
+    }
+
+    static DefaultSubscriptionRegistry register(List<List<Message<byte[]>>> frames) {
+        DefaultSubscriptionRegistry registry = new DefaultSubscriptionRegistry();
+        for (List<Message<byte[]>> userFrames : frames) {
+            for (Message<byte[]> frame : userFrames) {
+                registry.registerSubscription(frame);
+            }
+        }
+        return registry;
+    }
+
+    private static Message<byte[]> subscribe(int user, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId(user));
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> send(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static long retainedBytes(boolean multiplexed) {
+        // Build the frames first so only the registry itself is measured
+        List<List<Message<byte[]>>> frames = subscribeFrames(multiplexed);
+        long before = usedHeap();
+        DefaultSubscriptionRegistry registry = register(frames);
+        long after = usedHeap();
+        Reference.reachabilityFence(registry);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String layout : new String[] {"per-chat", "multiplexed"}) {
+            log.info("{}: registry retains ~{} KB for {} users",
+                    layout, retainedBytes(layout.equals("multiplexed")) / 1024, USERS);
+        }
+        new Runner(new OptionsBuilder()
+                .include(ChatSubscriptionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package edu.umass.marketplace.benchmark;
+
+import edu.umass.marketplace.common.security.JwtAuthenticationFilter;
+import edu.umass.marketplace.common.security.JwtPrincipalResolver;
+import edu.umass.marketplace.common.security.JwtUtil;
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.service.PresenceTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of JwtAuthenticationFilter for a returning user, with and without
+ * JwtUtil's verified-token cache. The user-existence lookup is cached in both cases,
+ * so the difference is the HMAC verification and claim decoding alone.
+ *
+ * Run from api/ (JMH forks, so it needs a plain java classpath rather than exec:java):
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *       edu.umass.marketplace.benchmark.JwtAuthenticationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationBenchmark {
+
+    @Param({"10000", "0"})
+    public int verifiedTokenCacheSize;
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = new JwtUtil("benchmark-secret-key-benchmark-secret-key", 3_600_000, verifiedTokenCacheSize);
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.existsById(Mockito.any())).thenReturn(true);
+        JwtPrincipalResolver resolver = new JwtPrincipalResolver(jwtUtil, userRepository, "claims",
+                Duration.ofMinutes(1), 1000);
+        PresenceTracker presenceTracker = new PresenceTracker(new SimpleMeterRegistry(), Duration.ofMinutes(5),
+                ZoneId.of("America/New_York"));
+        filter = new JwtAuthenticationFilter(resolver, presenceTracker);
+        authorization = "Bearer " + jwtUtil.generateToken(UUID.randomUUID(), "student@umass.edu", "Student");
+    }
+
+    @Benchmark
+    public Object authenticateRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/listings");
+        request.addHeader("Authorization", authorization);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtAuthenticationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package edu.umass.marketplace.common.config;
+
+import edu.umass.marketplace.common.exception.RateLimitExceededException;
+import edu.umass.marketplace.common.security.JwtPrincipalResolver;
+import edu.umass.marketplace.common.security.UserPrincipal;
+import edu.umass.marketplace.marketplace.dto.ChatErrorDTO;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
+import edu.umass.marketplace.marketplace.service.WriteRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebSocketAuthInterceptorTest {
+
+    @Mock
+    private JwtPrincipalResolver jwtPrincipalResolver;
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private SuperuserConfig superuserConfig;
+    @Mock
+    private WriteRateLimiter writeRateLimiter;
+    @Mock
+    private ObjectProvider<ChatEventPublisher> chatEventPublisherProvider;
+    @Mock
+    private ChatEventPublisher chatEventPublisher;
+    @Mock
+    private MessageChannel channel;
+
+    private WebSocketAuthInterceptor interceptor;
+    private UserPrincipal principal;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new WebSocketAuthInterceptor(jwtPrincipalResolver, chatAccessCache, superuserConfig,
+                writeRateLimiter, chatEventPublisherProvider);
+        principal = new UserPrincipal(UUID.randomUUID(), "typist@umass.edu", "Typist", null);
+    }
+
+    private Message<byte[]> send(String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setUser(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    @Test
+    void sendWithinLimitPassesThrough() {
+        Message<byte[]> message = send("/app/chat/" + UUID.randomUUID());
+
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+        verify(writeRateLimiter).acquireChatMessage(principal.getId());
+        verifyNoInteractions(chatEventPublisherProvider);
+    }
+
+    @Test
+    void throttledSendIsDroppedAndReportedWithoutClosingTheSession() {
+        UUID chatId = UUID.randomUUID();
+        doThrow(new RateLimitExceededException("Too many chat messages", Duration.ofMillis(1500)))
+                .when(writeRateLimiter).acquireChatMessage(principal.getId());
+        when(chatEventPublisherProvider.getObject()).thenReturn(chatEventPublisher);
+
+        Message<?> result = interceptor.preSend(send("/app/chat/" + chatId), channel);
+
+        // Returning null drops the frame; throwing would make Spring send ERROR and close the session
+        assertThat(result).isNull();
+        ArgumentCaptor<ChatErrorDTO> error = ArgumentCaptor.forClass(ChatErrorDTO.class);
+        verify(chatEventPublisher).publishError(eq("typist@umass.edu"), error.capture());
+        assertThat(error.getValue().getStatus()).isEqualTo(429);
+        assertThat(error.getValue().getChatId()).isEqualTo(chatId);
+        assertThat(error.getValue().getRetryAfterSeconds()).isEqualTo(2L);
+    }
+
+    @Test
+    void signalsAreNotThrottled() {
+        Message<byte[]> message = send("/app/chat/" + UUID.randomUUID() + "/signal");
+
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+        verifyNoInteractions(writeRateLimiter);
+    }
+}
@@ -0,0 +1,251 @@
+package edu.umass.marketplace.common.scheduling;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.support.CronExpression;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterJobLockTest {
+
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement lockStatement;
+    @Mock
+    private PreparedStatement unlockStatement;
+    @Mock
+    private ResultSet lockResult;
+    @Mock
+    private ResultSet unlockResult;
+    @Mock
+    private Statement createTable;
+    @Mock
+    private PreparedStatement insertJob;
+    @Mock
+    private PreparedStatement selectJob;
+    @Mock
+    private ResultSet jobRow;
+    @Mock
+    private PreparedStatement leaseJob;
+    @Mock
+    private PreparedStatement completeJob;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ClusterJobLock lock;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        lock = new ClusterJobLock(dataSource, true, meterRegistry);
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        lenient().when(connection.prepareStatement("SELECT pg_try_advisory_lock(?, ?)")).thenReturn(lockStatement);
+        lenient().when(connection.prepareStatement("SELECT pg_advisory_unlock(?, ?)")).thenReturn(unlockStatement);
+        lenient().when(lockStatement.executeQuery()).thenReturn(lockResult);
+        lenient().when(unlockStatement.executeQuery()).thenReturn(unlockResult);
+        lenient().when(lockResult.next()).thenReturn(true);
+        lenient().when(unlockResult.next()).thenReturn(true);
+        lenient().when(unlockResult.getBoolean(1)).thenReturn(true);
+        lenient().when(connection.createStatement()).thenReturn(createTable);
+        lenient().when(connection.prepareStatement(ClusterJobLock.INSERT_JOB_SQL)).thenReturn(insertJob);
+        lenient().when(connection.prepareStatement(ClusterJobLock.SELECT_JOB_SQL)).thenReturn(selectJob);
+        lenient().when(connection.prepareStatement(ClusterJobLock.LEASE_SQL)).thenReturn(leaseJob);
+        lenient().when(connection.prepareStatement(ClusterJobLock.COMPLETE_SQL)).thenReturn(completeJob);
+        lenient().when(selectJob.executeQuery()).thenReturn(jobRow);
+        lenient().when(jobRow.next()).thenReturn(true);
+    }
+
+    // Nightly at 02:00 UTC; "now" is 02:30, so the current window started half an hour ago
+    private static final String NIGHTLY = "0 0 2 * * ?";
+    private static final Instant NOW = Instant.parse("2026-03-10T02:30:00Z");
+    private static final Instant WINDOW_START = Instant.parse("2026-03-10T02:00:00Z");
+
+    private ClusterJobLock windowedLock() {
+        return new ClusterJobLock(dataSource, true, Duration.ofMinutes(10), meterRegistry,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void jobRow(Instant leaseUntil, Instant lastCompleted) throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(jobRow.getTimestamp(1)).thenReturn(leaseUntil == null ? null : Timestamp.from(leaseUntil));
+        when(jobRow.getTimestamp(2)).thenReturn(lastCompleted == null ? null : Timestamp.from(lastCompleted));
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get("scheduled.jobs").tag("job", "cleanup").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void runsJobAndReleasesLockWhenAcquired() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+
+        assertThat(lock.runExclusively("cleanup", runs::incrementAndGet)).isTrue();
+
+        assertThat(runs).hasValue(1);
+        verify(lockStatement).setInt(1, ClusterJobLock.LOCK_NAMESPACE);
+        verify(lockStatement).setInt(2, "cleanup".hashCode());
+        verify(unlockStatement).executeQuery();
+        verify(connection).close();
+        assertThat(outcome("ran")).isEqualTo(1);
+    }
+
+    @Test
+    void skipsJobWhileAnotherNodeHoldsTheLock() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(false);
+
+        assertThat(lock.runExclusively("cleanup", runs::incrementAndGet)).isFalse();
+
+        assertThat(runs).hasValue(0);
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_unlock(?, ?)");
+        assertThat(outcome("skipped")).isEqualTo(1);
+    }
+
+    @Test
+    void releasesLockWhenJobThrows() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+
+        assertThatThrownBy(() -> lock.runExclusively("cleanup", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(unlockStatement).executeQuery();
+        verify(connection).close();
+    }
+
+    @Test
+    void skipsJobWhenLockCannotBeChecked() throws SQLException {
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused"));
+
+        assertThat(lock.runExclusively("cleanup", runs::incrementAndGet)).isFalse();
+
+        assertThat(runs).hasValue(0);
+        assertThat(outcome("lock_failed")).isEqualTo(1);
+    }
+
+    @Test
+    void disabledLockRunsJobWithoutTouchingTheDatabase() {
+        lock = new ClusterJobLock(dataSource, false, meterRegistry);
+
+        assertThat(lock.runExclusively("cleanup", runs::incrementAndGet)).isTrue();
+
+        assertThat(runs).hasValue(1);
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void windowedJobLeasesRunsAndRecordsCompletion() throws SQLException {
+        jobRow(null, WINDOW_START.minus(Duration.ofDays(1)));
+
+        assertThat(windowedLock().runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet)).isTrue();
+
+        assertThat(runs).hasValue(1);
+        verify(createTable).execute(ClusterJobLock.CREATE_TABLE_SQL);
+        verify(leaseJob).setTimestamp(1, Timestamp.from(NOW.plus(Duration.ofMinutes(10))));
+        verify(completeJob).setTimestamp(1, Timestamp.from(NOW));
+        verify(completeJob).executeUpdate();
+        verify(unlockStatement).executeQuery();
+        assertThat(outcome("ran")).isEqualTo(1);
+    }
+
+    @Test
+    void windowedJobIsSkippedWhenAlreadyCompletedInThisWindow() throws SQLException {
+        // e.g. a node whose trigger fired late, after another node finished tonight's run
+        jobRow(null, WINDOW_START.plusSeconds(40));
+
+        assertThat(windowedLock().runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet)).isFalse();
+
+        assertThat(runs).hasValue(0);
+        verify(leaseJob, never()).executeUpdate();
+        verify(unlockStatement).executeQuery();
+        assertThat(outcome("done")).isEqualTo(1);
+    }
+
+    @Test
+    void windowedJobIsSkippedWhileAnUnfinishedRunIsLeased() throws SQLException {
+        jobRow(NOW.plus(Duration.ofMinutes(2)), WINDOW_START.minus(Duration.ofDays(1)));
+
+        assertThat(windowedLock().runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet)).isFalse();
+
+        assertThat(runs).hasValue(0);
+        verify(leaseJob, never()).executeUpdate();
+        assertThat(outcome("skipped")).isEqualTo(1);
+    }
+
+    @Test
+    void survivorTakesOverAnExpiredLeaseOnItsNextCheck() throws SQLException {
+        ClusterJobLock windowed = windowedLock();
+        // At the cron trigger another node still held tonight's lease
+        jobRow(NOW.plus(Duration.ofMinutes(2)), WINDOW_START.minus(Duration.ofDays(1)));
+        assertThat(windowed.runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet)).isFalse();
+
+        // That node died; its lease has since expired without the window completing
+        jobRow(NOW.minus(Duration.ofMinutes(1)), WINDOW_START.minus(Duration.ofDays(1)));
+        windowed.resumeAbandonedJobs();
+
+        assertThat(runs).hasValue(1);
+        verify(leaseJob).executeUpdate();
+        verify(completeJob).executeUpdate();
+    }
+
+    @Test
+    void failedWindowedRunKeepsItsLeaseSoTheWindowIsRetriedLater() throws SQLException {
+        jobRow(null, null);
+
+        assertThatThrownBy(() -> windowedLock().runOncePerWindow("cleanup", NIGHTLY, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(leaseJob).executeUpdate();
+        verify(completeJob, never()).executeUpdate();
+        verify(unlockStatement).executeQuery();
+    }
+
+    @Test
+    void disabledLockRunsWindowedJobsEveryTimeAndNeverTakesOver() {
+        lock = new ClusterJobLock(dataSource, false, meterRegistry);
+
+        lock.runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet);
+        lock.runOncePerWindow("cleanup", NIGHTLY, runs::incrementAndGet);
+        lock.resumeAbandonedJobs();
+
+        assertThat(runs).hasValue(2);
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void windowStartIsTheLatestCronFireTime() {
+        ZonedDateTime now = ZonedDateTime.ofInstant(NOW, ZoneOffset.UTC);
+
+        assertThat(ClusterJobLock.windowStart(CronExpression.parse(NIGHTLY), now)).isEqualTo(WINDOW_START);
+        assertThat(ClusterJobLock.windowStart(CronExpression.parse(NIGHTLY), now.withHour(1)))
+                .isEqualTo(WINDOW_START.minus(Duration.ofDays(1)));
+        assertThat(ClusterJobLock.windowStart(CronExpression.parse("0 15 * * * ?"), now))
+                .isEqualTo(Instant.parse("2026-03-10T02:15:00Z"));
+        assertThat(ClusterJobLock.windowStart(CronExpression.parse(NIGHTLY), ZonedDateTime.ofInstant(WINDOW_START,
+                ZoneOffset.UTC))).isEqualTo(WINDOW_START);
+    }
+}
@@ -0,0 +1,116 @@
+package edu.umass.marketplace.common.security;
+
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtPrincipalResolverTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private JwtUtil jwtUtil;
+    private UUID userId;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil("test-secret-for-principal-resolver", 60_000);
+        userId = UUID.randomUUID();
+        token = jwtUtil.generateToken(userId, "student@umass.edu", "Student");
+    }
+
+    private JwtPrincipalResolver resolver(String mode) {
+        return new JwtPrincipalResolver(jwtUtil, userRepository, mode, Duration.ofMinutes(1), 1000);
+    }
+
+    @Test
+    void claimsMode_buildsPrincipalFromTokenAndChecksExistenceOncePerTtl() {
+        when(userRepository.existsById(userId)).thenReturn(true);
+        JwtPrincipalResolver resolver = resolver("claims");
+
+        for (int i = 0; i < 10; i++) {
+            UserPrincipal principal = resolver.resolve(token);
+            assertThat(principal.getId()).isEqualTo(userId);
+            assertThat(principal.getEmail()).isEqualTo("student@umass.edu");
+            assertThat(principal.getName()).isEqualTo("Student");
+        }
+
+        verify(userRepository, times(1)).existsById(userId);
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void claimsMode_carriesPictureFromToken() {
+        when(userRepository.existsById(userId)).thenReturn(true);
+        String withPicture = jwtUtil.generateToken(userId, "student@umass.edu", "Student", "https://img/me.png");
+
+        UserPrincipal principal = resolver("claims").resolve(withPicture);
+
+        assertThat(principal.getPictureUrl()).isEqualTo("https://img/me.png");
+    }
+
+    @Test
+    void claimsMode_rejectsRevokedUserWithoutDatabase() {
+        when(userRepository.existsById(userId)).thenReturn(true);
+        JwtPrincipalResolver resolver = resolver("claims");
+        assertThat(resolver.resolve(token)).isNotNull();
+
+        resolver.revoke(userId);
+
+        assertThat(resolver.resolve(token)).isNull();
+        verify(userRepository, times(1)).existsById(userId);
+    }
+
+    @Test
+    void claimsMode_rejectsUserDeletedElsewhere() {
+        when(userRepository.existsById(userId)).thenReturn(false);
+        JwtPrincipalResolver resolver = resolver("claims");
+
+        assertThat(resolver.resolve(token)).isNull();
+        assertThat(resolver.resolve(token)).isNull();
+
+        verify(userRepository, times(1)).existsById(userId);
+    }
+
+    @Test
+    void databaseMode_loadsUserRowEveryTime() {
+        User user = new User();
+        user.setId(userId);
+        user.setEmail("student@umass.edu");
+        user.setName("Renamed Student");
+        user.setPictureUrl("https://example.com/p.png");
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        JwtPrincipalResolver resolver = resolver("database");
+
+        UserPrincipal principal = resolver.resolve(token);
+        resolver.resolve(token);
+
+        assertThat(principal.getName()).isEqualTo("Renamed Student");
+        assertThat(principal.getPictureUrl()).isEqualTo("https://example.com/p.png");
+        verify(userRepository, times(2)).findById(userId);
+    }
+
+    @Test
+    void resolve_throwsForTamperedToken() {
+        JwtPrincipalResolver resolver = resolver("claims");
+        String forged = new JwtUtil("some-other-secret", 60_000).generateToken(userId, "student@umass.edu", "Student");
+
+        assertThatThrownBy(() -> resolver.resolve(forged)).isInstanceOf(RuntimeException.class);
+        verifyNoInteractions(userRepository);
+    }
+}
@@ -0,0 +1,47 @@
+package edu.umass.marketplace.common.security;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTest {
+
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    void verifyToken_servesRepeatVerificationsFromCache() {
+        JwtUtil jwtUtil = new JwtUtil("test-secret-for-jwt-util", 60_000, 100);
+        String token = jwtUtil.generateToken(userId, "student@umass.edu", "Student");
+
+        DecodedJWT first = jwtUtil.verifyToken(token);
+        DecodedJWT second = jwtUtil.verifyToken(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(jwtUtil.getUserIdFromToken(token)).isEqualTo(userId);
+    }
+
+    @Test
+    void verifyToken_withCacheDisabledVerifiesEveryTime() {
+        JwtUtil jwtUtil = new JwtUtil("test-secret-for-jwt-util", 60_000, 0);
+        String token = jwtUtil.generateToken(userId, "student@umass.edu", "Student");
+
+        assertThat(jwtUtil.verifyToken(token)).isNotSameAs(jwtUtil.verifyToken(token));
+    }
+
+    @Test
+    void verifyToken_neverCachesRejectedTokens() {
+        JwtUtil jwtUtil = new JwtUtil("test-secret-for-jwt-util", 60_000, 100);
+        String forged = new JwtUtil("some-other-secret", 60_000).generateToken(userId, "student@umass.edu", "Student");
+        String expired = new JwtUtil("test-secret-for-jwt-util", -5_000).generateToken(userId, "student@umass.edu", "Student");
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> jwtUtil.verifyToken(forged)).isInstanceOf(JWTVerificationException.class);
+            assertThatThrownBy(() -> jwtUtil.verifyToken(expired)).isInstanceOf(JWTVerificationException.class);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.umass.marketplace.common.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemObjectStorageTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void putStoresObjectUnderKeyPath() throws Exception {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+
+        storage.put("listings/abc/1.jpg", "jpeg".getBytes(StandardCharsets.UTF_8), "image/jpeg");
+
+        assertThat(Files.readString(root.resolve("listings/abc/1.jpg"))).isEqualTo("jpeg");
+    }
+
+    @Test
+    void getReturnsStoredContentOrEmpty() {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+        storage.put("archive/a/1.gz", new byte[] {1, 2}, "application/gzip");
+
+        assertThat(storage.get("archive/a/1.gz")).contains(new byte[] {1, 2});
+        assertThat(storage.get("archive/a/missing.gz")).isEmpty();
+    }
+
+    @Test
+    void listReturnsKeysUnderPrefixInOrder() {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+        storage.put("archive/a/2.gz", new byte[] {1}, "application/gzip");
+        storage.put("archive/a/1.gz", new byte[] {1}, "application/gzip");
+        storage.put("archive/ab/1.gz", new byte[] {1}, "application/gzip");
+        storage.put("listings/x.jpg", new byte[] {1}, "image/jpeg");
+
+        assertThat(storage.list("archive/a/")).containsExactly("archive/a/1.gz", "archive/a/2.gz");
+        assertThat(storage.list("archive/a")).containsExactly("archive/a/1.gz", "archive/a/2.gz", "archive/ab/1.gz");
+        assertThat(storage.list("missing/")).isEmpty();
+    }
+
+    @Test
+    void deleteAllTreatsMissingKeysAsDeleted() {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+        storage.put("listings/abc/1.jpg", new byte[] {1}, "image/jpeg");
+
+        List<String> failed = storage.deleteAll(List.of("listings/abc/1.jpg", "listings/abc/missing.jpg"));
+
+        assertThat(failed).isEmpty();
+        assertThat(root.resolve("listings/abc/1.jpg")).doesNotExist();
+    }
+
+    @Test
+    void keysOutsideRootAreReportedAsFailed() {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+
+        assertThat(storage.deleteAll(List.of("../outside.jpg"))).containsExactly("../outside.jpg");
+        assertThatThrownBy(() -> storage.put("../outside.jpg", new byte[] {1}, "image/jpeg"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void deleteAllRejectsOversizedBatches() {
+        FileSystemObjectStorage storage = new FileSystemObjectStorage(root);
+
+        assertThatThrownBy(() -> storage.deleteAll(Collections.nCopies(ObjectStorage.MAX_DELETE_BATCH + 1, "k")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,110 @@
+package edu.umass.marketplace.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalTimerWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long TICK = 1000;
+
+    private final HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(Duration.ofMillis(TICK), START);
+
+    @Test
+    void firesOnTheFirstTickAtOrAfterTheDeadline() {
+        wheel.schedule("a", START + 2500);
+
+        assertThat(wheel.advance(START + 2999)).isEmpty();
+        assertThat(wheel.advance(START + 3000)).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void firesEachDeadlineOnItsOwnTickAcrossLevels() {
+        // One deadline per level, and some on level boundaries where timers cascade
+        long[] ticks = {1, 63, 64, 65, 4095, 4096, 4097, 100_000, 262_144, 300_001};
+        for (long tick : ticks) {
+            wheel.schedule("t" + tick, START + tick * TICK);
+        }
+
+        Map<String, Long> firedAt = new HashMap<>();
+        for (long tick = 1; tick <= 300_001; tick++) {
+            for (String key : wheel.advance(START + tick * TICK)) {
+                firedAt.put(key, tick);
+            }
+        }
+
+        for (long tick : ticks) {
+            assertThat(firedAt).containsEntry("t" + tick, tick);
+        }
+    }
+
+    @Test
+    void randomDeadlinesNeverFireEarlyOrLate() {
+        Random random = new Random(42);
+        Map<String, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long tick = 1 + random.nextInt(20_000);
+            deadlines.put("k" + i, tick);
+            wheel.schedule("k" + i, START + tick * TICK);
+        }
+
+        // Advance in uneven steps, as a late ticker thread would
+        long tick = 0;
+        while (wheel.size() > 0) {
+            tick += 1 + random.nextInt(90);
+            for (String key : wheel.advance(START + tick * TICK)) {
+                assertThat(deadlines.get(key)).isLessThanOrEqualTo(tick).isGreaterThan(tick - 90);
+                deadlines.remove(key);
+            }
+        }
+        assertThat(deadlines).isEmpty();
+    }
+
+    @Test
+    void rescheduleReplacesAndCancelRemoves() {
+        wheel.schedule("a", START + 10 * TICK);
+        wheel.schedule("b", START + 10 * TICK);
+        wheel.schedule("a", START + 5000 * TICK);
+
+        assertThat(wheel.cancel("b")).isTrue();
+        assertThat(wheel.cancel("b")).isFalse();
+        assertThat(wheel.advance(START + 4999 * TICK)).isEmpty();
+        assertThat(wheel.advance(START + 5000 * TICK)).containsExactly("a");
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextAdvance() {
+        wheel.advance(START + 100 * TICK);
+        wheel.schedule("late", START);
+        wheel.schedule("before-start", START - 50 * TICK);
+
+        assertThat(wheel.advance(START + 100 * TICK)).containsExactlyInAnyOrder("late", "before-start");
+    }
+
+    @Test
+    void deadlinesBeyondTheTopLevelAreRefiled() {
+        long span = 1L << (HierarchicalTimerWheel.SLOT_BITS * HierarchicalTimerWheel.LEVELS);
+        HierarchicalTimerWheel<String> fine = new HierarchicalTimerWheel<>(Duration.ofMillis(1), 0);
+        fine.schedule("far", span + 10);
+
+        assertThat(fine.advance(span + 9)).isEmpty();
+        assertThat(fine.advance(span + 10)).containsExactly("far");
+    }
+
+    @Test
+    void movingBackwardsFiresNothing() {
+        wheel.schedule("a", START + 10 * TICK);
+        wheel.advance(START + 5 * TICK);
+
+        assertThat(wheel.advance(START)).isEmpty();
+        assertThat(wheel.advance(START + 10 * TICK)).isEqualTo(List.of("a"));
+    }
+}
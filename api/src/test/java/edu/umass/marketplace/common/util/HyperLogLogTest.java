@@ -0,0 +1,36 @@
+package edu.umass.marketplace.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimate_isExactForSmallSetsAndIgnoresDuplicates() {
+        HyperLogLog sketch = new HyperLogLog();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        for (int i = 0; i < 100; i++) {
+            sketch.add(a);
+            sketch.add(b);
+        }
+
+        assertThat(sketch.estimate()).isEqualTo(2);
+    }
+
+    @Test
+    void estimate_staysWithinFewPercentForLargeSets() {
+        HyperLogLog sketch = new HyperLogLog();
+        int distinct = 200_000;
+
+        IntStream.range(0, distinct).parallel().forEach(i -> sketch.add(UUID.randomUUID()));
+
+        assertThat((double) sketch.estimate()).isCloseTo(distinct, within(distinct * 0.03));
+    }
+}
@@ -0,0 +1,102 @@
+package edu.umass.marketplace.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final UUID user = UUID.randomUUID();
+
+    // 10 tokens, refilled at one per second
+    private TokenBucketLimiter limiter() {
+        return new TokenBucketLimiter(10, Duration.ofSeconds(10), now::get);
+    }
+
+    @Test
+    void allowsBurstUpToCapacityThenRefillsOverTime() {
+        TokenBucketLimiter limiter = limiter();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire(user, 1)).isZero();
+        }
+        long wait = limiter.tryAcquire(user, 1);
+        assertThat(wait).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(limiter.tryAcquire(user, 1)).isZero();
+        assertThat(limiter.tryAcquire(user, 1)).isPositive();
+    }
+
+    @Test
+    void bucketsAreIndependentPerKey() {
+        TokenBucketLimiter limiter = limiter();
+        assertThat(limiter.tryAcquire(user, 10)).isZero();
+
+        assertThat(limiter.tryAcquire(user, 1)).isPositive();
+        assertThat(limiter.tryAcquire(UUID.randomUUID(), 10)).isZero();
+    }
+
+    @Test
+    void multiTokenRequestsAreAllOrNothing() {
+        TokenBucketLimiter limiter = limiter();
+        assertThat(limiter.tryAcquire(user, 7)).isZero();
+
+        assertThat(limiter.tryAcquire(user, 4)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(limiter.tryAcquire(user, 3)).isZero();
+        assertThat(limiter.tryAcquire(user, 11)).isPositive();
+    }
+
+    @Test
+    void sweepDropsOnlyRefilledBuckets() {
+        TokenBucketLimiter limiter = limiter();
+        UUID idle = UUID.randomUUID();
+        limiter.tryAcquire(idle, 1);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        limiter.tryAcquire(user, 5);
+
+        assertThat(limiter.sweep()).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+
+        // The swept user starts over with a full bucket; the busy one keeps its debt.
+        assertThat(limiter.tryAcquire(idle, 10)).isZero();
+        assertThat(limiter.tryAcquire(user, 6)).isPositive();
+    }
+
+    @Test
+    void concurrentCallersNeverExceedCapacity() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1000, Duration.ofDays(1));
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire(user, 1) == 0) {
+                        granted.incrementAndGet();
+                    }
+                    if (i % 50 == 0) {
+                        limiter.sweep();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(granted).hasValue(1000);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.umass.marketplace.common.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * The publisher queue is bounded: once Postgres falls behind by queue-capacity sends, further
+ * sends still reach this node's subscribers but are not relayed.
+ */
+class PostgresStompFanoutTest {
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch notifyStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseNotify = new CountDownLatch(1);
+    private PostgresStompFanout fanout;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // The first NOTIFY hangs, as if Postgres stopped answering, so later sends pile up
+        when(jdbcTemplate.query(eq("SELECT pg_notify(?, ?)"), any(ResultSetExtractor.class), any(), any()))
+                .thenAnswer(invocation -> {
+                    notifyStarted.countDown();
+                    releaseNotify.await(10, TimeUnit.SECONDS);
+                    return null;
+                });
+        // No database URL: the listener thread just keeps retrying until stop()
+        fanout = new PostgresStompFanout(messagingTemplate, jdbcTemplate, new ObjectMapper(),
+                new DataSourceProperties(), meterRegistry, "stomp_fanout", 2);
+        fanout.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseNotify.countDown();
+        fanout.stop();
+    }
+
+    @Test
+    void sendsBeyondQueueCapacityAreDeliveredLocallyAndCountedAsDropped() throws InterruptedException {
+        fanout.sendToTopic("/topic/chat.1", Map.of("n", 0));
+        assertThat(notifyStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 1; i <= 4; i++) {
+            fanout.sendToTopic("/topic/chat.1", Map.of("n", i));
+        }
+
+        verify(messagingTemplate, times(5)).convertAndSend(anyString(), any(Object.class));
+        // One NOTIFY in flight and two queued; the last two were not relayed
+        assertThat(meterRegistry.get("websocket.cluster.relay.dropped").counter().count()).isEqualTo(2);
+    }
+}
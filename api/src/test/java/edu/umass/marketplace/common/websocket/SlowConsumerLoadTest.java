@@ -0,0 +1,252 @@
+package edu.umass.marketplace.common.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives Spring's STOMP session handler with the same limits WebSocketConfig applies and a mix of
+ * healthy and stalled clients: stalled sessions must be cut off without holding outbound threads
+ * or buffering unbounded frames, while healthy sessions receive every message.
+ */
+class SlowConsumerLoadTest {
+
+    private static final int SEND_BUFFER_LIMIT = 64 * 1024;
+    private static final int SEND_TIME_LIMIT_MILLIS = 500;
+    private static final int FAST_SESSIONS = 16;
+    private static final int STALLED_SESSIONS = 4;
+    private static final int MESSAGES = 500;
+
+    private final List<SessionDisconnectEvent> disconnects = Collections.synchronizedList(new ArrayList<>());
+    private SimpleMeterRegistry meterRegistry;
+    private SubProtocolWebSocketHandler handler;
+    private WebSocketSessionMetrics metrics;
+    private ExecutorService outboundThreads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StompSubProtocolHandler stomp = new StompSubProtocolHandler();
+        stomp.setApplicationEventPublisher(event -> disconnects.add((SessionDisconnectEvent) event));
+        handler = new SubProtocolWebSocketHandler(new ExecutorSubscribableChannel(), new ExecutorSubscribableChannel());
+        handler.addProtocolHandler(stomp);
+        handler.setSendBufferSizeLimit(SEND_BUFFER_LIMIT);
+        handler.setSendTimeLimit(SEND_TIME_LIMIT_MILLIS);
+        handler.start();
+        metrics = new WebSocketSessionMetrics(meterRegistry, handler, executor(), executor());
+        outboundThreads = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboundThreads.shutdownNow();
+        handler.stop();
+    }
+
+    private static ThreadPoolTaskExecutor executor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        return executor;
+    }
+
+    @Test
+    void stalledSubscribersAreDisconnectedWhileOthersReceiveEverything() throws Exception {
+        List<FakeSession> fast = new ArrayList<>();
+        List<FakeSession> stalled = new ArrayList<>();
+        for (int i = 0; i < FAST_SESSIONS; i++) {
+            fast.add(connect(new FakeSession("fast-" + i, false)));
+        }
+        for (int i = 0; i < STALLED_SESSIONS; i++) {
+            stalled.add(connect(new FakeSession("stalled-" + i, true)));
+        }
+        List<FakeSession> all = new ArrayList<>(fast);
+        all.addAll(stalled);
+
+        long started = System.nanoTime();
+        byte[] payload = ("{\"content\":\"" + "x".repeat(200) + "\"}").getBytes(StandardCharsets.UTF_8);
+        // Steady chat traffic (~200 frames/s per session) rather than one instantaneous burst
+        for (int i = 0; i < MESSAGES; i++) {
+            for (FakeSession session : all) {
+                Message<byte[]> frame = frame(session.getId(), payload);
+                outboundThreads.submit(() -> handler.handleMessage(frame));
+            }
+            Thread.sleep(5);
+        }
+        outboundThreads.shutdown();
+        assertThat(outboundThreads.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertThat(fast).allSatisfy(session -> {
+            assertThat(session.received).hasValue(MESSAGES);
+            assertThat(session.closeStatus).isNull();
+        });
+        assertThat(stalled).allSatisfy(session ->
+                assertThat(session.closeStatus).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE));
+
+        disconnects.forEach(metrics::onSessionDisconnect);
+        assertThat(meterRegistry.get("websocket.sessions.slow.disconnects").counter().count()).isEqualTo(STALLED_SESSIONS);
+        assertThat(meterRegistry.get("websocket.sessions.limit.exceeded").gauge().value()).isEqualTo(STALLED_SESSIONS);
+        assertThat(meterRegistry.get("websocket.sessions.open").gauge().value()).isEqualTo(FAST_SESSIONS);
+        // Stalled clients never complete a send, so finishing at all means no thread was pinned for good.
+        assertThat(elapsedMillis).isLessThan(15_000);
+    }
+
+    private FakeSession connect(FakeSession session) throws Exception {
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    private static Message<byte[]> frame(String sessionId, byte[] payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/chat/load");
+        accessor.setMessageId(sessionId + "-" + System.nanoTime());
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    /**
+     * Minimal WebSocketSession; a stalled one blocks in sendMessage until it is closed,
+     * like a phone that stopped reading from its socket.
+     */
+    private static final class FakeSession implements WebSocketSession {
+
+        private final String id;
+        private final boolean stalled;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final AtomicInteger received = new AtomicInteger();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private volatile CloseStatus closeStatus;
+
+        FakeSession(String id, boolean stalled) {
+            this.id = id;
+            this.stalled = stalled;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws java.io.IOException {
+            if (stalled) {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new java.io.IOException("Session closed while sending");
+            }
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            if (closeStatus == null) {
+                closeStatus = status;
+            }
+            closed.countDown();
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeStatus == null;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("ws://localhost/ws");
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return "v12.stomp";
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+    }
+}
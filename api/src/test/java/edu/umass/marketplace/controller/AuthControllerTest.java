@@ -48,6 +48,12 @@ public class AuthControllerTest {
     @MockBean
     private edu.umass.marketplace.marketplace.repository.UserRepository userRepository;
 
+    @MockBean
+    private edu.umass.marketplace.common.security.JwtPrincipalResolver jwtPrincipalResolver;
+
+    @MockBean
+    private edu.umass.marketplace.marketplace.service.PresenceTracker presenceTracker;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.umass.marketplace.common.config.SuperuserConfig;
 import edu.umass.marketplace.common.security.UserPrincipal;
 import edu.umass.marketplace.marketplace.dto.CreateListingRequest;
+import edu.umass.marketplace.marketplace.response.ListingFeedResponse;
 import edu.umass.marketplace.marketplace.response.ListingResponse;
 import edu.umass.marketplace.marketplace.response.StatsResponse;
 import edu.umass.marketplace.marketplace.service.ListingService;
@@ -67,6 +68,9 @@ class ListingControllerTest {
     @MockBean
     private SuperuserConfig superuserConfig;
 
+    @MockBean
+    private edu.umass.marketplace.marketplace.service.WriteRateLimiter writeRateLimiter;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -156,6 +160,35 @@ class ListingControllerTest {
         verify(listingService, times(1)).getListingById(testListingId);
     }
 
+    @Test
+    void shouldGetExpiringSoonFeed() throws Exception {
+        UUID afterId = UUID.randomUUID();
+        OffsetDateTime afterMustGoBy = OffsetDateTime.parse("2024-05-10T12:00:00Z");
+        when(listingService.getExpiringSoon(eq(3), any(), eq(afterId), eq(100)))
+                .thenReturn(new ListingFeedResponse(List.of(testListingResponse), null, testListingId, true));
+
+        mockMvc.perform(get("/api/listings/expiring-soon")
+                        .param("withinDays", "3")
+                        .param("size", "500")
+                        .param("afterMustGoBy", afterMustGoBy.toString())
+                        .param("afterId", afterId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.listings[0].id").value(testListingId.toString()))
+                .andExpect(jsonPath("$.nextId").value(testListingId.toString()))
+                .andExpect(jsonPath("$.hasMore").value(true));
+
+        verify(listingService).getExpiringSoon(eq(3),
+                argThat(t -> t != null && t.toInstant().equals(afterMustGoBy.toInstant())), eq(afterId), eq(100));
+    }
+
+    @Test
+    void shouldRejectExpiringSoonWithHalfACursor() throws Exception {
+        mockMvc.perform(get("/api/listings/expiring-soon").param("afterId", UUID.randomUUID().toString()))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(listingService);
+    }
+
     @Test
     void shouldCreateListing() throws Exception {
         when(listingService.createListing(any(CreateListingRequest.class), any()))
@@ -12,13 +12,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -112,6 +117,36 @@ public class ListingRepositoryIntegrationTest {
         assertThat(activeListings.get(0).getTitle()).isEqualTo("Active Item");
     }
 
+    @Test
+    void shouldPageExpiringListingsByMustGoByThenId() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+        Listing later = createTestListing("Later", "10.00");
+        later.setMustGoBy(now.plusDays(2));
+        Listing tieA = createTestListing("Tie A", "10.00");
+        tieA.setMustGoBy(now.plusDays(1));
+        Listing tieB = createTestListing("Tie B", "10.00");
+        tieB.setMustGoBy(now.plusDays(1));
+        Listing outsideWindow = createTestListing("Outside", "10.00");
+        outsideWindow.setMustGoBy(now.plusDays(30));
+        Listing sold = createTestListing("Sold", "10.00");
+        sold.setMustGoBy(now.plusDays(1));
+        sold.setStatus(Listing.STATUS_SOLD);
+        Listing noDeadline = createTestListing("No deadline", "10.00");
+        listingRepository.saveAll(List.of(later, tieA, tieB, outsideWindow, sold, noDeadline));
+        List<UUID> tieOrder = List.of(tieA.getId(), tieB.getId()).stream().sorted(
+                java.util.Comparator.comparing(UUID::toString)).toList();
+
+        OffsetDateTime until = now.plusDays(7);
+        List<Listing> first = listingRepository.findExpiringAfter(now, new UUID(-1L, -1L), until,
+                PageRequest.of(0, 1));
+        Listing cursor = first.get(0);
+        List<Listing> rest = listingRepository.findExpiringAfter(cursor.getMustGoBy(), cursor.getId(), until,
+                PageRequest.of(0, 10));
+
+        assertThat(first).extracting(Listing::getId).containsExactly(tieOrder.get(0));
+        assertThat(rest).extracting(Listing::getId).containsExactly(tieOrder.get(1), later.getId());
+    }
+
     private Listing createTestListing(String title, String price) {
         Listing listing = new Listing();
         listing.setTitle(title);
@@ -0,0 +1,260 @@
+package edu.umass.marketplace.integration;
+
+// Integration Test for the V14 monthly message partitioning and MessagePartitionManager
+// Runs the migrations against a real PostgreSQL database in a container
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.marketplace.model.Chat;
+import edu.umass.marketplace.marketplace.model.Condition;
+import edu.umass.marketplace.marketplace.model.Listing;
+import edu.umass.marketplace.marketplace.model.Message;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.repository.ListingRepository;
+import edu.umass.marketplace.marketplace.repository.MessageRepository;
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.service.MessagePartitionManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.Table;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class MessagePartitioningIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("umarket_test")
+            .withUsername("umarket_test")
+            .withPassword("umarket_test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ChatRepository chatRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private MessagePartitionManager partitionManager;
+    private Chat chat;
+    private User buyer;
+    private YearMonth currentMonth;
+    private UUID oldMessageId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        buyer = userRepository.save(user("buyer@umass.edu"));
+        User seller = userRepository.save(user("seller@umass.edu"));
+        Listing listing = new Listing();
+        listing.setTitle("Desk");
+        listing.setDescription("Test description");
+        listing.setPrice(new BigDecimal("40.00"));
+        listing.setCategory("Furniture");
+        listing.setCondition(Condition.fromDisplayName("Good"));
+        listing.setSeller(seller);
+        listingRepository.save(listing);
+        chat = new Chat();
+        chat.setListing(listing);
+        chat.setBuyer(buyer);
+        chat.setSeller(seller);
+        chat = chatRepository.saveAndFlush(chat);
+
+        // A message from two months ago, written before the table is partitioned
+        currentMonth = YearMonth.now(ZoneOffset.UTC);
+        oldMessageId = insertMessage(UUID.randomUUID(), currentMonth.minusMonths(2));
+
+        // Hibernate created the plain table; apply the migrations that shape it in production
+        runMigration("V12__message_client_id.sql");
+        runMigration("V13__message_created_at_index.sql");
+        runMigration("V14__partition_messages_by_month.sql");
+
+        partitionManager = new MessagePartitionManager(jdbcTemplate,
+                new ClusterJobLock(dataSource, true, new SimpleMeterRegistry()), 3, Clock.systemUTC());
+    }
+
+    @Test
+    void v14PartitionsTheTableAndKeepsExistingRows() {
+        assertThat(partitionManager.isPartitioned()).isTrue();
+        assertThat(partitions()).contains("messages_default", partitionName(currentMonth.minusMonths(2)),
+                partitionName(currentMonth), partitionName(currentMonth.plusMonths(3)));
+        assertThat(jdbcTemplate.queryForObject("SELECT content FROM messages WHERE id = ?", String.class,
+                oldMessageId)).isEqualTo("sent in " + currentMonth.minusMonths(2));
+    }
+
+    @Test
+    void entityMapping_leavesClientIdUniquenessToThePartitionIndexes() {
+        // ddl-auto cannot add a table-wide unique constraint without the partition key
+        assertThat(Message.class.getAnnotation(Table.class).uniqueConstraints()).isEmpty();
+        assertThat(uniqueIndexes(partitionName(currentMonth))).contains(partitionName(currentMonth) + "_sender_client_uk");
+    }
+
+    @Test
+    void jpaWritesAndKeysetReadsWorkOnThePartitionedTable() {
+        Message first = messageRepository.saveAndFlush(message("first"));
+        Message second = messageRepository.saveAndFlush(message("second"));
+
+        List<Message> afterOld = messageRepository.findByChatIdAfter(chat.getId(),
+                currentMonth.minusMonths(2).atDay(15).atStartOfDay().atOffset(ZoneOffset.UTC), oldMessageId,
+                PageRequest.of(0, 10));
+
+        assertThat(afterOld).extracting(Message::getId).containsExactlyInAnyOrder(first.getId(), second.getId());
+    }
+
+    @Test
+    void ensureUpcomingPartitions_createsMissingMonthsWithTheirUniqueIndex() {
+        MessagePartitionManager furtherAhead = new MessagePartitionManager(jdbcTemplate,
+                new ClusterJobLock(dataSource, true, new SimpleMeterRegistry()), 5, Clock.systemUTC());
+
+        furtherAhead.ensureUpcomingPartitions();
+        furtherAhead.ensureUpcomingPartitions();
+
+        String farthest = partitionName(currentMonth.plusMonths(5));
+        assertThat(partitions()).contains(partitionName(currentMonth.plusMonths(4)), farthest);
+        assertThat(uniqueIndexes(farthest)).contains(farthest + "_sender_client_uk");
+    }
+
+    @Test
+    void expiredPartitionsAreDroppedWholeAndNewerMonthsKept() {
+        OffsetDateTime cutoff = currentMonth.minusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+
+        List<String> expired = partitionManager.expiredPartitions(cutoff);
+        expired.forEach(partitionManager::dropPartition);
+
+        assertThat(expired).containsExactly(partitionName(currentMonth.minusMonths(2)));
+        assertThat(partitions()).doesNotContain(expired.get(0)).contains(partitionName(currentMonth));
+        assertThat(tableExists(expired.get(0))).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages WHERE id = ?", Long.class,
+                oldMessageId)).isZero();
+    }
+
+    @Test
+    void dropPartition_detachesBeforeDroppingAndRestoresTheLockTimeout() {
+        String expired = partitionName(currentMonth.minusMonths(2));
+        String lockTimeout = jdbcTemplate.queryForObject("SHOW lock_timeout", String.class);
+
+        assertThat(partitionManager.dropPartition(expired)).isTrue();
+
+        assertThat(tableExists(expired)).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SHOW lock_timeout", String.class)).isEqualTo(lockTimeout);
+        // The parent is still usable for the months that remain
+        messageRepository.saveAndFlush(message("after the drop"));
+    }
+
+    @Test
+    void monthLeftDetachedByAnInterruptedRunIsStillExpiredAndDropped() {
+        String expired = partitionName(currentMonth.minusMonths(2));
+        jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + expired);
+        OffsetDateTime cutoff = currentMonth.minusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+
+        assertThat(partitionManager.expiredPartitions(cutoff)).containsExactly(expired);
+        assertThat(partitionManager.dropPartition(expired)).isTrue();
+
+        assertThat(tableExists(expired)).isFalse();
+    }
+
+    @Test
+    void clientMessageIdIsUniquePerMonthOnly() {
+        UUID clientMessageId = UUID.randomUUID();
+        UUID earlier = insertMessage(clientMessageId, currentMonth.minusMonths(1));
+        insertMessage(clientMessageId, currentMonth);
+
+        assertThat(messageRepository.findFirstByChatIdAndSenderIdAndClientMessageIdOrderByCreatedAtAsc(
+                chat.getId(), buyer.getId(), clientMessageId)).get().extracting(Message::getId).isEqualTo(earlier);
+        // Last: the failed insert aborts the test transaction
+        assertThatThrownBy(() -> insertMessage(clientMessageId, currentMonth))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setName("Test User");
+        return user;
+    }
+
+    private Message message(String content) {
+        Message message = new Message();
+        message.setChat(chat);
+        message.setSender(buyer);
+        message.setContent(content);
+        return message;
+    }
+
+    private UUID insertMessage(UUID clientMessageId, YearMonth month) {
+        UUID id = UUID.randomUUID();
+        OffsetDateTime createdAt = month.atDay(15).atStartOfDay().atOffset(ZoneOffset.UTC);
+        jdbcTemplate.update("INSERT INTO messages (id, chat_id, sender_id, client_message_id, content, created_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", id, chat.getId(), buyer.getId(), clientMessageId, "sent in " + month,
+                createdAt);
+        return id;
+    }
+
+    private void runMigration(String file) throws IOException {
+        jdbcTemplate.execute(new ClassPathResource("db/migration/" + file)
+                .getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                + "WHERE p.relname = 'messages'", String.class);
+    }
+
+    private boolean tableExists(String table) {
+        return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+    }
+
+    private List<String> uniqueIndexes(String table) {
+        return jdbcTemplate.queryForList("SELECT indexname FROM pg_indexes WHERE tablename = ? "
+                + "AND indexdef LIKE 'CREATE UNIQUE INDEX%'", String.class, table);
+    }
+
+    private static String partitionName(YearMonth month) {
+        return String.format("messages_y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+}
@@ -0,0 +1,103 @@
+package edu.umass.marketplace.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import edu.umass.marketplace.common.websocket.PostgresStompFanout;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Two fan-out "nodes" sharing one Postgres: a send on one must reach the other's local broker.
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresStompFanoutIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("umarket_test")
+            .withUsername("umarket_test")
+            .withPassword("umarket_test");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private SimpMessagingTemplate brokerA;
+    private SimpMessagingTemplate brokerB;
+    private PostgresStompFanout nodeA;
+    private PostgresStompFanout nodeB;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        brokerA = mock(SimpMessagingTemplate.class);
+        brokerB = mock(SimpMessagingTemplate.class);
+        nodeA = node(brokerA);
+        nodeB = node(brokerB);
+        nodeA.start();
+        nodeB.start();
+        waitUntilListening();
+    }
+
+    private void waitUntilListening() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!(nodeA.isListening() && nodeB.isListening())) {
+            assertThat(System.currentTimeMillis()).as("LISTEN connections established").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    private PostgresStompFanout node(SimpMessagingTemplate broker) {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(postgres.getJdbcUrl());
+        properties.setUsername(postgres.getUsername());
+        properties.setPassword(postgres.getPassword());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+        return new PostgresStompFanout(broker, jdbcTemplate, objectMapper, properties, new SimpleMeterRegistry(),
+                "stomp_fanout_test", 10000);
+    }
+
+    @Test
+    void topicMessageReachesOtherNodeButIsNotEchoedBack() {
+        Map<String, Object> payload = Map.of("content", "Is the desk still available?");
+
+        nodeA.sendToTopic("/topic/chat/abc", payload);
+
+        verify(brokerA).convertAndSend("/topic/chat/abc", payload);
+        ArgumentCaptor<Object> relayed = ArgumentCaptor.forClass(Object.class);
+        verify(brokerB, timeout(5000)).convertAndSend(eq("/topic/chat/abc"), relayed.capture());
+        assertThat(((JsonNode) relayed.getValue()).get("content").asText()).isEqualTo("Is the desk still available?");
+        verify(brokerA, after(500).times(1)).convertAndSend(any(String.class), any(Object.class));
+    }
+
+    @Test
+    void userMessageLargerThanNotifyLimitTravelsThroughOverflowTable() {
+        String longText = "x".repeat(20_000);
+
+        nodeB.sendToUser("buyer@umass.edu", "/queue/inbox", Map.of("preview", longText));
+
+        ArgumentCaptor<Object> relayed = ArgumentCaptor.forClass(Object.class);
+        verify(brokerA, timeout(5000)).convertAndSendToUser(eq("buyer@umass.edu"), eq("/queue/inbox"), relayed.capture());
+        assertThat(((JsonNode) relayed.getValue()).get("preview").asText()).hasSize(20_000);
+    }
+}
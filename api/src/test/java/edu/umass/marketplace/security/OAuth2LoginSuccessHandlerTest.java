@@ -41,7 +41,7 @@ class OAuth2LoginSuccessHandlerTest {
         when(oidcUser.getAttributes()).thenReturn(Map.of("email", "alice@umass.edu", "name", "Alice"));
         when(auth.getPrincipal()).thenReturn(oidcUser);
 
-        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("alice@umass.edu"), eq("Alice"))).thenReturn("fixed-token");
+        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("alice@umass.edu"), eq("Alice"), any())).thenReturn("fixed-token");
 
         HttpServletRequest req = mock(HttpServletRequest.class);
         HttpServletResponse resp = mock(HttpServletResponse.class);
@@ -91,7 +91,7 @@ class OAuth2LoginSuccessHandlerTest {
         authoritiesWithAdmin.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
         doReturn(authoritiesWithAdmin).when(auth).getAuthorities();
 
-        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("test-superuser@umass.edu"), eq("Test Superuser"))).thenReturn("fixed-token");
+        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("test-superuser@umass.edu"), eq("Test Superuser"), any())).thenReturn("fixed-token");
 
         HttpServletRequest req = mock(HttpServletRequest.class);
         HttpServletResponse resp = mock(HttpServletResponse.class);
@@ -118,7 +118,7 @@ class OAuth2LoginSuccessHandlerTest {
         userOnly.add(new SimpleGrantedAuthority("ROLE_USER"));
         doReturn(userOnly).when(auth).getAuthorities();
 
-        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("test-superuser@umass.edu"), eq("Test Superuser"))).thenReturn("fixed-token");
+        when(jwtUtil.generateToken(any(java.util.UUID.class), eq("test-superuser@umass.edu"), eq("Test Superuser"), any())).thenReturn("fixed-token");
 
         HttpServletRequest req = mock(HttpServletRequest.class);
         HttpServletResponse resp = mock(HttpServletResponse.class);
@@ -71,7 +71,7 @@ class AuthServiceTest {
         // Given
         when(userService.userExistsByEmail("test@umass.edu")).thenReturn(false);
         when(userService.createUser(any(RegisterRequest.class))).thenReturn(testUser);
-        when(jwtUtil.generateToken(any(), anyString(), anyString())).thenReturn("mock-token");
+        when(jwtUtil.generateToken(any(), anyString(), anyString(), any())).thenReturn("mock-token");
 
         // When
         AuthResponse result = authService.register(registerRequest);
@@ -101,7 +101,7 @@ class AuthServiceTest {
         when(userService.getUserByEmail("test@umass.edu"))
                 .thenReturn(Optional.of(testUser));
         when(passwordEncoder.matches("password123", "$2a$10$hashedpassword")).thenReturn(true);
-        when(jwtUtil.generateToken(any(), anyString(), anyString())).thenReturn("mock-token");
+        when(jwtUtil.generateToken(any(), anyString(), anyString(), any())).thenReturn("mock-token");
 
         // When
         AuthResponse result = authService.login(loginRequest);
@@ -155,7 +155,7 @@ class AuthServiceTest {
 
         when(userService.getUserByEmail("ssbhatti@umass.edu")).thenReturn(Optional.of(shivraj));
         when(passwordEncoder.matches("password123", "$2a$10$hashedpassword")).thenReturn(true);
-        when(jwtUtil.generateToken(any(), anyString(), anyString())).thenReturn("mock-token");
+        when(jwtUtil.generateToken(any(), anyString(), anyString(), any())).thenReturn("mock-token");
 
         AuthResponse result = authService.login(ssbLogin);
 
@@ -171,7 +171,7 @@ class AuthServiceTest {
     void nonSuperuserGetsSuperuserFalseOnLogin() {
         when(userService.getUserByEmail("test@umass.edu")).thenReturn(Optional.of(testUser));
         when(passwordEncoder.matches("password123", "$2a$10$hashedpassword")).thenReturn(true);
-        when(jwtUtil.generateToken(any(), anyString(), anyString())).thenReturn("mock-token");
+        when(jwtUtil.generateToken(any(), anyString(), anyString(), any())).thenReturn("mock-token");
 
         AuthResponse result = authService.login(loginRequest);
 
@@ -196,7 +196,7 @@ class AuthServiceTest {
 
         when(userService.getUserByEmail("test-superuser@umass.edu")).thenReturn(Optional.of(dummySuperuser));
         when(passwordEncoder.matches("password123", "$2a$10$hashedpassword")).thenReturn(true);
-        when(jwtUtil.generateToken(any(), anyString(), anyString())).thenReturn("mock-token");
+        when(jwtUtil.generateToken(any(), anyString(), anyString(), any())).thenReturn("mock-token");
 
         AuthResponse result = authService.login(login);
 
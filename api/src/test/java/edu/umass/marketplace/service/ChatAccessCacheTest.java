@@ -0,0 +1,113 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatAccessCacheTest {
+
+    @Mock
+    private ChatRepository chatRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChatAccessCache chatAccessCache;
+
+    private final UUID chatId = UUID.randomUUID();
+    private final UUID buyerId = UUID.randomUUID();
+    private final UUID sellerId = UUID.randomUUID();
+    private final UUID strangerId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        chatAccessCache = new ChatAccessCache(chatRepository, meterRegistry, 1000,
+                Duration.ofMinutes(10), Duration.ofSeconds(30));
+    }
+
+    @Test
+    void isParticipant_queriesDatabaseOnceForRepeatedChecks() {
+        when(chatRepository.existsByIdAndParticipant(chatId, buyerId)).thenReturn(true);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isTrue();
+        }
+
+        verify(chatRepository, times(1)).existsByIdAndParticipant(chatId, buyerId);
+        assertThat(meterRegistry.get("chat.access.hit.ratio").gauge().value()).isEqualTo(0.8);
+    }
+
+    @Test
+    void isParticipant_countsRejectionsServedFromCache() {
+        when(chatRepository.existsByIdAndParticipant(chatId, strangerId)).thenReturn(false);
+
+        assertThat(chatAccessCache.isParticipant(chatId, strangerId)).isFalse();
+        assertThat(chatAccessCache.isParticipant(chatId, strangerId)).isFalse();
+        assertThat(chatAccessCache.isParticipant(chatId, strangerId)).isFalse();
+
+        assertThat(meterRegistry.get("chat.access.rejections").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("chat.access.rejections.cached").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void grant_replacesCachedRejectionWithoutDatabase() {
+        when(chatRepository.existsByIdAndParticipant(chatId, buyerId)).thenReturn(false);
+        assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isFalse();
+
+        chatAccessCache.grant(chatId, buyerId, sellerId);
+
+        assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isTrue();
+        assertThat(chatAccessCache.isParticipant(chatId, sellerId)).isTrue();
+        verify(chatRepository, times(1)).existsByIdAndParticipant(any(), any());
+    }
+
+    @Test
+    void grant_inTransactionWaitsForCommit() {
+        when(chatRepository.existsByIdAndParticipant(chatId, buyerId)).thenReturn(false);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            chatAccessCache.grant(chatId, buyerId, sellerId);
+            // Rolled back: the synchronizations are dropped without afterCommit
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isFalse();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            chatAccessCache.grant(chatId, buyerId, sellerId);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isTrue();
+    }
+
+    @Test
+    void invalidateChats_forcesFreshLookup() {
+        chatAccessCache.grant(chatId, buyerId, sellerId);
+        when(chatRepository.existsByIdAndParticipant(chatId, buyerId)).thenReturn(false);
+
+        chatAccessCache.invalidateChats(List.of(chatId));
+
+        assertThat(chatAccessCache.isParticipant(chatId, buyerId)).isFalse();
+        verify(chatRepository).existsByIdAndParticipant(chatId, buyerId);
+    }
+}
@@ -0,0 +1,132 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.service.ChatActorExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatActorExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChatActorExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new ChatActorExecutor(meterRegistry, 8, 4);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    void tasksForOneChatRunInSubmissionOrder() throws InterruptedException {
+        UUID chatId = UUID.randomUUID();
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+
+        ChatActorExecutor roomy = new ChatActorExecutor(new SimpleMeterRegistry(), 8, 1000);
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            assertThat(roomy.execute(chatId, () -> {
+                seen.add(n);
+                done.countDown();
+            })).isTrue();
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(seen).containsExactlyElementsOf(IntStream.range(0, 1000).boxed().toList());
+        roomy.shutdown();
+    }
+
+    @Test
+    void slowChatDoesNotBlockChatsOnOtherStripes() throws InterruptedException {
+        UUID slowChat = UUID.randomUUID();
+        UUID otherChat = otherStripeThan(slowChat);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherRan = new CountDownLatch(1);
+
+        executor.execute(slowChat, () -> awaitQuietly(release));
+        executor.execute(slowChat, () -> { });
+        executor.execute(otherChat, otherRan::countDown);
+
+        assertThat(otherRan.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.queueDepth(slowChat)).isEqualTo(2);
+        assertThat(meterRegistry.get("chat.actor.queue.depth").gauges()).hasSize(8);
+        release.countDown();
+    }
+
+    @Test
+    void failingTaskDoesNotStallTheStripe() throws InterruptedException {
+        UUID chatId = UUID.randomUUID();
+        CountDownLatch next = new CountDownLatch(1);
+
+        executor.execute(chatId, () -> { throw new IllegalStateException("boom"); });
+        executor.execute(chatId, next::countDown);
+
+        assertThat(next.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void fullStripeRejectsNewTasks() throws InterruptedException {
+        UUID chatId = UUID.randomUUID();
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertThat(executor.execute(chatId, () -> awaitQuietly(release))).isTrue();
+        for (int i = 0; i < 3; i++) {
+            assertThat(executor.execute(chatId, () -> { })).isTrue();
+        }
+        boolean overflow = executor.execute(chatId, () -> { });
+
+        assertThat(overflow).isFalse();
+        assertThat(executor.queueDepth(chatId)).isEqualTo(4);
+        assertThat(meterRegistry.get("chat.actor.rejected").counter().count()).isEqualTo(1.0);
+        release.countDown();
+    }
+
+    @Test
+    void failingTaskIsReportedToItsHandler() throws InterruptedException {
+        UUID chatId = UUID.randomUUID();
+        AtomicReference<Exception> reported = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(chatId, () -> { throw new IllegalArgumentException("bad"); }, ex -> {
+            reported.set(ex);
+            done.countDown();
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(reported.get()).isInstanceOf(IllegalArgumentException.class).hasMessage("bad");
+    }
+
+    private UUID otherStripeThan(UUID chatId) {
+        while (true) {
+            UUID candidate = UUID.randomUUID();
+            if (Math.floorMod(candidate.hashCode(), 8) != Math.floorMod(chatId.hashCode(), 8)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
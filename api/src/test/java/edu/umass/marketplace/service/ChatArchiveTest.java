@@ -0,0 +1,111 @@
+package edu.umass.marketplace.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.umass.marketplace.common.storage.FileSystemObjectStorage;
+import edu.umass.marketplace.common.storage.ObjectStorage;
+import edu.umass.marketplace.marketplace.dto.ArchivedChatDTO;
+import edu.umass.marketplace.marketplace.dto.SyncMessageDTO;
+import edu.umass.marketplace.marketplace.service.ChatArchive;
+import edu.umass.marketplace.marketplace.service.ChatArchive.ArchivedMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ChatArchiveTest {
+
+    @TempDir
+    Path root;
+
+    private FileSystemObjectStorage storage;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatArchive archive;
+
+    private final UUID chatA = UUID.randomUUID();
+    private final UUID chatB = UUID.randomUUID();
+    private final UUID buyer = UUID.randomUUID();
+    private final UUID seller = UUID.randomUUID();
+    private final OffsetDateTime start = OffsetDateTime.parse("2024-01-10T12:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        storage = new FileSystemObjectStorage(root);
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        archive = new ChatArchive(storage, objectMapper, meterRegistry, true, "chat-archive");
+    }
+
+    private ArchivedMessage message(UUID chatId, int minute, String content) {
+        return new ArchivedMessage(UUID.randomUUID(), chatId, minute % 2 == 0 ? buyer : seller, null, null, content,
+                start.plusMinutes(minute), null, buyer, seller, start.minusDays(1));
+    }
+
+    @Test
+    void writesOneCompressedSegmentPerChat() throws Exception {
+        archive.write(List.of(message(chatA, 1, "a1"), message(chatB, 2, "b1"), message(chatA, 3, "a2")));
+
+        List<String> keys = storage.list("chat-archive/");
+        assertThat(keys).hasSize(2);
+        String segmentA = storage.list("chat-archive/" + chatA + "/").get(0);
+        byte[] raw = Files.readAllBytes(root.resolve(segmentA));
+        String text = new String(new GZIPInputStream(new ByteArrayInputStream(raw)).readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(text.lines()).hasSize(3);
+        assertThat(text.lines().findFirst().orElseThrow()).contains("\"buyerId\":\"" + buyer + "\"");
+        assertThat(meterRegistry.get("chat.archive.segments").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("chat.archive.messages").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void loadMergesSegmentsInOrderAndDropsDuplicates() {
+        ArchivedMessage first = message(chatA, 1, "first");
+        ArchivedMessage second = message(chatA, 2, "second");
+        ArchivedMessage third = message(chatA, 3, "third");
+        archive.write(List.of(second, first));
+        // A retried batch archives second again alongside a newer message
+        archive.write(List.of(third, second));
+
+        ArchivedChatDTO chat = archive.load(chatA, seller).orElseThrow();
+
+        assertThat(chat.getBuyerId()).isEqualTo(buyer);
+        assertThat(chat.getSellerId()).isEqualTo(seller);
+        assertThat(chat.getMessages()).extracting(SyncMessageDTO::getContent)
+                .containsExactly("first", "second", "third");
+        assertThat(chat.getMessages().get(0).getCreatedAt().toInstant()).isEqualTo(first.createdAt().toInstant());
+    }
+
+    @Test
+    void loadOfUnarchivedChatIsEmpty() {
+        archive.write(List.of(message(chatA, 1, "a1")));
+
+        assertThat(archive.load(chatB, buyer)).isEmpty();
+    }
+
+    @Test
+    void loadForNonParticipantIsEmptyAfterReadingOnlyTheFirstSegment() {
+        archive.write(List.of(message(chatA, 1, "a1")));
+        archive.write(List.of(message(chatA, 2, "a2")));
+        ObjectStorage spied = spy(storage);
+        ChatArchive guarded = new ChatArchive(spied, new ObjectMapper().findAndRegisterModules(), meterRegistry, true,
+                "chat-archive");
+
+        assertThat(guarded.load(chatA, UUID.randomUUID())).isEmpty();
+        verify(spied, times(1)).get(anyString());
+    }
+}
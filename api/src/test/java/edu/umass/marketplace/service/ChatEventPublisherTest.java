@@ -0,0 +1,113 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.ChatEventDTO;
+import edu.umass.marketplace.marketplace.dto.InboxUpdateDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ChatEventPublisherTest {
+
+    @Mock
+    private StompFanout stompFanout;
+
+    @InjectMocks
+    private ChatEventPublisher chatEventPublisher;
+
+    private UserDto buyer;
+    private UserDto seller;
+    private MessageDTO message;
+
+    @BeforeEach
+    void setUp() {
+        buyer = UserDto.builder().id(UUID.randomUUID()).email("buyer@umass.edu").name("Buyer").build();
+        seller = UserDto.builder().id(UUID.randomUUID()).email("seller@umass.edu").name("Seller").build();
+
+        message = new MessageDTO();
+        message.setId(UUID.randomUUID());
+        message.setChatId(UUID.randomUUID());
+        message.setSender(buyer);
+        message.setContent("Is the desk still available?");
+        message.setCreatedAt(OffsetDateTime.now());
+    }
+
+    @Test
+    void publish_broadcastsToChatTopic() {
+        chatEventPublisher.publish(new MessageDelivery(message, buyer, seller));
+
+        verify(stompFanout).sendToTopic("/topic/chat/" + message.getChatId(), message);
+    }
+
+    @Test
+    void publish_sendsMessageToBothParticipantsChatEventStreams() {
+        chatEventPublisher.publish(new MessageDelivery(message, buyer, seller));
+
+        ArgumentCaptor<ChatEventDTO> toBuyer = ArgumentCaptor.forClass(ChatEventDTO.class);
+        ArgumentCaptor<ChatEventDTO> toSeller = ArgumentCaptor.forClass(ChatEventDTO.class);
+        verify(stompFanout).sendToUser(eq("buyer@umass.edu"), eq(ChatEventPublisher.CHAT_EVENTS_DESTINATION), toBuyer.capture());
+        verify(stompFanout).sendToUser(eq("seller@umass.edu"), eq(ChatEventPublisher.CHAT_EVENTS_DESTINATION), toSeller.capture());
+
+        assertThat(toSeller.getValue().getType()).isEqualTo(ChatEventDTO.Type.MESSAGE);
+        assertThat(toSeller.getValue().getChatId()).isEqualTo(message.getChatId());
+        assertThat(toSeller.getValue().getMessage()).isSameAs(message);
+        assertThat(toBuyer.getValue()).isEqualTo(toSeller.getValue());
+    }
+
+    @Test
+    void publish_skipsChatTopicWhenTopicBroadcastDisabled() {
+        ReflectionTestUtils.setField(chatEventPublisher, "topicBroadcast", false);
+
+        chatEventPublisher.publish(new MessageDelivery(message, buyer, seller));
+
+        verify(stompFanout, never()).sendToTopic(anyString(), any());
+        verify(stompFanout).sendToUser(eq("seller@umass.edu"), eq(ChatEventPublisher.CHAT_EVENTS_DESTINATION), any());
+    }
+
+    @Test
+    void publish_sendsInboxDeltaToBothParticipants_unreadOnlyForRecipient() {
+        chatEventPublisher.publish(new MessageDelivery(message, buyer, seller));
+
+        ArgumentCaptor<InboxUpdateDTO> toBuyer = ArgumentCaptor.forClass(InboxUpdateDTO.class);
+        ArgumentCaptor<InboxUpdateDTO> toSeller = ArgumentCaptor.forClass(InboxUpdateDTO.class);
+        verify(stompFanout).sendToUser(eq("buyer@umass.edu"), eq(ChatEventPublisher.INBOX_DESTINATION), toBuyer.capture());
+        verify(stompFanout).sendToUser(eq("seller@umass.edu"), eq(ChatEventPublisher.INBOX_DESTINATION), toSeller.capture());
+
+        assertThat(toBuyer.getValue().isUnread()).isFalse();
+        assertThat(toSeller.getValue().isUnread()).isTrue();
+        assertThat(toSeller.getValue().getChatId()).isEqualTo(message.getChatId());
+        assertThat(toSeller.getValue().getMessageId()).isEqualTo(message.getId());
+        assertThat(toSeller.getValue().getPreview()).isEqualTo("Is the desk still available?");
+    }
+
+    @Test
+    void publish_truncatesLongPreviews() {
+        message.setContent("a".repeat(500));
+
+        chatEventPublisher.publish(new MessageDelivery(message, buyer, seller));
+
+        ArgumentCaptor<InboxUpdateDTO> toSeller = ArgumentCaptor.forClass(InboxUpdateDTO.class);
+        verify(stompFanout).sendToUser(eq("seller@umass.edu"), eq(ChatEventPublisher.INBOX_DESTINATION), toSeller.capture());
+        assertThat(toSeller.getValue().getPreview()).hasSize(80).endsWith("…");
+    }
+}
@@ -0,0 +1,305 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatArchive;
+import edu.umass.marketplace.marketplace.service.ChatArchive.ArchivedMessage;
+import edu.umass.marketplace.marketplace.service.ChatRetentionService;
+import edu.umass.marketplace.marketplace.service.MessagePartitionManager;
+import edu.umass.marketplace.marketplace.service.MessageWriteBehind;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import edu.umass.marketplace.marketplace.service.RetentionSchedule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatRetentionServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private MessagePartitionManager partitions;
+    @Mock
+    private ChatArchive archive;
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private MessageWriteBehind messageWriteBehind;
+    @Mock
+    private RecentMessageBuffer recentMessages;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChatRetentionService service;
+
+    private final UUID chatA = UUID.randomUUID();
+    private final UUID chatB = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new ChatRetentionService(jdbcTemplate, partitions, archive, chatAccessCache, messageWriteBehind, recentMessages,
+                new RetentionSchedule("nightly", 5000, Duration.ofSeconds(20)),
+                new ClusterJobLock(null, false, meterRegistry), meterRegistry, 90, 2, 10, Duration.ZERO);
+    }
+
+    private void messageBatches(List<UUID> first, List<UUID> second) {
+        when(jdbcTemplate.queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")), eq(UUID.class), any(), eq(2)))
+                .thenReturn(first, second);
+    }
+
+    private void orphanCandidates(List<UUID> first, List<UUID> second) {
+        when(jdbcTemplate.queryForList(argThat(sql -> sql.contains("NOT EXISTS") && sql.startsWith("SELECT")),
+                eq(UUID.class), any(), any(), eq(2)))
+                .thenReturn(first, second);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void orphanDeletesReturn(List<UUID> first, List<UUID> second) {
+        when(jdbcTemplate.query(argThat((String sql) -> sql.startsWith("DELETE FROM chats")),
+                any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenReturn(first, second);
+    }
+
+    @Test
+    void deletesExpiredMessagesInBatchesUntilAShortBatch() {
+        messageBatches(List.of(chatA, chatA), List.of(chatB));
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        verify(jdbcTemplate, times(2)).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")),
+                eq(UUID.class), any(), eq(2));
+        verify(recentMessages).invalidateChats(Set.of(chatA));
+        verify(recentMessages).invalidateChats(Set.of(chatB));
+        verify(recentMessages, never()).invalidateAll();
+        assertThat(meterRegistry.get("chat.retention.messages.deleted").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void flushesWriteBehindBeforeLookingForOrphans() {
+        messageBatches(List.of(), List.of());
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        InOrder inOrder = inOrder(messageWriteBehind, jdbcTemplate);
+        inOrder.verify(messageWriteBehind).flushNow();
+        inOrder.verify(jdbcTemplate).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")),
+                eq(UUID.class), any(), eq(2));
+    }
+
+    @Test
+    void orphanChatsAreScannedByKeysetAndOnlyConfirmedDeletesInvalidateCaches() {
+        UUID chatC = UUID.randomUUID();
+        messageBatches(List.of(), List.of());
+        orphanCandidates(List.of(chatA, chatB), List.of(chatC));
+        // chatB received a message between the scan and the delete
+        orphanDeletesReturn(List.of(chatA), List.of(chatC));
+
+        service.purgeOldChatsAndMessages();
+
+        verify(jdbcTemplate).queryForList(anyString(), eq(UUID.class), eq(new UUID(0, 0)), any(), eq(2));
+        verify(jdbcTemplate).queryForList(anyString(), eq(UUID.class), eq(chatB), any(), eq(2));
+        verify(chatAccessCache).invalidateChats(Set.of(chatA));
+        verify(chatAccessCache).invalidateChats(Set.of(chatC));
+        verify(messageWriteBehind).invalidateChats(Set.of(chatA));
+        verify(chatAccessCache, never()).invalidateChats(argThat(ids -> ids.contains(chatB)));
+        assertThat(meterRegistry.get("chat.retention.chats.deleted").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void stopsAfterMaxBatchesPerRun() {
+        service = new ChatRetentionService(jdbcTemplate, partitions, archive, chatAccessCache, messageWriteBehind, recentMessages,
+                new RetentionSchedule("nightly", 5000, Duration.ofSeconds(20)),
+                new ClusterJobLock(null, false, meterRegistry), meterRegistry, 90, 2, 3, Duration.ZERO);
+        when(jdbcTemplate.queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")), eq(UUID.class), any(), eq(2)))
+                .thenReturn(List.of(chatA, chatB));
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        verify(jdbcTemplate, times(3)).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")),
+                eq(UUID.class), any(), eq(2));
+    }
+
+    @Test
+    void partitionedTableDropsExpiredMonthsAndPurgesOnlyDefaultPartition() {
+        when(partitions.isPartitioned()).thenReturn(true);
+        when(partitions.expiredPartitions(any())).thenReturn(List.of("messages_y2024m01"));
+        when(partitions.dropPartition(any())).thenReturn(true);
+        when(jdbcTemplate.queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages_default ")),
+                eq(UUID.class), any(), eq(2)))
+                .thenReturn(List.of(chatA));
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        verify(partitions).dropPartition("messages_y2024m01");
+        verify(recentMessages).invalidateAll();
+        verify(jdbcTemplate, never()).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")),
+                eq(UUID.class), any(), any());
+        assertThat(meterRegistry.get("chat.retention.messages.deleted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void continuousTickSharesOneRowBudgetAcrossBothPhases() {
+        service = new ChatRetentionService(jdbcTemplate, partitions, archive, chatAccessCache, messageWriteBehind, recentMessages,
+                new RetentionSchedule("continuous", 3, Duration.ofMinutes(1)),
+                new ClusterJobLock(null, false, meterRegistry), meterRegistry, 90, 2, 10, Duration.ZERO);
+        when(jdbcTemplate.queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")), eq(UUID.class), any(), anyInt()))
+                .thenReturn(List.of(chatA, chatB), List.of(chatA));
+
+        service.purgeOldChatsAndMessages();
+        verifyNoInteractions(jdbcTemplate);
+
+        service.purgeIncrementally();
+
+        // 2 + 1 rows use up the budget of 3: the second batch asks for one row and no orphan scan runs
+        verify(jdbcTemplate).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")), eq(UUID.class), any(), eq(2));
+        verify(jdbcTemplate).queryForList(argThat(sql -> sql.startsWith("DELETE FROM messages ")), eq(UUID.class), any(), eq(1));
+        verify(jdbcTemplate, never()).queryForList(argThat(sql -> sql.contains("NOT EXISTS")), eq(UUID.class), any(), any(), anyInt());
+        assertThat(meterRegistry.get("chat.retention.messages.deleted").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("chat.retention.run").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void lagGaugeReportsHowFarTheOldestMessageIsPastTheCutoff() {
+        messageBatches(List.of(), List.of());
+        orphanCandidates(List.of(), List.of());
+        when(jdbcTemplate.queryForObject("SELECT MIN(created_at) FROM messages", OffsetDateTime.class))
+                .thenReturn(OffsetDateTime.now().minusDays(92));
+
+        service.purgeOldChatsAndMessages();
+
+        assertThat(meterRegistry.get("chat.retention.lag").gauge().value())
+                .isBetween((double) Duration.ofDays(2).minusMinutes(1).toSeconds(), (double) Duration.ofDays(2).toSeconds());
+    }
+
+    private ArchivedMessage archived(UUID chatId) {
+        return new ArchivedMessage(UUID.randomUUID(), chatId, UUID.randomUUID(), null, null, "hi",
+                OffsetDateTime.now().minusDays(100), null, UUID.randomUUID(), UUID.randomUUID(),
+                OffsetDateTime.now().minusDays(120));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expiredRowsForArchive(List<ArchivedMessage> rows) {
+        when(jdbcTemplate.query(argThat((String sql) -> sql.startsWith("SELECT m.id")), any(RowMapper.class), any(), eq(2)))
+                .thenReturn(rows);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void archivesExpiredMessagesBeforeDeletingThemById() {
+        when(archive.isEnabled()).thenReturn(true);
+        expiredRowsForArchive(List.of(archived(chatA)));
+        when(jdbcTemplate.query(argThat((String sql) -> sql.startsWith("DELETE FROM messages WHERE id = ANY")),
+                any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenReturn(List.of(chatA));
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        InOrder inOrder = inOrder(archive, jdbcTemplate);
+        inOrder.verify(archive).write(argThat(rows -> rows.size() == 1));
+        inOrder.verify(jdbcTemplate).query(argThat((String sql) -> sql.startsWith("DELETE FROM messages WHERE id = ANY")),
+                any(PreparedStatementSetter.class), any(RowMapper.class));
+        verify(recentMessages).invalidateChats(Set.of(chatA));
+        assertThat(meterRegistry.get("chat.retention.messages.deleted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedArchiveWriteKeepsTheMessages() {
+        when(archive.isEnabled()).thenReturn(true);
+        expiredRowsForArchive(List.of(archived(chatA), archived(chatB)));
+        doThrow(new IllegalStateException("storage down")).when(archive).write(any());
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        verify(jdbcTemplate, never()).query(argThat((String sql) -> sql.startsWith("DELETE FROM messages")),
+                any(PreparedStatementSetter.class), any(RowMapper.class));
+        assertThat(meterRegistry.get("chat.retention.messages.deleted").counter().count()).isZero();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void partitionPages(String partition, List<ArchivedMessage> first, List<ArchivedMessage> second) {
+        when(jdbcTemplate.query(argThat((String sql) -> sql != null && sql.contains("FROM " + partition + " m")), any(RowMapper.class),
+                any(), any(), any(), any(), anyInt()))
+                .thenReturn(first, second);
+    }
+
+    @Test
+    void expiredPartitionIsDroppedOnlyAfterItIsArchived() {
+        when(archive.isEnabled()).thenReturn(true);
+        when(partitions.isPartitioned()).thenReturn(true);
+        when(partitions.expiredPartitions(any())).thenReturn(List.of("messages_y2024m01", "messages_y2024m02"));
+        when(partitions.dropPartition(any())).thenReturn(true);
+        // One short page per partition
+        partitionPages("messages_y2024m01", List.of(archived(chatA)), List.of());
+        partitionPages("messages_y2024m02", List.of(archived(chatB)), List.of());
+        // The second month cannot be archived
+        doNothing().doThrow(new IllegalStateException("storage down")).when(archive).write(any());
+        expiredRowsForArchive(List.of());
+        orphanCandidates(List.of(), List.of());
+
+        service.purgeOldChatsAndMessages();
+
+        verify(partitions).dropPartition("messages_y2024m01");
+        verify(partitions, never()).dropPartition("messages_y2024m02");
+        verify(recentMessages).invalidateAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void largePartitionIsArchivedInPagesWithinTheBudgetAndResumedNextRun() {
+        service = new ChatRetentionService(jdbcTemplate, partitions, archive, chatAccessCache, messageWriteBehind, recentMessages,
+                new RetentionSchedule("continuous", 3, Duration.ofMinutes(1)),
+                new ClusterJobLock(null, false, meterRegistry), meterRegistry, 90, 2, 10, Duration.ZERO);
+        when(archive.isEnabled()).thenReturn(true);
+        when(partitions.isPartitioned()).thenReturn(true);
+        when(partitions.expiredPartitions(any())).thenReturn(List.of("messages_y2024m01"));
+        when(partitions.dropPartition(any())).thenReturn(true);
+        ArchivedMessage a1 = archived(chatA);
+        ArchivedMessage a2 = archived(chatA);
+        ArchivedMessage b1 = archived(chatB);
+        ArchivedMessage b2 = archived(chatB);
+        partitionPages("messages_y2024m01", List.of(a1, a2), List.of(b1));
+        lenient().when(jdbcTemplate.query(argThat((String sql) -> sql != null && sql.contains("FROM messages_y2024m01 m")),
+                any(RowMapper.class), eq(b1.chatId()), eq(b1.chatId()), eq(b1.createdAt()), eq(b1.id()), anyInt()))
+                .thenReturn(List.of(b2));
+
+        // First tick: a page of 2 and a page of 1 use up the budget of 3 before the partition is done
+        service.purgeIncrementally();
+        verify(partitions, never()).dropPartition(any());
+        verify(jdbcTemplate).query(argThat((String sql) -> sql != null && sql.contains("FROM messages_y2024m01 m")), any(RowMapper.class),
+                eq(a2.chatId()), eq(a2.chatId()), eq(a2.createdAt()), eq(a2.id()), eq(1));
+
+        // Second tick continues after the last archived row and finishes the month
+        service.purgeIncrementally();
+        verify(archive, times(3)).write(any());
+        verify(archive).write(List.of(b2));
+        verify(partitions).dropPartition("messages_y2024m01");
+    }
+}
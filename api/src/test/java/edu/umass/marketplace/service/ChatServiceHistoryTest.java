@@ -0,0 +1,170 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.model.Chat;
+import edu.umass.marketplace.marketplace.model.Message;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.repository.MessageRepository;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory;
+import edu.umass.marketplace.marketplace.service.ChatService;
+import edu.umass.marketplace.marketplace.service.MessageDeduplicator;
+import edu.umass.marketplace.marketplace.service.MessageWriteBehind;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * History reads against a real write-behind journal and recent-message ring; the messages table is
+ * simulated by the rows the write-behind flusher inserts through JdbcTemplate.
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatServiceHistoryTest {
+
+    @TempDir
+    Path journalDir;
+
+    @Mock
+    private ChatRepository chatRepository;
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Message> table = new ArrayList<>();
+    private MessageWriteBehind writeBehind;
+    private Chat chat;
+    private User buyer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        buyer = user("buyer@umass.edu");
+        chat = new Chat();
+        chat.setId(UUID.randomUUID());
+        chat.setBuyer(buyer);
+        chat.setSeller(user("seller@umass.edu"));
+        when(chatRepository.findWithParticipantsById(chat.getId())).thenReturn(Optional.of(chat));
+        when(chatAccessCache.isParticipant(chat.getId(), buyer.getId())).thenReturn(true);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            rows.forEach(row -> table.add(row(row)));
+            return new int[rows.size()];
+        });
+        when(messageRepository.findByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+                .thenAnswer(invocation -> newestFirst(invocation.getArgument(1)));
+
+        // The scheduled flush is pushed out of the way so only ChatService triggers flushing.
+        writeBehind = new MessageWriteBehind(new ChatParticipantDirectory(chatRepository, Duration.ofMinutes(10), 1000),
+                jdbcTemplate, new SimpleMeterRegistry(), "write-behind", journalDir, Duration.ofHours(1), 500,
+                Duration.ZERO);
+        writeBehind.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writeBehind.stop();
+    }
+
+    private ChatService chatService(RecentMessageBuffer recentMessages) {
+        return new ChatService(chatRepository, messageRepository, null, null, chatAccessCache, writeBehind,
+                recentMessages, new MessageDeduplicator(new SimpleMeterRegistry(), Duration.ofMinutes(10), 1000),
+                transactionTemplate);
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail(email);
+        return user;
+    }
+
+    private Message row(Object[] row) {
+        Message message = new Message();
+        message.setId((UUID) row[0]);
+        message.setChat(chat);
+        message.setSender(buyer);
+        message.setContent((String) row[3]);
+        message.setCreatedAt((OffsetDateTime) row[4]);
+        return message;
+    }
+
+    private Page<Message> newestFirst(Pageable pageable) {
+        List<Message> sorted = table.stream().sorted(Comparator.comparing(Message::getCreatedAt).reversed()).toList();
+        return new PageImpl<>(sorted.subList(0, Math.min(pageable.getPageSize(), sorted.size())), pageable,
+                sorted.size());
+    }
+
+    @Test
+    void firstHistoryRead_flushesJournalBeforeSeedingTheRing() {
+        ChatService chatService = chatService(new RecentMessageBuffer(new SimpleMeterRegistry(), 50, 100));
+        OffsetDateTime before = OffsetDateTime.now().minusMinutes(1);
+        chatService.deliverMessage(chat.getId(), buyer.getId(), "journaled, not yet inserted", null);
+        assertThat(table).isEmpty();
+
+        Page<MessageDTO> first = chatService.getChatMessages(chat.getId(), buyer.getId(), PageRequest.of(0, 20));
+        chatService.deliverMessage(chat.getId(), buyer.getId(), "sent after seeding", null);
+        Page<MessageDTO> fromRing = chatService.getChatMessages(chat.getId(), buyer.getId(), PageRequest.of(0, 20));
+        List<MessageDTO> replay = chatService.getMessagesSince(chat.getId(), buyer.getId(), before, 20);
+
+        assertThat(first.getContent()).extracting(MessageDTO::getContent).containsExactly("journaled, not yet inserted");
+        assertThat(fromRing.getContent()).extracting(MessageDTO::getContent)
+                .containsExactly("sent after seeding", "journaled, not yet inserted");
+        assertThat(fromRing.getTotalElements()).isEqualTo(2);
+        assertThat(replay).extracting(MessageDTO::getContent)
+                .containsExactly("journaled, not yet inserted", "sent after seeding");
+        verify(messageRepository, times(1)).findByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class));
+    }
+
+    @Test
+    void clusteredNode_readsHistoryFromDatabaseEveryTime() {
+        ChatService chatService = chatService(new RecentMessageBuffer(new SimpleMeterRegistry(), 50, 100, true));
+        chatService.deliverMessage(chat.getId(), buyer.getId(), "hello", null);
+        writeBehind.flushNow();
+
+        chatService.getChatMessages(chat.getId(), buyer.getId(), PageRequest.of(0, 20));
+        // Accepted on another node: inserted into the table without passing through this node's ring
+        table.add(row(new Object[] {UUID.randomUUID(), chat.getId(), buyer.getId(), "from node B",
+                OffsetDateTime.now().plusSeconds(1), null}));
+        Page<MessageDTO> second = chatService.getChatMessages(chat.getId(), buyer.getId(), PageRequest.of(0, 20));
+
+        assertThat(second.getContent()).extracting(MessageDTO::getContent).containsExactly("from node B", "hello");
+        verify(messageRepository, times(2)).findByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class));
+    }
+}
@@ -0,0 +1,152 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.model.Chat;
+import edu.umass.marketplace.marketplace.model.Message;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.repository.ListingRepository;
+import edu.umass.marketplace.marketplace.repository.MessageRepository;
+import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatService;
+import edu.umass.marketplace.marketplace.service.MessageDeduplicator;
+import edu.umass.marketplace.marketplace.service.MessageWriteBehind;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceSendTest {
+
+    @Mock
+    private ChatRepository chatRepository;
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private ListingRepository listingRepository;
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private MessageWriteBehind messageWriteBehind;
+    @Mock
+    private RecentMessageBuffer recentMessages;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private ChatService chatService;
+    private Chat chat;
+    private User buyer;
+
+    @BeforeEach
+    void setUp() {
+        chatService = new ChatService(chatRepository, messageRepository, userRepository, listingRepository,
+                chatAccessCache, messageWriteBehind, recentMessages,
+                new MessageDeduplicator(new SimpleMeterRegistry(), Duration.ofMinutes(10), 1000),
+                transactionTemplate);
+        buyer = user();
+        chat = new Chat();
+        chat.setId(UUID.randomUUID());
+        chat.setBuyer(buyer);
+        chat.setSeller(user());
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(chatRepository.findById(chat.getId())).thenReturn(Optional.of(chat));
+        lenient().when(userRepository.findById(buyer.getId())).thenReturn(Optional.of(buyer));
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        return user;
+    }
+
+    private Message stored(Message message) {
+        message.setId(UUID.randomUUID());
+        message.setCreatedAt(OffsetDateTime.now());
+        return message;
+    }
+
+    @Test
+    void retryWithSameClientIdInsertsOnceAndIsFlaggedDuplicate() {
+        UUID clientMessageId = UUID.randomUUID();
+        when(messageRepository.saveAndFlush(any(Message.class))).thenAnswer(invocation -> stored(invocation.getArgument(0)));
+
+        MessageDelivery first = chatService.deliverMessage(chat.getId(), buyer.getId(), "hi", null, clientMessageId);
+        MessageDelivery retry = chatService.deliverMessage(chat.getId(), buyer.getId(), "hi", null, clientMessageId);
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(messageRepository, times(1)).saveAndFlush(saved.capture());
+        assertThat(saved.getValue().getClientMessageId()).isEqualTo(clientMessageId);
+        assertThat(first.isDuplicate()).isFalse();
+        assertThat(first.getMessage().getClientMessageId()).isEqualTo(clientMessageId);
+        assertThat(retry.isDuplicate()).isTrue();
+        assertThat(retry.getMessage().getId()).isEqualTo(first.getMessage().getId());
+        verify(recentMessages, times(1)).append(any());
+    }
+
+    @Test
+    void firstSendWithClientIdRunsNoLookup() {
+        when(messageRepository.saveAndFlush(any(Message.class))).thenAnswer(invocation -> stored(invocation.getArgument(0)));
+
+        chatService.deliverMessage(chat.getId(), buyer.getId(), "hi", null, UUID.randomUUID());
+
+        verify(messageRepository, never()).findFirstByChatIdAndSenderIdAndClientMessageIdOrderByCreatedAtAsc(
+                any(), any(), any());
+    }
+
+    @Test
+    void retryOutsideWindowIsAnsweredFromUniqueConstraint() {
+        UUID clientMessageId = UUID.randomUUID();
+        Message original = stored(new Message());
+        original.setChat(chat);
+        original.setSender(buyer);
+        original.setContent("hi");
+        original.setClientMessageId(clientMessageId);
+        when(messageRepository.saveAndFlush(any(Message.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_messages_sender_client_message"));
+        when(messageRepository.findFirstByChatIdAndSenderIdAndClientMessageIdOrderByCreatedAtAsc(
+                chat.getId(), buyer.getId(), clientMessageId))
+                .thenReturn(Optional.of(original));
+
+        MessageDelivery retry = chatService.deliverMessage(chat.getId(), buyer.getId(), "hi", null, clientMessageId);
+
+        assertThat(retry.isDuplicate()).isTrue();
+        assertThat(retry.getMessage().getId()).isEqualTo(original.getId());
+        assertThat(retry.getSeller().getId()).isEqualTo(chat.getSeller().getId());
+        verify(recentMessages, never()).append(any());
+    }
+
+    @Test
+    void writeBehindSendWithClientIdIsJournaledWithoutALookup() {
+        when(messageWriteBehind.isEnabled()).thenReturn(true);
+        UUID clientMessageId = UUID.randomUUID();
+        when(messageWriteBehind.accept(chat.getId(), buyer.getId(), "hi", clientMessageId))
+                .thenReturn(new MessageDelivery(new MessageDTO(), null, null));
+
+        chatService.deliverMessage(chat.getId(), buyer.getId(), "hi", null, clientMessageId);
+
+        verify(messageWriteBehind).accept(chat.getId(), buyer.getId(), "hi", clientMessageId);
+        verifyNoInteractions(messageRepository);
+    }
+}
@@ -0,0 +1,224 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.ChatSyncResponse;
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.SyncCursor;
+import edu.umass.marketplace.marketplace.dto.SyncMessageDTO;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.model.Chat;
+import edu.umass.marketplace.marketplace.model.Message;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.repository.MessageRepository;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatService;
+import edu.umass.marketplace.marketplace.service.MessageWriteBehind;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceSyncTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2024, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+    private static final UUID LAST_ID = new UUID(-1L, -1L);
+
+    @Mock
+    private ChatRepository chatRepository;
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private MessageWriteBehind messageWriteBehind;
+    @Mock
+    private RecentMessageBuffer recentMessages;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ChatService chatService;
+
+    private final UUID userId = UUID.randomUUID();
+    private User me;
+    private User other;
+
+    @BeforeEach
+    void setUp() {
+        me = user(userId);
+        other = user(UUID.randomUUID());
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(chatAccessCache.isParticipant(any(), eq(userId))).thenReturn(true);
+    }
+
+    private static User user(UUID id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(id + "@umass.edu");
+        return user;
+    }
+
+    private Chat chat(OffsetDateTime createdAt) {
+        Chat chat = new Chat();
+        chat.setId(UUID.randomUUID());
+        chat.setBuyer(me);
+        chat.setSeller(other);
+        chat.setCreatedAt(createdAt);
+        return chat;
+    }
+
+    private Message message(Chat chat, int minute) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID());
+        message.setChat(chat);
+        message.setSender(other);
+        message.setContent("m" + minute);
+        message.setCreatedAt(T0.plusMinutes(minute));
+        return message;
+    }
+
+    private MessageDTO dto(UUID chatId, int minute) {
+        MessageDTO dto = new MessageDTO();
+        dto.setId(UUID.randomUUID());
+        dto.setChatId(chatId);
+        dto.setSender(UserDto.builder().id(other.getId()).build());
+        dto.setContent("m" + minute);
+        dto.setCreatedAt(T0.plusMinutes(minute));
+        return dto;
+    }
+
+    @Test
+    void syncSince_returnsNewChatsAndCompactMessagesWithNextCursor() {
+        Chat oldChat = chat(T0.minusDays(1));
+        Chat newChat = chat(T0.plusMinutes(1));
+        Message last = message(newChat, 3);
+        when(chatRepository.findAllChatsForUser(userId)).thenReturn(List.of(oldChat, newChat));
+        when(messageRepository.findByChatIdInAfter(anyList(), eq(T0), eq(LAST_ID), eq(PageRequest.of(0, 3))))
+                .thenReturn(List.of(message(oldChat, 2), last));
+
+        ChatSyncResponse response = chatService.syncSince(userId, new SyncCursor(T0, null), 2);
+
+        verify(messageWriteBehind).flushNow();
+        assertThat(response.getNewChats()).extracting(c -> c.getId()).containsExactly(newChat.getId());
+        assertThat(response.getMessages()).extracting(SyncMessageDTO::getContent).containsExactly("m2", "m3");
+        assertThat(response.getMessages().get(0).getSenderId()).isEqualTo(other.getId());
+        assertThat(response.getCursor()).isEqualTo(T0.plusMinutes(3));
+        assertThat(response.getCursorId()).isEqualTo(last.getId());
+        assertThat(response.isHasMore()).isFalse();
+    }
+
+    @Test
+    void syncSince_flagsMoreAndResumesFromTheKeysetCursor() {
+        Chat chat = chat(T0.minusDays(1));
+        Message second = message(chat, 1);
+        when(chatRepository.findAllChatsForUser(userId)).thenReturn(List.of(chat));
+        when(messageRepository.findByChatIdInAfter(anyList(), eq(T0), eq(LAST_ID), any()))
+                .thenReturn(List.of(message(chat, 1), second, message(chat, 1)));
+
+        ChatSyncResponse response = chatService.syncSince(userId, new SyncCursor(T0, null), 2);
+        chatService.syncSince(userId, new SyncCursor(response.getCursor(), response.getCursorId()), 2);
+
+        assertThat(response.getMessages()).hasSize(2);
+        assertThat(response.getCursor()).isEqualTo(T0.plusMinutes(1));
+        assertThat(response.isHasMore()).isTrue();
+        // The third message shares the cursor's timestamp, so the next page continues by id
+        verify(messageRepository).findByChatIdInAfter(anyList(), eq(T0.plusMinutes(1)), eq(second.getId()), any());
+    }
+
+    @Test
+    void syncChats_usesPerChatCursorsAndBufferedHistory() {
+        UUID quietChat = UUID.randomUUID();
+        UUID busyChat = UUID.randomUUID();
+        Map<UUID, SyncCursor> cursors = new LinkedHashMap<>();
+        cursors.put(quietChat, new SyncCursor(T0.plusMinutes(5), null));
+        cursors.put(busyChat, new SyncCursor(T0, null));
+        MessageDTO latest = dto(busyChat, 2);
+        when(recentMessages.since(quietChat, cursors.get(quietChat))).thenReturn(List.of());
+        when(recentMessages.since(busyChat, cursors.get(busyChat))).thenReturn(List.of(dto(busyChat, 1), latest));
+
+        ChatSyncResponse response = chatService.syncChats(userId, cursors, null, 10);
+
+        assertThat(response.getMessages()).extracting(SyncMessageDTO::getContent).containsExactly("m1", "m2");
+        assertThat(response.getChatCursors()).containsEntry(quietChat, cursors.get(quietChat))
+                .containsEntry(busyChat, new SyncCursor(T0.plusMinutes(2), latest.getId()));
+        assertThat(response.getNewChats()).isEmpty();
+        assertThat(response.isHasMore()).isFalse();
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void syncChats_stopsAtLimitAndKeepsCursorsForUnfinishedChats() {
+        UUID firstChat = UUID.randomUUID();
+        UUID unvisitedChat = UUID.randomUUID();
+        Map<UUID, SyncCursor> cursors = new LinkedHashMap<>();
+        cursors.put(firstChat, new SyncCursor(T0, null));
+        cursors.put(unvisitedChat, new SyncCursor(T0.minusDays(1), null));
+        MessageDTO second = dto(firstChat, 2);
+        when(recentMessages.since(firstChat, cursors.get(firstChat)))
+                .thenReturn(List.of(dto(firstChat, 1), second, dto(firstChat, 3)));
+
+        ChatSyncResponse response = chatService.syncChats(userId, cursors, null, 2);
+
+        assertThat(response.getMessages()).hasSize(2);
+        assertThat(response.isHasMore()).isTrue();
+        assertThat(response.getChatCursors())
+                .containsEntry(firstChat, new SyncCursor(T0.plusMinutes(2), second.getId()))
+                .containsEntry(unvisitedChat, cursors.get(unvisitedChat));
+        verify(recentMessages, never()).since(eq(unvisitedChat), any(SyncCursor.class));
+    }
+
+    @Test
+    void syncChats_reportsChatsWithoutACursorAsNew() {
+        Chat known = chat(T0.minusDays(2));
+        Chat unknown = chat(T0.minusDays(1));
+        SyncCursor knownCursor = new SyncCursor(T0, null);
+        when(chatRepository.findAllChatsForUser(userId)).thenReturn(List.of(known, unknown));
+        when(recentMessages.since(known.getId(), knownCursor)).thenReturn(List.of());
+
+        ChatSyncResponse response = chatService.syncChats(userId, Map.of(known.getId(), knownCursor), null, 10);
+
+        assertThat(response.getNewChats()).extracting(c -> c.getId()).containsExactly(unknown.getId());
+        assertThat(response.getChatCursors())
+                .containsEntry(unknown.getId(), new SyncCursor(unknown.getCreatedAt(), new UUID(0L, 0L)));
+    }
+
+    @Test
+    void syncChats_skipsAndReportsChatsThatWereDeletedOrLeft() {
+        UUID deletedChat = UUID.randomUUID();
+        UUID liveChat = UUID.randomUUID();
+        Map<UUID, SyncCursor> cursors = new LinkedHashMap<>();
+        cursors.put(deletedChat, new SyncCursor(T0, null));
+        cursors.put(liveChat, new SyncCursor(T0, null));
+        // Retention removed the chat and with it the participant cache entry
+        when(chatAccessCache.isParticipant(deletedChat, userId)).thenReturn(false);
+        when(recentMessages.since(liveChat, cursors.get(liveChat))).thenReturn(List.of(dto(liveChat, 1)));
+
+        ChatSyncResponse response = chatService.syncChats(userId, cursors, null, 10);
+
+        assertThat(response.getRemovedChats()).containsExactly(deletedChat);
+        assertThat(response.getChatCursors()).doesNotContainKey(deletedChat).containsKey(liveChat);
+        assertThat(response.getMessages()).extracting(SyncMessageDTO::getContent).containsExactly("m1");
+        verify(recentMessages, never()).since(eq(deletedChat), any(SyncCursor.class));
+    }
+}
@@ -0,0 +1,177 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.ChatEventDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSignalDTO;
+import edu.umass.marketplace.marketplace.dto.ChatSignalDTO.Type;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.service.ChatAccessCache;
+import edu.umass.marketplace.marketplace.service.ChatEventPublisher;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory.Participants;
+import edu.umass.marketplace.marketplace.service.ChatSignalRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.access.AccessDeniedException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatSignalRelayTest {
+
+    @Mock
+    private ChatAccessCache chatAccessCache;
+    @Mock
+    private ChatParticipantDirectory participants;
+    @Mock
+    private StompFanout stompFanout;
+
+    private MutableClock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatSignalRelay relay;
+
+    private final UUID chatId = UUID.randomUUID();
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-03-01T15:00:00Z"));
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new ChatSignalRelay(chatAccessCache, participants, stompFanout, meterRegistry,
+                Duration.ofSeconds(2), 1000, clock);
+        lenient().when(chatAccessCache.isParticipant(eq(chatId), any())).thenReturn(true);
+        lenient().when(participants.get(chatId)).thenReturn(new Participants(
+                UserDto.builder().id(alice).email("alice@umass.edu").build(),
+                UserDto.builder().id(bob).email("bob@umass.edu").build()));
+    }
+
+    private ArgumentCaptor<ChatSignalDTO> broadcasts(int expected) {
+        ArgumentCaptor<ChatSignalDTO> sent = ArgumentCaptor.forClass(ChatSignalDTO.class);
+        verify(stompFanout, times(expected)).sendEphemeral(eq("/topic/chat/" + chatId + "/signal"), sent.capture());
+        return sent;
+    }
+
+    @Test
+    void repeatedTypingFramesAreCoalescedToOnePerInterval() {
+        for (int i = 0; i < 20; i++) {
+            relay.signal(chatId, alice, "Alice", Type.TYPING);
+            clock.advance(Duration.ofMillis(150));
+        }
+
+        // 3 s of keystrokes with a 2 s interval: the first frame and one keep-alive
+        ArgumentCaptor<ChatSignalDTO> sent = broadcasts(2);
+        assertThat(sent.getAllValues()).allSatisfy(signal -> {
+            assertThat(signal.getUserId()).isEqualTo(alice);
+            assertThat(signal.getUserName()).isEqualTo("Alice");
+            assertThat(signal.getType()).isEqualTo(Type.TYPING);
+        });
+        assertThat(meterRegistry.get("chat.signals.received").counter().count()).isEqualTo(20);
+        assertThat(meterRegistry.get("chat.signals.broadcast").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void stateChangeInsideIntervalIsSentWhenIntervalEnds() {
+        relay.signal(chatId, alice, "Alice", Type.TYPING);
+        clock.advance(Duration.ofMillis(500));
+        relay.signal(chatId, alice, "Alice", Type.STOPPED_TYPING);
+
+        relay.flushPending();
+        broadcasts(1);
+
+        clock.advance(Duration.ofMillis(1500));
+        relay.flushPending();
+        relay.flushPending();
+
+        assertThat(broadcasts(2).getAllValues()).extracting(ChatSignalDTO::getType)
+                .containsExactly(Type.TYPING, Type.STOPPED_TYPING);
+    }
+
+    @Test
+    void revertingToLastSentStateCancelsHeldFrame() {
+        relay.signal(chatId, alice, "Alice", Type.TYPING);
+        relay.signal(chatId, alice, "Alice", Type.STOPPED_TYPING);
+        relay.signal(chatId, alice, "Alice", Type.TYPING);
+
+        clock.advance(Duration.ofSeconds(3));
+        relay.flushPending();
+
+        broadcasts(1);
+    }
+
+    @Test
+    void usersAreCoalescedIndependently() {
+        relay.signal(chatId, alice, "Alice", Type.TYPING);
+        relay.signal(chatId, bob, "Bob", Type.VIEWING);
+
+        assertThat(broadcasts(2).getAllValues()).extracting(ChatSignalDTO::getUserId).containsExactly(alice, bob);
+    }
+
+    @Test
+    void signalIsAlsoSentToOtherParticipantsChatEventStream() {
+        relay.signal(chatId, alice, "Alice", Type.TYPING);
+
+        ArgumentCaptor<ChatEventDTO> event = ArgumentCaptor.forClass(ChatEventDTO.class);
+        verify(stompFanout).sendEphemeralToUser(eq("bob@umass.edu"), eq(ChatEventPublisher.CHAT_EVENTS_DESTINATION),
+                event.capture());
+        verify(stompFanout, never()).sendEphemeralToUser(eq("alice@umass.edu"), anyString(), any());
+        assertThat(event.getValue().getType()).isEqualTo(ChatEventDTO.Type.SIGNAL);
+        assertThat(event.getValue().getChatId()).isEqualTo(chatId);
+        assertThat(event.getValue().getSignal().getUserId()).isEqualTo(alice);
+    }
+
+    @Test
+    void nonParticipantsAreRejectedWithoutBroadcast() {
+        UUID stranger = UUID.randomUUID();
+        when(chatAccessCache.isParticipant(chatId, stranger)).thenReturn(false);
+
+        assertThatThrownBy(() -> relay.signal(chatId, stranger, "Mallory", Type.TYPING))
+                .isInstanceOf(AccessDeniedException.class);
+        verify(stompFanout, never()).sendEphemeral(anyString(), any());
+        verify(stompFanout, never()).sendEphemeralToUser(anyString(), anyString(), any());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.storage.FileSystemObjectStorage;
+import edu.umass.marketplace.common.storage.ObjectStorage;
+import edu.umass.marketplace.marketplace.service.ImageDeletionQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class ImageDeletionQueueTest {
+
+    @TempDir
+    Path root;
+
+    private MutableClock clock;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-03-01T15:00:00Z"));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private ImageDeletionQueue queue(ObjectStorage storage) {
+        return new ImageDeletionQueue(storage, meterRegistry, Duration.ofSeconds(2), 3, Duration.ofSeconds(30), clock);
+    }
+
+    @Test
+    void deletesStoredImagesInBatchesOfAtMostOneThousand() throws Exception {
+        RecordingStorage storage = new RecordingStorage(new FileSystemObjectStorage(root));
+        ImageDeletionQueue queue = queue(storage);
+        for (int i = 0; i < 2500; i++) {
+            String key = "listings/" + i + "/image.jpg";
+            storage.put(key, new byte[] {1}, "image/jpeg");
+            queue.enqueue(key);
+        }
+
+        queue.flush();
+
+        assertThat(storage.batchSizes).containsExactly(1000, 1000, 500);
+        try (Stream<Path> files = Files.walk(root)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+        assertThat(queue.pendingCount()).isZero();
+        assertThat(meterRegistry.get("image.deletions.deleted").counter().count()).isEqualTo(2500);
+    }
+
+    @Test
+    void failedKeysAreRetriedAfterBackoff() {
+        ObjectStorage storage = mock(ObjectStorage.class);
+        when(storage.deleteAll(anyCollection())).thenReturn(List.of("b")).thenReturn(List.of());
+        ImageDeletionQueue queue = queue(storage);
+        queue.enqueue("a");
+        queue.enqueue("b");
+
+        queue.flush();
+        queue.flush();
+
+        verify(storage, times(1)).deleteAll(anyCollection());
+        assertThat(queue.pendingCount()).isEqualTo(1);
+
+        clock.advance(Duration.ofSeconds(30));
+        queue.flush();
+
+        verify(storage).deleteAll(List.of("b"));
+        assertThat(queue.pendingCount()).isZero();
+        assertThat(meterRegistry.get("image.deletions.retried").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void keysAreAbandonedAfterMaxAttempts() {
+        ObjectStorage storage = mock(ObjectStorage.class);
+        when(storage.deleteAll(anyCollection())).thenThrow(new IllegalStateException("S3 unavailable"));
+        ImageDeletionQueue queue = queue(storage);
+        queue.enqueue("a");
+
+        for (int i = 0; i < 5; i++) {
+            queue.flush();
+            clock.advance(Duration.ofMinutes(5));
+        }
+
+        verify(storage, times(3)).deleteAll(anyCollection());
+        assertThat(queue.pendingCount()).isZero();
+        assertThat(meterRegistry.get("image.deletions.abandoned").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void keysEnqueuedInTransactionWaitForCommit() {
+        ImageDeletionQueue queue = queue(mock(ObjectStorage.class));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            queue.enqueue("a");
+            assertThat(queue.pendingCount()).isZero();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(queue.pendingCount()).isEqualTo(1);
+    }
+
+    private static final class RecordingStorage implements ObjectStorage {
+        private final ObjectStorage delegate;
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        RecordingStorage(ObjectStorage delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void put(String key, byte[] content, String contentType) {
+            delegate.put(key, content, contentType);
+        }
+
+        @Override
+        public Optional<byte[]> get(String key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public List<String> list(String prefix) {
+            return delegate.list(prefix);
+        }
+
+        @Override
+        public List<String> deleteAll(Collection<String> keys) {
+            batchSizes.add(keys.size());
+            return delegate.deleteAll(keys);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.model.Listing;
+import edu.umass.marketplace.marketplace.service.ListingExpiryScheduler;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ListingExpirySchedulerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private RecentMessageBuffer recentMessages;
+
+    private MutableClock clock;
+    private SimpleMeterRegistry meterRegistry;
+    // Ids passed to each expiry UPDATE
+    private final List<List<Object>> expiryBatches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-03-01T15:00:00Z"));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private ListingExpiryScheduler scheduler(boolean enabled) {
+        return new ListingExpiryScheduler(jdbcTemplate, recentMessages, meterRegistry, enabled,
+                Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), clock);
+    }
+
+    /** The expiry UPDATE records its ids and reports every one of them as put on hold. */
+    @SuppressWarnings("unchecked")
+    private void expiryPutsAllOnHold() {
+        when(jdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenAnswer(invocation -> {
+                    PreparedStatement ps = mock(PreparedStatement.class);
+                    Connection connection = mock(Connection.class);
+                    when(ps.getConnection()).thenReturn(connection);
+                    List<Object> ids = new ArrayList<>();
+                    when(connection.createArrayOf(eq("uuid"), any())).thenAnswer(a -> {
+                        ids.addAll(List.of((Object[]) a.getArgument(1)));
+                        return null;
+                    });
+                    invocation.<PreparedStatementSetter>getArgument(1).setValues(ps);
+                    expiryBatches.add(ids);
+                    return ids;
+                });
+    }
+
+    private Listing listing(String status, Duration mustGoByIn) {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID());
+        listing.setStatus(status);
+        listing.setMustGoBy(mustGoByIn == null ? null
+                : OffsetDateTime.ofInstant(clock.instant().plus(mustGoByIn), ZoneOffset.UTC));
+        return listing;
+    }
+
+    @Test
+    void putsListingOnHoldWhenItsDeadlinePasses() {
+        expiryPutsAllOnHold();
+        ListingExpiryScheduler scheduler = scheduler(true);
+        Listing listing = listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(90));
+        scheduler.track(listing);
+
+        clock.advance(Duration.ofSeconds(89));
+        scheduler.tick();
+        assertThat(expiryBatches).isEmpty();
+
+        clock.advance(Duration.ofSeconds(1));
+        scheduler.tick();
+        assertThat(expiryBatches).containsExactly(List.of(listing.getId()));
+        verify(recentMessages).invalidateListing(listing.getId());
+        assertThat(meterRegistry.get("listings.must-go-by.expired").counter().count()).isEqualTo(1);
+        assertThat(scheduler.pendingCount()).isZero();
+    }
+
+    @Test
+    void idleTicksRunNoQueries() {
+        ListingExpiryScheduler scheduler = scheduler(true);
+        scheduler.track(listing(Listing.STATUS_ACTIVE, Duration.ofDays(3)));
+
+        for (int i = 0; i < 100; i++) {
+            clock.advance(Duration.ofSeconds(1));
+            scheduler.tick();
+        }
+
+        verifyNoInteractions(jdbcTemplate);
+        assertThat(scheduler.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void clearedDeadlineOrInactiveListingIsForgotten() {
+        ListingExpiryScheduler scheduler = scheduler(true);
+        Listing sold = listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(5));
+        Listing cleared = listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(5));
+        Listing deleted = listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(5));
+        scheduler.track(sold);
+        scheduler.track(cleared);
+        scheduler.track(deleted);
+
+        sold.setStatus(Listing.STATUS_SOLD);
+        scheduler.track(sold);
+        cleared.setMustGoBy(null);
+        scheduler.track(cleared);
+        scheduler.forget(deleted.getId());
+        clock.advance(Duration.ofMinutes(1));
+        scheduler.tick();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void startLoadsDeadlinesAndFiresOverdueOnFirstTick() throws Exception {
+        expiryPutsAllOnHold();
+        UUID overdue = UUID.randomUUID();
+        UUID upcoming = UUID.randomUUID();
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : List.of(new Object[] {overdue, Duration.ofHours(-2)},
+                    new Object[] {upcoming, Duration.ofHours(2)})) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getObject("id", UUID.class)).thenReturn((UUID) row[0]);
+                when(rs.getObject("must_go_by", OffsetDateTime.class)).thenReturn(
+                        OffsetDateTime.ofInstant(clock.instant().plus((Duration) row[1]), ZoneOffset.UTC));
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        ListingExpiryScheduler scheduler = new ListingExpiryScheduler(jdbcTemplate, recentMessages, meterRegistry,
+                true, Duration.ofHours(1), Duration.ofSeconds(30), Duration.ofMinutes(5), clock);
+
+        scheduler.start();
+        try {
+            scheduler.tick();
+        } finally {
+            scheduler.stop();
+        }
+
+        assertThat(expiryBatches).containsExactly(List.of(overdue));
+        assertThat(scheduler.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedUpdateIsRetriedAfterTheDelay() {
+        ListingExpiryScheduler scheduler = scheduler(true);
+        Listing listing = listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(1));
+        scheduler.track(listing);
+        when(jdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(List.of(listing.getId()));
+
+        clock.advance(Duration.ofSeconds(1));
+        scheduler.tick();
+        verifyNoInteractions(recentMessages);
+        assertThat(scheduler.pendingCount()).isEqualTo(1);
+
+        clock.advance(Duration.ofSeconds(30));
+        scheduler.tick();
+        verify(recentMessages).invalidateListing(listing.getId());
+        assertThat(scheduler.pendingCount()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resyncSchedulesDeadlinesSetThroughOtherNodes() throws Exception {
+        expiryPutsAllOnHold();
+        UUID elsewhere = UUID.randomUUID();
+        OffsetDateTime deadline = OffsetDateTime.ofInstant(clock.instant().plus(Duration.ofMinutes(3)), ZoneOffset.UTC);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(OffsetDateTime.class)))
+                .thenAnswer(invocation -> {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getObject("id", UUID.class)).thenReturn(elsewhere);
+                    when(rs.getObject("must_go_by", OffsetDateTime.class)).thenReturn(deadline);
+                    return List.of(invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0));
+                });
+        ListingExpiryScheduler scheduler = scheduler(true);
+
+        scheduler.resync();
+        scheduler.resync();
+        assertThat(scheduler.pendingCount()).isEqualTo(1);
+        clock.advance(Duration.ofMinutes(3));
+        scheduler.tick();
+
+        // Looks two intervals ahead
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class),
+                eq(OffsetDateTime.ofInstant(Instant.parse("2024-03-01T15:10:00Z"), ZoneOffset.UTC)));
+        assertThat(expiryBatches).containsExactly(List.of(elsewhere));
+    }
+
+    @Test
+    void disabledTracksNothing() {
+        ListingExpiryScheduler scheduler = scheduler(false);
+
+        scheduler.track(listing(Listing.STATUS_ACTIVE, Duration.ofSeconds(1)));
+        scheduler.start();
+
+        assertThat(scheduler.pendingCount()).isZero();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
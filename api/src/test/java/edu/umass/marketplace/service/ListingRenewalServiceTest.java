@@ -0,0 +1,116 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.common.websocket.StompFanout;
+import edu.umass.marketplace.marketplace.dto.RenewalReminderDTO;
+import edu.umass.marketplace.marketplace.service.ListingRenewalService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ListingRenewalServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-10T12:00:00Z");
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private StompFanout stompFanout;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private ListingRenewalService service(boolean enabled) {
+        return new ListingRenewalService(jdbcTemplate, stompFanout, new ClusterJobLock(null, false, meterRegistry),
+                meterRegistry, 14, enabled, Duration.ofDays(2), Duration.ofDays(1), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    /** Feeds the flagged rows, each (seller email, title, anchor), to the service's row handler. */
+    private void flagged(Object[]... rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getObject("id", UUID.class)).thenReturn(UUID.randomUUID());
+                when(rs.getString("email")).thenReturn((String) row[0]);
+                when(rs.getString("title")).thenReturn((String) row[1]);
+                when(rs.getObject("anchor", OffsetDateTime.class)).thenReturn((OffsetDateTime) row[2]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendsOneReminderPerSeller() {
+        OffsetDateTime anchor = OffsetDateTime.parse("2024-02-25T00:00:00Z");
+        flagged(new Object[] {"a@umass.edu", "Desk", anchor},
+                new Object[] {"b@umass.edu", "Lamp", anchor},
+                new Object[] {"a@umass.edu", "Chair", anchor});
+
+        service(true).sendReminders();
+
+        OffsetDateTime now = OffsetDateTime.ofInstant(NOW, ZoneOffset.UTC);
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(now),
+                eq(now.minusDays(14).plusDays(2)));
+        ArgumentCaptor<List<RenewalReminderDTO>> sent = ArgumentCaptor.forClass(List.class);
+        verify(stompFanout).sendToUser(eq("a@umass.edu"), eq(ListingRenewalService.RENEWALS_DESTINATION),
+                sent.capture());
+        assertThat(sent.getValue()).extracting(RenewalReminderDTO::getTitle).containsExactly("Desk", "Chair");
+        assertThat(sent.getValue().get(0).getExpiresAt()).isEqualTo(anchor.plusDays(14));
+        verify(stompFanout).sendToUser(eq("b@umass.edu"), eq(ListingRenewalService.RENEWALS_DESTINATION), any());
+        assertThat(meterRegistry.get("listings.renewal.reminders").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void nothingFlaggedSendsNothing() {
+        flagged();
+
+        service(true).sendReminders();
+
+        verifyNoInteractions(stompFanout);
+    }
+
+    @Test
+    void disabledSkipsRemindersAndGrace() {
+        ListingRenewalService service = service(false);
+
+        service.sendReminders();
+
+        verifyNoInteractions(jdbcTemplate, stompFanout);
+        assertThat(service.remindedBefore()).isNull();
+    }
+
+    @Test
+    void graceIsMeasuredFromNow() {
+        assertThat(service(true).remindedBefore())
+                .isEqualTo(OffsetDateTime.ofInstant(NOW, ZoneOffset.UTC).minusDays(1));
+    }
+}
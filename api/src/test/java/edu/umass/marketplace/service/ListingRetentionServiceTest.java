@@ -0,0 +1,210 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.marketplace.service.ImageService;
+import edu.umass.marketplace.marketplace.service.ListingRenewalService;
+import edu.umass.marketplace.marketplace.service.ListingRetentionService;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import edu.umass.marketplace.marketplace.service.RetentionSchedule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ListingRetentionServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private ImageService imageService;
+    @Mock
+    private RecentMessageBuffer recentMessages;
+    @Mock
+    private ListingRenewalService renewals;
+
+    private SimpleMeterRegistry meterRegistry;
+    private final Deque<List<String[]>> chunks = new ArrayDeque<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        // Each SELECT returns the next queued chunk of (id, image_url) rows
+        lenient().when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(), any()))
+                .thenAnswer(invocation -> {
+                    RowMapper<?> mapper = invocation.getArgument(1);
+                    List<Object> mapped = new ArrayList<>();
+                    for (String[] row : chunks.isEmpty() ? List.<String[]>of() : chunks.poll()) {
+                        ResultSet rs = mock(ResultSet.class);
+                        when(rs.getObject("id", UUID.class)).thenReturn(UUID.fromString(row[0]));
+                        when(rs.getString("image_url")).thenReturn(row[1]);
+                        mapped.add(mapper.mapRow(rs, mapped.size()));
+                    }
+                    return mapped;
+                });
+    }
+
+    private ListingRetentionService service(int chunkSize, int maxChunks) {
+        return service(new RetentionSchedule("nightly", 5000, Duration.ofSeconds(20)), chunkSize, maxChunks);
+    }
+
+    private ListingRetentionService service(RetentionSchedule schedule, int chunkSize, int maxChunks) {
+        return new ListingRetentionService(jdbcTemplate, transactionTemplate, imageService, recentMessages,
+                renewals, schedule, new ClusterJobLock(null, false, meterRegistry), meterRegistry, 14, chunkSize, maxChunks);
+    }
+
+    private static String[] row(String imageUrl) {
+        return new String[] {UUID.randomUUID().toString(), imageUrl};
+    }
+
+    @Test
+    void deletesInChunksUntilAShortChunk() {
+        chunks.add(List.of(row("https://bucket/a.jpg"), row(null)));
+        chunks.add(List.<String[]>of(row("data:image/jpeg;base64,abc")));
+
+        service(2, 100).deleteOldListings();
+
+        verify(transactionTemplate, times(2)).execute(any());
+        // Three set-based statements per chunk, regardless of how many listings it holds
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(6)).update(statements.capture(), any(PreparedStatementSetter.class));
+        assertThat(statements.getAllValues().subList(0, 3)).containsExactly(
+                "UPDATE messages SET shared_listing_id = NULL WHERE shared_listing_id = ANY(?)",
+                "UPDATE chats SET listing_id = NULL WHERE listing_id = ANY(?)",
+                "DELETE FROM listings WHERE id = ANY(?)");
+        verify(imageService).deleteImage("https://bucket/a.jpg");
+        verifyNoMoreInteractions(imageService);
+        verify(recentMessages, times(3)).invalidateListing(any());
+        assertThat(meterRegistry.get("listings.retention.deleted").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("listings.retention.run.progress").gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void stopsAfterMaxChunksPerRun() {
+        for (int i = 0; i < 5; i++) {
+            chunks.add(List.of(row(null), row(null)));
+        }
+
+        service(2, 3).deleteOldListings();
+
+        verify(transactionTemplate, times(3)).execute(any());
+        assertThat(chunks).hasSize(2);
+        assertThat(meterRegistry.get("listings.retention.chunk").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void failedChunkStopsRunWithoutTouchingImagesOrCaches() {
+        chunks.add(List.of(row("https://bucket/a.jpg"), row(null)));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        service(2, 100).deleteOldListings();
+
+        verify(transactionTemplate, times(1)).execute(any());
+        verifyNoInteractions(imageService, recentMessages);
+        assertThat(meterRegistry.get("listings.retention.deleted").counter().count()).isZero();
+    }
+
+    @Test
+    void onlyDeletesListingsRemindedBeforeTheGracePeriod() {
+        OffsetDateTime remindedBefore = OffsetDateTime.parse("2024-03-01T00:00:00Z");
+        when(renewals.remindedBefore()).thenReturn(remindedBefore);
+
+        service(500, 100).deleteOldListings();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(RowMapper.class), any(), eq(remindedBefore), eq(500));
+        assertThat(sql.getValue()).contains("AND renewal_reminded_at < ?");
+    }
+
+    @Test
+    void lagOnlyCountsListingsThatAreDeletableAfterTheGracePeriod() {
+        OffsetDateTime remindedBefore = OffsetDateTime.now().minusDays(3);
+        when(renewals.remindedBefore()).thenReturn(remindedBefore);
+        // The oldest listing still waiting out its grace period must not count as lag
+        OffsetDateTime oldestDeletable = OffsetDateTime.now().minusDays(14).minusHours(2);
+        when(jdbcTemplate.queryForObject(argThat((String sql) -> sql != null && sql.startsWith("SELECT MIN(")),
+                eq(OffsetDateTime.class), any(), eq(remindedBefore))).thenReturn(oldestDeletable);
+
+        service(500, 100).deleteOldListings();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).queryForObject(sql.capture(), eq(OffsetDateTime.class), any(), eq(remindedBefore));
+        assertThat(sql.getValue()).contains("WHERE COALESCE(renewed_at, created_at) < ?")
+                .contains("AND renewal_reminded_at < ?");
+        assertThat(meterRegistry.get("listings.retention.lag").gauge().value()).isBetween(7000.0, 7300.0);
+    }
+
+    @Test
+    void lagIsZeroWhenNothingPastTheCutoffIsLeft() {
+        service(500, 100).deleteOldListings();
+
+        verify(jdbcTemplate).queryForObject(argThat((String sql) -> sql != null && !sql.contains("renewal_reminded_at")),
+                eq(OffsetDateTime.class), any(OffsetDateTime.class));
+        assertThat(meterRegistry.get("listings.retention.lag").gauge().value()).isZero();
+    }
+
+    @Test
+    void emptyBacklogRunsOneSelect() {
+        service(500, 100).deleteOldListings();
+
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void continuousTickStopsAtRowBudget() {
+        for (int i = 0; i < 5; i++) {
+            chunks.add(List.of(row(null), row(null)));
+        }
+        ListingRetentionService service = service(new RetentionSchedule("continuous", 4, Duration.ofMinutes(1)), 2, 100);
+
+        service.deleteOldListings();
+        verifyNoInteractions(transactionTemplate);
+
+        service.deleteOldListingsIncrementally();
+
+        verify(transactionTemplate, times(2)).execute(any());
+        assertThat(chunks).hasSize(3);
+        assertThat(meterRegistry.get("listings.retention.deleted").counter().count()).isEqualTo(4);
+        assertThat(meterRegistry.get("listings.retention.run").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void exhaustedTimeBudgetRunsNoChunks() {
+        chunks.add(List.of(row(null), row(null)));
+
+        service(new RetentionSchedule("continuous", 1000, Duration.ZERO), 2, 100).deleteOldListingsIncrementally();
+
+        verifyNoInteractions(transactionTemplate);
+    }
+}
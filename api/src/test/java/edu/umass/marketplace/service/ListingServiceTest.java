@@ -9,6 +9,7 @@ import edu.umass.marketplace.marketplace.repository.ChatRepository;
 import edu.umass.marketplace.marketplace.repository.ListingRepository;
 import edu.umass.marketplace.marketplace.repository.MessageRepository;
 import edu.umass.marketplace.marketplace.repository.UserRepository;
+import edu.umass.marketplace.marketplace.response.ListingFeedResponse;
 import edu.umass.marketplace.marketplace.response.ListingResponse;
 import edu.umass.marketplace.marketplace.response.StatsResponse;
 import org.junit.jupiter.api.AfterEach;
@@ -25,6 +26,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.Principal;
 import java.math.BigDecimal;
@@ -62,6 +65,12 @@ class ListingServiceTest {
     @Mock
     private MessageRepository messageRepository;
 
+    @Mock
+    private edu.umass.marketplace.marketplace.service.RecentMessageBuffer recentMessages;
+
+    @Mock
+    private edu.umass.marketplace.marketplace.service.ListingExpiryScheduler listingExpiry;
+
     @InjectMocks
     private edu.umass.marketplace.marketplace.service.ListingService listingService;
 
@@ -152,6 +161,45 @@ class ListingServiceTest {
         verify(listingRepository, times(1)).findById(testListing.getId());
     }
 
+    @Test
+    void shouldPageExpiringSoonFeedByKeyset() {
+        Listing second = new Listing();
+        second.setId(UUID.randomUUID());
+        second.setTitle("Desk");
+        second.setStatus("ACTIVE");
+        second.setSeller(testSeller);
+        second.setMustGoBy(OffsetDateTime.now().plusDays(2));
+        testListing.setMustGoBy(OffsetDateTime.now().plusDays(1));
+        Listing third = new Listing();
+        third.setId(UUID.randomUUID());
+        third.setSeller(testSeller);
+        // size + 1 rows come back when there is another page
+        when(listingRepository.findExpiringAfter(any(), any(), any(), eq(PageRequest.of(0, 3))))
+                .thenReturn(List.of(testListing, second, third));
+
+        ListingFeedResponse result = listingService.getExpiringSoon(7, null, null, 2);
+
+        assertThat(result.getListings()).extracting(ListingResponse::getId)
+                .containsExactly(testListing.getId(), second.getId());
+        assertThat(result.getNextMustGoBy()).isEqualTo(second.getMustGoBy());
+        assertThat(result.getNextId()).isEqualTo(second.getId());
+        assertThat(result.isHasMore()).isTrue();
+    }
+
+    @Test
+    void shouldContinueExpiringSoonFeedAfterCursor() {
+        OffsetDateTime afterMustGoBy = OffsetDateTime.now().plusDays(1);
+        UUID afterId = UUID.randomUUID();
+        when(listingRepository.findExpiringAfter(eq(afterMustGoBy), eq(afterId), any(), any()))
+                .thenReturn(List.of());
+
+        ListingFeedResponse result = listingService.getExpiringSoon(7, afterMustGoBy, afterId, 20);
+
+        assertThat(result.getListings()).isEmpty();
+        assertThat(result.getNextId()).isNull();
+        assertThat(result.isHasMore()).isFalse();
+    }
+
     @Test
     void shouldThrowExceptionWhenListingNotFound() {
         // Given
@@ -218,6 +266,28 @@ class ListingServiceTest {
         // Then
         assertThat(result).isNotNull();
         verify(listingRepository, times(1)).save(any(Listing.class));
+        verify(listingExpiry).track(testListing);
+    }
+
+    @Test
+    void shouldDropBufferedChatHistoryShowingTheListingAfterUpdateCommits() {
+        when(listingRepository.findById(testListing.getId())).thenReturn(Optional.of(testListing));
+        when(listingRepository.save(any(Listing.class))).thenReturn(testListing);
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn(testSeller.getEmail());
+        testRequest.setPrice(BigDecimal.valueOf(350.00));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            listingService.updateListing(testListing.getId(), testRequest, principal);
+            verify(recentMessages, never()).invalidateListing(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(recentMessages).invalidateListing(testListing.getId());
     }
 
     @Test
@@ -245,6 +315,32 @@ class ListingServiceTest {
                 .hasMessageContaining("Not authorized");
     }
 
+    @Test
+    void shouldRenewListingAndClearReminder() {
+        testListing.setRenewalRemindedAt(OffsetDateTime.now().minusHours(1));
+        when(listingRepository.findById(testListing.getId())).thenReturn(Optional.of(testListing));
+        when(listingRepository.save(any(Listing.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn(testSeller.getEmail());
+
+        ListingResponse result = listingService.renewListing(testListing.getId(), principal);
+
+        assertThat(result.getRenewedAt()).isNotNull();
+        assertThat(result.getRenewalRemindedAt()).isNull();
+    }
+
+    @Test
+    void shouldDenyRenewingListingWhenNotOwnerOrSuperuser() {
+        when(listingRepository.findById(testListing.getId())).thenReturn(Optional.of(testListing));
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn("other@umass.edu");
+
+        assertThatThrownBy(() -> listingService.renewListing(testListing.getId(), principal))
+                .isInstanceOf(org.springframework.security.access.AccessDeniedException.class)
+                .hasMessageContaining("Not authorized");
+        verify(listingRepository, never()).save(any(Listing.class));
+    }
+
     @Test
     void shouldDeleteListing() {
         // Given: deleteListing uses findById then deleteById; caller is owner
@@ -263,6 +359,7 @@ class ListingServiceTest {
         verify(messageRepository, times(1)).clearSharedListingByListingId(testListing.getId());
         verify(chatRepository, times(1)).clearListingContextByListingId(testListing.getId());
         verify(listingRepository, times(1)).deleteById(testListing.getId());
+        verify(listingExpiry).forget(testListing.getId());
     }
 
     @Test
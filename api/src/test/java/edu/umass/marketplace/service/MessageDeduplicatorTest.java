@@ -0,0 +1,154 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.dto.UserDto;
+import edu.umass.marketplace.marketplace.service.MessageDeduplicator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageDeduplicatorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MessageDeduplicator deduplicator;
+    private final UUID chatId = UUID.randomUUID();
+    private final UUID senderId = UUID.randomUUID();
+    private final AtomicInteger sends = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicator = new MessageDeduplicator(meterRegistry, Duration.ofMinutes(10), 1000);
+    }
+
+    private MessageDelivery send() {
+        sends.incrementAndGet();
+        MessageDTO message = new MessageDTO();
+        message.setId(UUID.randomUUID());
+        return new MessageDelivery(message, UserDto.builder().id(senderId).build(), UserDto.builder().build());
+    }
+
+    @Test
+    void retryReturnsOriginalMessageMarkedDuplicate() {
+        UUID clientMessageId = UUID.randomUUID();
+
+        MessageDelivery first = deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send);
+        MessageDelivery retry = deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send);
+
+        assertThat(sends).hasValue(1);
+        assertThat(first.isDuplicate()).isFalse();
+        assertThat(retry.isDuplicate()).isTrue();
+        assertThat(retry.getMessage().getId()).isEqualTo(first.getMessage().getId());
+        assertThat(meterRegistry.get("chat.messages.duplicates").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sameClientIdFromAnotherSenderIsIndependent() {
+        UUID clientMessageId = UUID.randomUUID();
+
+        deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send);
+        MessageDelivery other = deduplicator.deliverOnce(chatId, UUID.randomUUID(), clientMessageId, this::send);
+
+        assertThat(sends).hasValue(2);
+        assertThat(other.isDuplicate()).isFalse();
+    }
+
+    @Test
+    void sameClientIdInAnotherChatIsIndependent() {
+        UUID clientMessageId = UUID.randomUUID();
+
+        deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send);
+        MessageDelivery other = deduplicator.deliverOnce(UUID.randomUUID(), senderId, clientMessageId, this::send);
+
+        assertThat(sends).hasValue(2);
+        assertThat(other.isDuplicate()).isFalse();
+    }
+
+    @Test
+    void sendRunsOutsideTheCacheSoOtherKeysAndReentrantCallsDoNotBlock() throws Exception {
+        UUID clientMessageId = UUID.randomUUID();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<MessageDelivery> slow = pool.submit(() -> deduplicator.deliverOnce(chatId, senderId, clientMessageId,
+                    () -> {
+                        // A nested send for another id completes while this one is still in flight
+                        deduplicator.deliverOnce(chatId, senderId, UUID.randomUUID(), this::send);
+                        assertThatThrownBy(() -> deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send))
+                                .isInstanceOf(IllegalStateException.class);
+                        awaitQuietly(release);
+                        return send();
+                    }));
+            Thread.sleep(50);
+            MessageDelivery unrelated = pool.submit(() ->
+                    deduplicator.deliverOnce(chatId, senderId, UUID.randomUUID(), this::send)).get(5, TimeUnit.SECONDS);
+            release.countDown();
+
+            assertThat(unrelated.isDuplicate()).isFalse();
+            assertThat(slow.get(5, TimeUnit.SECONDS).isDuplicate()).isFalse();
+            assertThat(sends).hasValue(3);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedSendIsNotRememberedSoRetryRunsAgain() {
+        UUID clientMessageId = UUID.randomUUID();
+
+        assertThatThrownBy(() -> deduplicator.deliverOnce(chatId, senderId, clientMessageId, () -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+        MessageDelivery retry = deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send);
+
+        assertThat(retry.isDuplicate()).isFalse();
+        assertThat(sends).hasValue(1);
+    }
+
+    @Test
+    void concurrentRetriesWaitForTheFirstAttempt() throws Exception {
+        UUID clientMessageId = UUID.randomUUID();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<MessageDelivery> first = pool.submit(() -> deduplicator.deliverOnce(chatId, senderId, clientMessageId, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return send();
+            }));
+            Thread.sleep(50);
+            Future<MessageDelivery> retry = pool.submit(() -> deduplicator.deliverOnce(chatId, senderId, clientMessageId, this::send));
+            release.countDown();
+
+            assertThat(retry.get().getMessage().getId()).isEqualTo(first.get().getMessage().getId());
+            assertThat(retry.get().isDuplicate()).isTrue();
+            assertThat(sends).hasValue(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.service.MessageJournal;
+import edu.umass.marketplace.marketplace.service.MessageJournal.JournalEntry;
+import edu.umass.marketplace.marketplace.service.MessageJournal.Segment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private JournalEntry entry(String content) {
+        return new JournalEntry(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), content,
+                OffsetDateTime.now(ZoneOffset.UTC));
+    }
+
+    @Test
+    void entriesSurviveRestartWithoutClose() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        JournalEntry first = entry("hello");
+        JournalEntry second = entry("ünïcödé ✓");
+        journal.append(first);
+        journal.append(second);
+        // no close(): simulates the process dying
+
+        MessageJournal reopened = new MessageJournal(dir);
+
+        List<Segment> recovered = reopened.recoveredSegments();
+        assertThat(recovered).hasSize(1);
+        assertThat(recovered.get(0).entries()).containsExactly(first, second);
+    }
+
+    @Test
+    void clientMessageIdIsOptionalPerRecord() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        JournalEntry legacy = entry("no client id");
+        JournalEntry retried = new JournalEntry(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "with id",
+                OffsetDateTime.now(ZoneOffset.UTC), UUID.randomUUID());
+        journal.append(legacy);
+        journal.append(retried);
+
+        List<JournalEntry> recovered = new MessageJournal(dir).recoveredSegments().get(0).entries();
+
+        assertThat(recovered).containsExactly(legacy, retried);
+        assertThat(recovered.get(0).clientMessageId()).isNull();
+    }
+
+    @Test
+    void tornLastRecordIsDroppedAndEarlierRecordsKept() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        JournalEntry kept = entry("kept");
+        journal.append(kept);
+        journal.append(entry("torn"));
+        Path segment = onlySegment();
+        // Crash mid-write: only part of the second frame reached the disk.
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        assertThat(new MessageJournal(dir).recoveredSegments().get(0).entries()).containsExactly(kept);
+    }
+
+    @Test
+    void corruptRecordFailsChecksumAndStopsRecovery() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        JournalEntry kept = entry("kept");
+        journal.append(kept);
+        long firstFrameEnd = Files.size(onlySegment());
+        journal.append(entry("corrupted"));
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment().toFile(), "rw")) {
+            file.seek(firstFrameEnd + 20);
+            file.write(0x7f);
+        }
+
+        assertThat(new MessageJournal(dir).recoveredSegments().get(0).entries()).containsExactly(kept);
+    }
+
+    @Test
+    void rotateSealsSegmentAndDeleteRemovesIt() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        assertThat(journal.rotate()).isNull();
+
+        journal.append(entry("one"));
+        Segment sealed = journal.rotate();
+        journal.append(entry("two"));
+        journal.delete(sealed);
+
+        List<Segment> recovered = new MessageJournal(dir).recoveredSegments();
+        assertThat(recovered).hasSize(1);
+        assertThat(recovered.get(0).entries()).extracting(JournalEntry::content).containsExactly("two");
+    }
+
+    @Test
+    void garbageAppendedAfterCleanShutdownIsIgnored() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.append(entry("one"));
+        journal.close();
+        Files.write(onlySegment(), new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+        assertThat(new MessageJournal(dir).recoveredSegments().get(0).entries()).hasSize(1);
+    }
+
+    @Test
+    void concurrentAppendsShareGroupCommits() throws Exception {
+        MessageJournal journal = new MessageJournal(dir, Duration.ofMillis(5));
+        int threads = 8;
+        int perThread = 25;
+        ExecutorService senders = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                done.add(senders.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(entry("message " + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+
+        // Every append returned only once its record was forced, but far fewer fsyncs were needed
+        assertThat(journal.syncs()).isPositive().isLessThan(threads * perThread);
+        assertThat(new MessageJournal(dir).recoveredSegments().get(0).entries()).hasSize(threads * perThread);
+    }
+
+    @Test
+    void rotateForcesAppendsStillWaitingForTheirGroupCommit() throws Exception {
+        // A long linger keeps the forcer waiting, so only rotate() can release the append
+        MessageJournal journal = new MessageJournal(dir, Duration.ofSeconds(30));
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> append = sender.submit(() -> {
+                journal.append(entry("waiting"));
+                return null;
+            });
+            Segment sealed = null;
+            while (sealed == null) {
+                sealed = journal.rotate();
+            }
+
+            append.get();
+            assertThat(sealed.entries()).extracting(JournalEntry::content).containsExactly("waiting");
+        } finally {
+            sender.shutdownNow();
+        }
+    }
+
+    @Test
+    void appendAfterCloseIsRejected() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.append(entry("one"));
+        journal.close();
+
+        assertThatThrownBy(() -> journal.append(entry("two"))).isInstanceOf(IOException.class);
+        assertThat(new MessageJournal(dir).recoveredSegments().get(0).entries()).hasSize(1);
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> nonEmpty = files.filter(p -> p.toFile().length() > 0).toList();
+            assertThat(nonEmpty).hasSize(1);
+            return nonEmpty.get(0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.scheduling.ClusterJobLock;
+import edu.umass.marketplace.marketplace.service.MessagePartitionManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessagePartitionManagerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private MessagePartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2024-11-20T12:00:00Z"), ZoneOffset.UTC);
+        manager = new MessagePartitionManager(jdbcTemplate,
+                new ClusterJobLock(null, false, new SimpleMeterRegistry()), 2, clock);
+    }
+
+    private void partitioned(boolean partitioned) {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(partitioned);
+    }
+
+    @Test
+    void createsCurrentAndUpcomingMonthsAcrossYearBoundary() {
+        partitioned(true);
+
+        manager.ensureUpcomingPartitions();
+
+        ArgumentCaptor<String> ddl = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(6)).execute(ddl.capture());
+        assertThat(ddl.getAllValues()).containsExactly(
+                "CREATE TABLE IF NOT EXISTS messages_y2024m11 PARTITION OF messages "
+                        + "FOR VALUES FROM ('2024-11-01T00:00Z') TO ('2024-12-01T00:00Z')",
+                "CREATE UNIQUE INDEX IF NOT EXISTS messages_y2024m11_sender_client_uk "
+                        + "ON messages_y2024m11 (sender_id, client_message_id)",
+                "CREATE TABLE IF NOT EXISTS messages_y2024m12 PARTITION OF messages "
+                        + "FOR VALUES FROM ('2024-12-01T00:00Z') TO ('2025-01-01T00:00Z')",
+                "CREATE UNIQUE INDEX IF NOT EXISTS messages_y2024m12_sender_client_uk "
+                        + "ON messages_y2024m12 (sender_id, client_message_id)",
+                "CREATE TABLE IF NOT EXISTS messages_y2025m01 PARTITION OF messages "
+                        + "FOR VALUES FROM ('2025-01-01T00:00Z') TO ('2025-02-01T00:00Z')",
+                "CREATE UNIQUE INDEX IF NOT EXISTS messages_y2025m01_sender_client_uk "
+                        + "ON messages_y2025m01 (sender_id, client_message_id)");
+    }
+
+    @Test
+    void unpartitionedTableOnlyGetsTheClientIdIndex() {
+        partitioned(false);
+
+        manager.ensureUpcomingPartitions();
+
+        verify(jdbcTemplate).execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_messages_sender_client_message "
+                + "ON messages (sender_id, client_message_id)");
+        verify(jdbcTemplate, times(1)).execute(anyString());
+    }
+
+    @Test
+    void expiredPartitionsAreOnlyMonthsEndingByCutoffOldestFirst() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "messages_y2024m08", "messages_y2024m07", "messages_y2024m09", "messages_default"));
+
+        List<String> expired = manager.expiredPartitions(OffsetDateTime.parse("2024-09-01T00:00Z"));
+
+        assertThat(expired).containsExactly("messages_y2024m07", "messages_y2024m08");
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void dropPartitionOnlyDropsMonthlyPartitions() {
+        assertThat(manager.dropPartition("messages_y2024m07")).isTrue();
+
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS messages_y2024m07");
+        assertThatThrownBy(() -> manager.dropPartition("messages_default"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dropPartitionDetachesUnderAShortLockTimeoutBeforeDropping() throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("messages_y2024m07"))).thenReturn(true);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> ((ConnectionCallback<?>) invocation.getArgument(0)).doInConnection(connection));
+
+        assertThat(manager.dropPartition("messages_y2024m07")).isTrue();
+
+        InOrder order = inOrder(statement, jdbcTemplate);
+        order.verify(statement).execute("SET lock_timeout = '2s'");
+        order.verify(statement).execute("ALTER TABLE messages DETACH PARTITION messages_y2024m07");
+        order.verify(statement).execute("RESET lock_timeout");
+        order.verify(jdbcTemplate).execute("DROP TABLE IF EXISTS messages_y2024m07");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void partitionIsKeptWhenMessagesCannotBeLockedInTime() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("messages_y2024m07"))).thenReturn(true);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenThrow(new CannotAcquireLockException("canceling statement due to lock timeout"));
+
+        assertThat(manager.dropPartition("messages_y2024m07")).isFalse();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+}
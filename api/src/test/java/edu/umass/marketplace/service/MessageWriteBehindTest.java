@@ -0,0 +1,217 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDelivery;
+import edu.umass.marketplace.marketplace.model.Chat;
+import edu.umass.marketplace.marketplace.model.User;
+import edu.umass.marketplace.marketplace.repository.ChatRepository;
+import edu.umass.marketplace.marketplace.service.ChatParticipantDirectory;
+import edu.umass.marketplace.marketplace.service.MessageWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageWriteBehindTest {
+
+    @TempDir
+    Path journalDir;
+
+    @Mock
+    private ChatRepository chatRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rows;
+
+    private final UUID chatId = UUID.randomUUID();
+    private User buyer;
+    private User seller;
+
+    @BeforeEach
+    void setUp() {
+        buyer = user("buyer@umass.edu");
+        seller = user("seller@umass.edu");
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        chat.setBuyer(buyer);
+        chat.setSeller(seller);
+        lenient().when(chatRepository.findWithParticipantsById(chatId)).thenReturn(Optional.of(chat));
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail(email);
+        user.setName(email);
+        return user;
+    }
+
+    // The scheduled flush is pushed out of the way so tests decide exactly when flushing happens.
+    private MessageWriteBehind startNode() throws IOException {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(
+                new ChatParticipantDirectory(chatRepository, Duration.ofMinutes(10), 1000), jdbcTemplate,
+                new SimpleMeterRegistry(), "write-behind", journalDir, Duration.ofHours(1), 2, Duration.ZERO);
+        writeBehind.start();
+        return writeBehind;
+    }
+
+    @Test
+    void accept_returnsDeliveryWithoutWritingMessagesTable() throws IOException {
+        MessageWriteBehind writeBehind = startNode();
+
+        MessageDelivery first = writeBehind.accept(chatId, buyer.getId(), "Is it still available?");
+        writeBehind.accept(chatId, seller.getId(), "Yes");
+
+        assertThat(first.getMessage().getId()).isNotNull();
+        assertThat(first.getMessage().getSender().getEmail()).isEqualTo("buyer@umass.edu");
+        assertThat(first.getSeller().getId()).isEqualTo(seller.getId());
+        verify(chatRepository, times(1)).findWithParticipantsById(chatId);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void accept_rejectsNonParticipantWithoutJournaling() throws IOException {
+        MessageWriteBehind writeBehind = startNode();
+
+        assertThatThrownBy(() -> writeBehind.accept(chatId, UUID.randomUUID(), "hi"))
+                .isInstanceOf(AccessDeniedException.class);
+        writeBehind.flushNow();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void flushNow_insertsInBatchesIdempotentlyAndClearsJournal() throws IOException {
+        MessageWriteBehind writeBehind = startNode();
+        UUID id1 = writeBehind.accept(chatId, buyer.getId(), "one").getMessage().getId();
+        UUID id2 = writeBehind.accept(chatId, seller.getId(), "two").getMessage().getId();
+        UUID id3 = writeBehind.accept(chatId, buyer.getId(), "three").getMessage().getId();
+
+        writeBehind.flushNow();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(sql.capture(), rows.capture());
+        assertThat(sql.getValue()).contains("ON CONFLICT DO NOTHING");
+        assertThat(insertedIds()).containsExactly(id1, id2, id3);
+        assertThat(journaledBytes()).isZero();
+    }
+
+    @Test
+    void crashBeforeFlush_replaysJournalOnRestart() throws IOException {
+        MessageWriteBehind crashed = startNode();
+        UUID id1 = crashed.accept(chatId, buyer.getId(), "one").getMessage().getId();
+        UUID id2 = crashed.accept(chatId, seller.getId(), "two").getMessage().getId();
+        // Process dies here: no flush, no stop().
+
+        startNode();
+
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(insertedIds()).containsExactly(id1, id2);
+        assertThat(journaledBytes()).isZero();
+    }
+
+    @Test
+    void crashDuringAppend_replaysOnlyCompleteRecords() throws IOException {
+        MessageWriteBehind crashed = startNode();
+        UUID id1 = crashed.accept(chatId, buyer.getId(), "one").getMessage().getId();
+        crashed.accept(chatId, seller.getId(), "two");
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        startNode();
+
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(insertedIds()).containsExactly(id1);
+    }
+
+    @Test
+    void databaseOutage_keepsJournalAndRetriesSameRows() throws IOException {
+        MessageWriteBehind writeBehind = startNode();
+        UUID id = writeBehind.accept(chatId, buyer.getId(), "one").getMessage().getId();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"))
+                .thenReturn(new int[] {1});
+
+        writeBehind.flushNow();
+        assertThat(journaledBytes()).isPositive();
+
+        writeBehind.flushNow();
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getAllValues()).allSatisfy(batch -> assertThat(batch.get(0)[0]).isEqualTo(id));
+        assertThat(journaledBytes()).isZero();
+    }
+
+    @Test
+    void rowsForDeletedChatsAreDroppedWithoutBlockingOthers() throws IOException {
+        MessageWriteBehind writeBehind = startNode();
+        UUID kept = writeBehind.accept(chatId, buyer.getId(), "kept").getMessage().getId();
+        UUID orphaned = writeBehind.accept(chatId, seller.getId(), "orphaned").getMessage().getId();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("fk_messages_chat"));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            if (orphaned.equals(args[0])) {
+                throw new DataIntegrityViolationException("fk_messages_chat");
+            }
+            return 1;
+        });
+
+        writeBehind.flushNow();
+
+        ArgumentCaptor<Object[]> attempted = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(anyString(), attempted.capture());
+        assertThat(attempted.getAllValues()).extracting(args -> args[0]).containsExactly(kept, orphaned);
+        assertThat(journaledBytes()).isZero();
+    }
+
+    private List<UUID> insertedIds() {
+        return rows.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(row -> (UUID) row[0])
+                .toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(p -> p.toFile().length() > 0).sorted().toList();
+        }
+    }
+
+    private long journaledBytes() throws IOException {
+        long total = 0;
+        for (Path segment : segments()) {
+            total += Files.size(segment);
+        }
+        return total;
+    }
+}
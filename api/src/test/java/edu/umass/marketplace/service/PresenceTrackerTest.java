@@ -0,0 +1,103 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.service.PresenceTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PresenceTrackerTest {
+
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+    private MutableClock clock;
+    private PresenceTracker tracker;
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-03-01T15:00:00Z"));
+        tracker = new PresenceTracker(new SimpleMeterRegistry(), Duration.ofMinutes(5), ZONE, clock);
+    }
+
+    @Test
+    void webSocketSessionsKeepUserOnlineUntilLastDisconnect() {
+        tracker.connected("s1", alice);
+        tracker.connected("s2", alice);
+        tracker.connected("s3", bob);
+        assertThat(tracker.onlineNow()).isEqualTo(2);
+
+        clock.advance(Duration.ofMinutes(10));
+        tracker.disconnected("s1");
+        tracker.disconnected("s1");
+        tracker.disconnected("s3");
+        clock.advance(Duration.ofMinutes(10));
+
+        assertThat(tracker.onlineNow()).isEqualTo(1);
+    }
+
+    @Test
+    void httpActivityExpiresAfterWindowAndSweepRetiresIdleUsers() {
+        tracker.touch(alice);
+        assertThat(tracker.onlineNow()).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(6));
+        tracker.sweep();
+        assertThat(tracker.onlineNow()).isZero();
+
+        tracker.touch(alice);
+        assertThat(tracker.onlineNow()).isEqualTo(1);
+    }
+
+    @Test
+    void dailyUniquesCountEachUserOnceAndResetAtLocalMidnight() {
+        tracker.touch(alice);
+        tracker.touch(alice);
+        tracker.connected("s1", bob);
+        assertThat(tracker.activeToday()).isEqualTo(2);
+
+        // 15:00Z is 10:00 in New York; 15 hours later is past local midnight.
+        clock.advance(Duration.ofHours(15));
+        assertThat(tracker.activeToday()).isZero();
+
+        tracker.touch(bob);
+        assertThat(tracker.activeToday()).isEqualTo(1);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
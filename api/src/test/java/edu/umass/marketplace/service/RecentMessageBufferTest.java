@@ -0,0 +1,158 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.marketplace.dto.MessageDTO;
+import edu.umass.marketplace.marketplace.dto.SyncCursor;
+import edu.umass.marketplace.marketplace.service.RecentMessageBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentMessageBufferTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2024, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private RecentMessageBuffer buffer;
+    private final UUID chatId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        buffer = new RecentMessageBuffer(new SimpleMeterRegistry(), 5, 100);
+    }
+
+    private MessageDTO message(int minute) {
+        MessageDTO dto = new MessageDTO();
+        dto.setId(UUID.randomUUID());
+        dto.setChatId(chatId);
+        dto.setContent("m" + minute);
+        dto.setCreatedAt(T0.plusMinutes(minute));
+        return dto;
+    }
+
+    private List<MessageDTO> newestFirst(int fromMinute, int toMinute) {
+        List<MessageDTO> result = new ArrayList<>();
+        for (int m = toMinute; m >= fromMinute; m--) {
+            result.add(message(m));
+        }
+        return result;
+    }
+
+    @Test
+    void clusteredNode_neverAnswersFromMemory() {
+        RecentMessageBuffer clustered = new RecentMessageBuffer(new SimpleMeterRegistry(), 5, 100, true);
+        clustered.seed(chatId, newestFirst(1, 3), 3);
+
+        assertThat(clustered.covers(PageRequest.of(0, 3))).isFalse();
+        assertThat(clustered.firstPage(chatId, PageRequest.of(0, 3))).isNull();
+    }
+
+    @Test
+    void firstPage_isNullUntilSeededThenServedWithDatabaseTotal() {
+        assertThat(buffer.firstPage(chatId, PageRequest.of(0, 3))).isNull();
+
+        buffer.seed(chatId, newestFirst(6, 10), 11);
+        Page<MessageDTO> page = buffer.firstPage(chatId, PageRequest.of(0, 3));
+
+        assertThat(page.getContent()).extracting(MessageDTO::getContent).containsExactly("m10", "m9", "m8");
+        assertThat(page.getTotalElements()).isEqualTo(11);
+        assertThat(page.getTotalPages()).isEqualTo(4);
+    }
+
+    @Test
+    void append_keepsNewestMessagesAndCountsTotal() {
+        buffer.seed(chatId, newestFirst(1, 2), 2);
+
+        buffer.append(message(3));
+        buffer.append(message(4));
+
+        Page<MessageDTO> page = buffer.firstPage(chatId, PageRequest.of(0, 5));
+        assertThat(page.getContent()).extracting(MessageDTO::getContent).containsExactly("m4", "m3", "m2", "m1");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    void append_ignoresChatsWhoseHistoryIsNotBuffered() {
+        buffer.append(message(1));
+
+        assertThat(buffer.firstPage(chatId, PageRequest.of(0, 5))).isNull();
+        assertThat(buffer.since(chatId, T0)).isNull();
+    }
+
+    @Test
+    void messagesSentWhileSeedQueryRunsAreKept() {
+        buffer.track(chatId);
+        MessageDTO raced = message(3);
+        buffer.append(raced);
+
+        // The seed query did not see the raced message.
+        buffer.seed(chatId, newestFirst(1, 2), 2);
+
+        Page<MessageDTO> page = buffer.firstPage(chatId, PageRequest.of(0, 5));
+        assertThat(page.getContent()).extracting(MessageDTO::getContent).containsExactly("m3", "m2", "m1");
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    void since_answersOnlyWhenRingCoversTheGap() {
+        buffer.seed(chatId, newestFirst(6, 10), 50);
+
+        assertThat(buffer.since(chatId, T0.plusMinutes(7)))
+                .extracting(MessageDTO::getContent).containsExactly("m8", "m9", "m10");
+        assertThat(buffer.since(chatId, T0.plusMinutes(6))).hasSize(4);
+        // Messages older than minute 6 were never buffered, so the ring cannot vouch for them.
+        assertThat(buffer.since(chatId, T0.plusMinutes(2))).isNull();
+    }
+
+    @Test
+    void since_ordersByKeysetAndResumesWithinATimestamp() {
+        MessageDTO a = message(1);
+        MessageDTO b = message(1);
+        b.setId(new UUID(0L, 1L));
+        a.setId(new UUID(-1L, 0L));
+        buffer.seed(chatId, List.of(a, b), 2);
+
+        List<MessageDTO> all = buffer.since(chatId, new SyncCursor(T0, null));
+        List<MessageDTO> afterFirst = buffer.since(chatId, new SyncCursor(T0.plusMinutes(1), b.getId()));
+
+        // Database order compares UUIDs unsigned, so 0xffff... sorts last
+        assertThat(all).containsExactly(b, a);
+        assertThat(afterFirst).containsExactly(a);
+    }
+
+    @Test
+    void since_coversEverythingForShortChats() {
+        buffer.seed(chatId, newestFirst(1, 2), 2);
+
+        assertThat(buffer.since(chatId, T0.minusDays(1))).hasSize(2);
+    }
+
+    @Test
+    void covers_onlyFirstUnsortedPageWithinCapacity() {
+        assertThat(buffer.covers(PageRequest.of(0, 5))).isTrue();
+        assertThat(buffer.covers(PageRequest.of(1, 5))).isFalse();
+        assertThat(buffer.covers(PageRequest.of(0, 6))).isFalse();
+        assertThat(buffer.covers(PageRequest.of(0, 5, Sort.by("content")))).isFalse();
+    }
+
+    @Test
+    void invalidateListing_dropsRingsThatShowTheListing() {
+        UUID listingId = UUID.randomUUID();
+        MessageDTO shared = message(1);
+        shared.setSharedListingId(listingId);
+        buffer.seed(chatId, List.of(shared), 1);
+
+        buffer.invalidateListing(listingId);
+
+        assertThat(buffer.firstPage(chatId, PageRequest.of(0, 5))).isNull();
+    }
+}
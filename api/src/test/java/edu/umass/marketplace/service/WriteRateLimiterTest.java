@@ -0,0 +1,90 @@
+package edu.umass.marketplace.service;
+
+import edu.umass.marketplace.common.exception.RateLimitExceededException;
+import edu.umass.marketplace.common.security.UserPrincipal;
+import edu.umass.marketplace.marketplace.service.WriteRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteRateLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private WriteRateLimiter limiter(boolean enabled) {
+        return new WriteRateLimiter(meterRegistry, enabled, 3, Duration.ofMinutes(1), 5, Duration.ofHours(1));
+    }
+
+    private UsernamePasswordAuthenticationToken principal() {
+        UserPrincipal user = new UserPrincipal(userId, "student@umass.edu", "Student", null);
+        return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+    }
+
+    @Test
+    void chatMessagesOverCapacityAreRejectedWithRetryAfterAndCounted() {
+        WriteRateLimiter limiter = limiter(true);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquireChatMessage(userId);
+        }
+
+        assertThatThrownBy(() -> limiter.acquireChatMessage(userId))
+                .isInstanceOfSatisfying(RateLimitExceededException.class, ex ->
+                        assertThat(ex.getRetryAfter()).isPositive().isLessThanOrEqualTo(Duration.ofSeconds(20)));
+        assertThat(meterRegistry.get("ratelimit.throttled").tag("action", "chat-message").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ratelimit.throttled").tag("action", "listing-write").counter().count()).isZero();
+    }
+
+    @Test
+    void bulkCreateCostsOneTokenPerListing() {
+        WriteRateLimiter limiter = limiter(true);
+
+        limiter.acquireListingWrites(principal(), 3);
+        limiter.acquireListingWrites(principal(), 2);
+
+        assertThatThrownBy(() -> limiter.acquireListingWrites(principal(), 1))
+                .isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void bulkLargerThanCapacityIsRejectedWithoutSpendingTokens() {
+        WriteRateLimiter limiter = limiter(true);
+
+        assertThatThrownBy(() -> limiter.acquireListingWrites(principal(), 50))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("At most 5 listings");
+
+        assertThatCode(() -> limiter.acquireListingWrites(principal(), 5)).doesNotThrowAnyException();
+        assertThat(meterRegistry.get("ratelimit.throttled").tag("action", "listing-write").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void unresolvedPrincipalAndDisabledLimiterAreNotThrottled() {
+        WriteRateLimiter limiter = limiter(true);
+        assertThatCode(() -> {
+            for (int i = 0; i < 10; i++) {
+                limiter.acquireListingWrites(null, 5);
+            }
+        }).doesNotThrowAnyException();
+
+        WriteRateLimiter disabled = limiter(false);
+        assertThatCode(() -> {
+            for (int i = 0; i < 10; i++) {
+                disabled.acquireChatMessage(userId);
+            }
+        }).doesNotThrowAnyException();
+    }
+}